@@ -0,0 +1,152 @@
+package org.account.api.cache;
+
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.account.api.entity.Account;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache of Account snapshots keyed by account number.
+ * Configured with account.cache, exposes Micrometer metrics under cache name "accounts".
+ * <p>
+ * Only read-only transactions are served from the cache. Writers register the accounts they
+ * change with {@link #evictOnCompletion(Collection)} and the entries are evicted when the
+ * transaction completes, before the write returns to its caller. Every eviction also bumps
+ * a generation counter for the key, and a loader only caches what it read if no eviction
+ * happened while it was reading, so a balance read before a commit is never cached after it.
+ */
+@Component
+public class AccountCache {
+
+    private static final int GENERATION_STRIPES = 1024;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${account.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${account.cache.maximum-size:10000}")
+    private long maximumSize;
+
+    @Value("${account.cache.expire-after-write-ms:60000}")
+    private long expireAfterWriteMs;
+
+    private Cache<String, Account> cache;
+
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofMillis(expireAfterWriteMs))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "accounts");
+    }
+
+    /**
+     * Get the given accounts, loading the ones not cached with the loader.
+     * Unknown accounts are left out and never cached.
+     *
+     * @param accountNumbers
+     * @param loader
+     * @return
+     */
+    public List<Account> getAll(List<String> accountNumbers, Function<List<String>, List<Account>> loader) {
+        if (!enabled || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return loader.apply(accountNumbers);
+        }
+
+        List<Account> accounts = new ArrayList<>();
+        List<String> missingAccountNumbers = new ArrayList<>();
+        for (String accountNumber : new LinkedHashSet<>(accountNumbers)) {
+            Account account = cache.getIfPresent(accountNumber);
+            if (account != null) {
+                accounts.add(account);
+            } else {
+                missingAccountNumbers.add(accountNumber);
+            }
+        }
+        if (missingAccountNumbers.isEmpty()) {
+            return accounts;
+        }
+
+        Map<String, Long> loadGenerations = new HashMap<>();
+        for (String accountNumber : missingAccountNumbers) {
+            loadGenerations.put(accountNumber, generations.get(getStripe(accountNumber)));
+        }
+
+        for (Account account : loader.apply(missingAccountNumbers)) {
+            Account snapshot = getSnapshot(account);
+            Long loadGeneration = loadGenerations.get(snapshot.getAccountNumber());
+            if (loadGeneration != null) {
+                cache.put(snapshot.getAccountNumber(), snapshot);
+                // Checked after the put: an eviction either happened before this check or removes the entry itself
+                if (loadGeneration != generations.get(getStripe(snapshot.getAccountNumber()))) {
+                    cache.invalidate(snapshot.getAccountNumber());
+                }
+            }
+            accounts.add(snapshot);
+        }
+        return accounts;
+    }
+
+    /**
+     * Evict the given accounts when the current transaction completes.
+     *
+     * @param accountNumbers
+     */
+    public void evictOnCompletion(Collection<String> accountNumbers) {
+        if (!enabled) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evict(accountNumbers);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                evict(accountNumbers);
+            }
+        });
+    }
+
+    private void evict(Collection<String> accountNumbers) {
+        for (String accountNumber : accountNumbers) {
+            generations.incrementAndGet(getStripe(accountNumber));
+            cache.invalidate(accountNumber);
+        }
+    }
+
+    private int getStripe(String accountNumber) {
+        return Math.floorMod(accountNumber.hashCode(), GENERATION_STRIPES);
+    }
+
+    private Account getSnapshot(Account account) {
+        Account snapshot = new Account();
+        snapshot.setAccountNumber(account.getAccountNumber());
+        snapshot.setAccountBalance(account.getAccountBalance());
+        return snapshot;
+    }
+}
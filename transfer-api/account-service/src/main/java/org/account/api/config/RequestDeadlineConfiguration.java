@@ -0,0 +1,26 @@
+package org.account.api.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Transactions of the account service end with the deadline of the request they serve,
+ * see {@link RequestDeadlineTransactionManager}. Replaces the JpaTransactionManager of Spring Boot.
+ */
+@Configuration
+public class RequestDeadlineConfiguration {
+
+    @Bean
+    public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory, MeterRegistry meterRegistry,
+                                                         ObjectProvider<TransactionManagerCustomizers> transactionManagerCustomizers) {
+        RequestDeadlineTransactionManager transactionManager = new RequestDeadlineTransactionManager(entityManagerFactory, meterRegistry);
+        transactionManagerCustomizers.ifAvailable(customizers -> customizers.customize(transactionManager));
+        return transactionManager;
+    }
+}
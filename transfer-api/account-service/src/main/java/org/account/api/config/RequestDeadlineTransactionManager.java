@@ -0,0 +1,52 @@
+package org.account.api.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.common.api.util.RequestDeadline;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionTimedOutException;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * JpaTransactionManager bounding the read-write transactions of a request by its {@link RequestDeadline}.
+ * Their timeout is cut to the time left, so statements waiting for row locks give up with the request,
+ * and a transaction still open once the deadline passed is rolled back instead of committed,
+ * counted by account.requests.expired with stage commit.
+ */
+public class RequestDeadlineTransactionManager extends JpaTransactionManager {
+
+    private final Counter expiredCounter;
+
+    public RequestDeadlineTransactionManager(EntityManagerFactory entityManagerFactory, MeterRegistry meterRegistry) {
+        super(entityManagerFactory);
+        // The transfer is rolled back when the commit is refused, see prepareForCommit
+        setRollbackOnCommitFailure(true);
+        expiredCounter = Counter.builder("account.requests.expired")
+                .tag("stage", "commit")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected int determineTimeout(TransactionDefinition definition) {
+        int timeout = super.determineTimeout(definition);
+        if (definition.isReadOnly() || !RequestDeadline.isPresent()) {
+            return timeout;
+        }
+        // Hibernate rounds the time left down to whole seconds, one more keeps a sub-second budget from
+        // failing the first statement, the deadline itself is enforced at commit
+        int remainingSeconds = (int) Math.min(Integer.MAX_VALUE, (RequestDeadline.getRemainingMs() + 999) / 1000 + 1);
+        return timeout == TransactionDefinition.TIMEOUT_DEFAULT ? remainingSeconds : Math.min(timeout, remainingSeconds);
+    }
+
+    @Override
+    protected void prepareForCommit(DefaultTransactionStatus status) {
+        super.prepareForCommit(status);
+        if (status.isNewTransaction() && !status.isReadOnly() && RequestDeadline.isExpired()) {
+            expiredCounter.increment();
+            throw new TransactionTimedOutException("Request deadline exceeded, transaction rolled back");
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package org.account.api.controller;
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.account.api.entity.Account;
 import org.account.api.mapper.AccountMapper;
 import org.account.api.service.AccountService;
@@ -8,16 +12,32 @@ import org.common.api.dto.AccountDto;
 import org.common.api.dto.TransferFundDto;
 import org.common.api.exception.TransferException;
 import org.common.api.request.AccountDetailsRequest;
+import org.common.api.request.UpdateAccountDetailsBatchRequest;
 import org.common.api.request.UpdateAccountDetailsRequest;
 import org.common.api.response.AccountDetailsResponse;
+import org.common.api.response.UpdateAccountDetailsBatchResponse;
 import org.common.api.response.UpdateAccountDetailsResponse;
 import org.common.api.util.ErrorCode;
+import org.common.api.util.RequestDeadline;
+import org.common.api.util.WireFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.ObjectFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.annotation.PostConstruct;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -25,25 +45,40 @@ import java.util.stream.Collectors;
 /**
  * Rest Controller exposes different end points for
  * all account related operations.
- * 1. Read All Accounts
+ * 1. Read All Accounts, in full, by page or streamed
  * 2. Get specific account information
- * 3. Update account balance of an account.
+ * 3. Update account balance of an account, or of many in a batch.
+ * Updates arriving after the deadline of their request are refused, those still running once
+ * it passed are rolled back and reported as REQUEST_DEADLINE_EXCEEDED.
  */
 @RestController
 @RequestMapping("/account-api")
 public class AccountServiceController {
     private final static Logger logger = LoggerFactory.getLogger(AccountServiceController.class);
+
     @Autowired
-    private ObjectFactory<AccountDetailsResponse> accountDetailsResponseObjectFactory;
+    private AccountMapper accountMapper;
 
     @Autowired
-    private ObjectFactory<UpdateAccountDetailsResponse> updateAccountDetailsResponseObjectFactory;
+    private AccountService accountService;
 
     @Autowired
-    private AccountMapper accountMapper;
+    private ObjectMapper objectMapper;
 
     @Autowired
-    private AccountService accountService;
+    private MeterRegistry meterRegistry;
+
+    @Value("${account.page.max-limit:1000}")
+    private int maxPageLimit;
+
+    private Counter expiredCounter;
+
+    @PostConstruct
+    public void init() {
+        expiredCounter = Counter.builder("account.requests.expired")
+                .tag("stage", "arrival")
+                .register(meterRegistry);
+    }
 
     /**
      * Get details of all accounts
@@ -53,7 +88,7 @@ public class AccountServiceController {
     @GetMapping(value = "/accounts")
     public AccountDetailsResponse getAllAccountDetails() {
         logger.debug("Getting account details for all accounts");
-        AccountDetailsResponse accountDetailsResponse = getAccountDetailsResponse();
+        AccountDetailsResponse accountDetailsResponse = new AccountDetailsResponse();
         try {
             List<Account> accounts = accountService.getAccountDetails();
             List<AccountDto> listAccountDto = accounts.stream().map(accountMapper.accountEntityToDtoMapper).collect(Collectors.toList());
@@ -70,17 +105,82 @@ public class AccountServiceController {
 
     }
 
+    /**
+     * Get one page of accounts in account number order. The next page is requested with
+     * afterAccountNumber set to nextAfterAccountNumber of the response, which is null on the last page.
+     *
+     * @param afterAccountNumber account number of the last account of the previous page, omitted for the first page
+     * @param limit              page size, capped at account.page.max-limit
+     * @return
+     */
+    @GetMapping(value = "/accounts", params = "limit")
+    public AccountDetailsResponse getAccountDetailsPage(@RequestParam(required = false) String afterAccountNumber, @RequestParam int limit) {
+        logger.debug("Getting account details after account number: {}, limit: {}", afterAccountNumber, limit);
+        AccountDetailsResponse accountDetailsResponse = new AccountDetailsResponse();
+        try {
+            int pageLimit = Math.max(1, Math.min(limit, maxPageLimit));
+            List<Account> accounts = accountService.getAccountDetails(afterAccountNumber, pageLimit);
+            List<AccountDto> listAccountDto = accounts.stream().map(accountMapper.accountEntityToDtoMapper).collect(Collectors.toList());
+
+            accountDetailsResponse.setListAccountDto(listAccountDto);
+            if (listAccountDto.size() == pageLimit) {
+                accountDetailsResponse.setNextAfterAccountNumber(listAccountDto.get(pageLimit - 1).getAccountNumber());
+            }
+            return accountDetailsResponse;
+        } catch (TransferException e) {
+            logger.error("Error fetching account details {},{}", e.getErrorCode(), e);
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+        }
+        accountDetailsResponse.setErrorCode(Arrays.asList(ErrorCode.ERROR_GETTING_ACCOUNT_INFO));
+        return accountDetailsResponse;
+    }
+
+    /**
+     * Stream details of all accounts as newline delimited JSON, one AccountDto per line.
+     * Accounts are written as they are read from the database cursor, nothing is collected
+     * in memory. An error after the first line can only be reported by closing the response.
+     *
+     * @return
+     */
+    @GetMapping(value = "/accounts/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamAllAccountDetails() {
+        logger.debug("Streaming account details for all accounts");
+        ObjectWriter accountDtoWriter = objectMapper.writerFor(AccountDto.class);
+        StreamingResponseBody responseBody = outputStream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            try {
+                accountService.streamAccountDetails(account -> {
+                    try {
+                        writer.write(accountDtoWriter.writeValueAsString(accountMapper.accountEntityToDtoMapper.apply(account)));
+                        writer.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (TransferException e) {
+                logger.error("Error streaming account details {},{}", e.getErrorCode(), e);
+                throw new IOException("Error streaming account details", e);
+            }
+            writer.flush();
+        };
+        return ResponseEntity.status(HttpStatus.OK)
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(responseBody);
+    }
+
     /**
      * Get details of given accounts.
      *
      * @param accountDetailsRequest
      * @return
      */
-    @PostMapping(value = "/accounts", produces = "application/json", consumes = "application/json")
+    @PostMapping(value = "/accounts", produces = {"application/json", WireFormat.APPLICATION_SMILE},
+            consumes = {"application/json", WireFormat.APPLICATION_SMILE})
     public AccountDetailsResponse getAccountDetails(@RequestBody AccountDetailsRequest accountDetailsRequest) {
 
         logger.debug("Getting account details for account numbers: {}", accountDetailsRequest.getAccountNumbers());
-        AccountDetailsResponse accountDetailsResponse = getAccountDetailsResponse();
+        AccountDetailsResponse accountDetailsResponse = new AccountDetailsResponse();
         try {
             List<Account> accounts = accountService.getAccountDetails(accountDetailsRequest.getAccountNumbers());
             List<AccountDto> listAccountDto = accounts.stream().map(accountMapper.accountEntityToDtoMapper).collect(Collectors.toList());
@@ -101,44 +201,87 @@ public class AccountServiceController {
      * @param updateAccountDetailsRequest
      * @return
      */
-    @PostMapping(value = "/update", produces = "application/json", consumes = "application/json")
+    @PostMapping(value = "/update", produces = {"application/json", WireFormat.APPLICATION_SMILE},
+            consumes = {"application/json", WireFormat.APPLICATION_SMILE})
     public UpdateAccountDetailsResponse updateAccountDetails(@RequestBody UpdateAccountDetailsRequest updateAccountDetailsRequest) {
 
         TransferFundDto transferFundDto = updateAccountDetailsRequest.getTransferFundDto();
         logger.debug("Initiating fund transfer from account: {} to account: {}", transferFundDto.getSourceAccountNumber(), transferFundDto.getDestinationAccountNumber());
 
-        UpdateAccountDetailsResponse updateAccountDetailsResponse = getUpdateAccountDetailsResponse();
+        UpdateAccountDetailsResponse updateAccountDetailsResponse = new UpdateAccountDetailsResponse();
         updateAccountDetailsResponse.setTransferFundDto(transferFundDto);
+        if (isDeadlineExceeded()) {
+            updateAccountDetailsResponse.setErrorCodeList(Arrays.asList(ErrorCode.REQUEST_DEADLINE_EXCEEDED));
+            return updateAccountDetailsResponse;
+        }
         try {
-            // validate account details
-            List<ErrorCode> errorCodeList = accountService.validateAccountDetailsForTransfer(transferFundDto);
-
-            // If errors identified log errors in response and exit
-            if (errorCodeList.size() > 0) {
-                updateAccountDetailsResponse.setErrorCodeList(errorCodeList);
-                return updateAccountDetailsResponse;
-            }
-
-            // No validation errors found, execute fund transfer in isolation
-            errorCodeList = accountService.updateAccountDetails(updateAccountDetailsRequest.getTransferFundDto());
+            // Validate and execute fund transfer in a single transaction,
+            // validation errors if any are returned in the error code list
+            List<ErrorCode> errorCodeList = accountService.updateAccountDetails(transferFundDto, updateAccountDetailsRequest.getIdempotencyKey());
             updateAccountDetailsResponse.setErrorCodeList(errorCodeList);
 
         } catch (TransferException e) {
             logger.error("Error updating account details {},{}", e.getErrorCode(), e);
-            updateAccountDetailsResponse.setErrorCodeList(Arrays.asList(e.getErrorCode()));
+            updateAccountDetailsResponse.setErrorCodeList(getUpdateErrorCodeList(e.getErrorCode()));
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
-            updateAccountDetailsResponse.setErrorCodeList(Arrays.asList(ErrorCode.ERROR_UPDATING_ACCOUNT_INFO));
+            updateAccountDetailsResponse.setErrorCodeList(getUpdateErrorCodeList(ErrorCode.ERROR_UPDATING_ACCOUNT_INFO));
         }
         return updateAccountDetailsResponse;
     }
 
-    private AccountDetailsResponse getAccountDetailsResponse() {
-        return accountDetailsResponseObjectFactory.getObject();
+    /**
+     * Update account details for a batch of transfers, all or nothing or best effort.
+     *
+     * @param updateAccountDetailsBatchRequest
+     * @return
+     */
+    @PostMapping(value = "/update-batch", produces = {"application/json", WireFormat.APPLICATION_SMILE},
+            consumes = {"application/json", WireFormat.APPLICATION_SMILE})
+    public UpdateAccountDetailsBatchResponse updateAccountDetailsBatch(@RequestBody UpdateAccountDetailsBatchRequest updateAccountDetailsBatchRequest) {
+
+        List<TransferFundDto> transferFundDtoList = updateAccountDetailsBatchRequest.getTransferFundDtoList();
+        logger.debug("Initiating batch of {} fund transfers, all or nothing: {}", transferFundDtoList.size(), updateAccountDetailsBatchRequest.isAllOrNothing());
+
+        UpdateAccountDetailsBatchResponse updateAccountDetailsBatchResponse = new UpdateAccountDetailsBatchResponse();
+        if (isDeadlineExceeded()) {
+            updateAccountDetailsBatchResponse.setErrorCodeList(Arrays.asList(ErrorCode.REQUEST_DEADLINE_EXCEEDED));
+            return updateAccountDetailsBatchResponse;
+        }
+        try {
+            List<List<ErrorCode>> listErrorCodeList = accountService.updateAccountDetails(transferFundDtoList, updateAccountDetailsBatchRequest.isAllOrNothing());
+
+            List<UpdateAccountDetailsResponse> updateAccountDetailsResponseList = new ArrayList<>(transferFundDtoList.size());
+            for (int i = 0; i < transferFundDtoList.size(); i++) {
+                UpdateAccountDetailsResponse updateAccountDetailsResponse = new UpdateAccountDetailsResponse();
+                updateAccountDetailsResponse.setTransferFundDto(transferFundDtoList.get(i));
+                updateAccountDetailsResponse.setErrorCodeList(listErrorCodeList.get(i));
+                updateAccountDetailsResponseList.add(updateAccountDetailsResponse);
+            }
+            updateAccountDetailsBatchResponse.setUpdateAccountDetailsResponseList(updateAccountDetailsResponseList);
+            updateAccountDetailsBatchResponse.setErrorCodeList(new ArrayList<>());
+
+        } catch (TransferException e) {
+            logger.error("Error updating account details {},{}", e.getErrorCode(), e);
+            updateAccountDetailsBatchResponse.setErrorCodeList(getUpdateErrorCodeList(e.getErrorCode()));
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            updateAccountDetailsBatchResponse.setErrorCodeList(getUpdateErrorCodeList(ErrorCode.ERROR_UPDATING_ACCOUNT_INFO));
+        }
+        return updateAccountDetailsBatchResponse;
     }
 
+    private boolean isDeadlineExceeded() {
+        if (!RequestDeadline.isExpired()) {
+            return false;
+        }
+        logger.error("Deadline of the request exceeded before updating account details");
+        expiredCounter.increment();
+        return true;
+    }
 
-    private UpdateAccountDetailsResponse getUpdateAccountDetailsResponse() {
-        return updateAccountDetailsResponseObjectFactory.getObject();
+    // An update failing after the deadline passed was rolled back for it, or timed out waiting for locks
+    private List<ErrorCode> getUpdateErrorCodeList(ErrorCode errorCode) {
+        return Arrays.asList(RequestDeadline.isExpired() ? ErrorCode.REQUEST_DEADLINE_EXCEEDED : errorCode);
     }
 }
@@ -0,0 +1,326 @@
+package org.account.api.engine;
+
+import org.common.api.money.Money;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * AccountJournal is an append-only log of the transfers applied by the in-memory engine.
+ * <p>
+ * Every record holds the resulting balances of the accounts it changes rather than deltas, so
+ * replaying a segment is idempotent. Records are tab separated lines:
+ * <ul>
+ * <li>T source sourceBalance destination destinationBalance: a transfer within one shard</li>
+ * <li>D transferId source sourceBalance destination amount: the debit of a transfer across shards,
+ * which opens the transfer until its credit is journaled</li>
+ * <li>C transferId account balance: the credit closing a transfer across shards, to its destination
+ * or back to its source</li>
+ * <li>P transferId source destination amount: a transfer still open when the segment was started</li>
+ * <li>B account balance: a balance restored by recovery</li>
+ * </ul>
+ * A caller acknowledges a transfer only after {@link #awaitDurable()}: the first waiting caller
+ * forces the segment for every record appended so far, so concurrent transfers share one fsync,
+ * and appends are not held up while it does.
+ * <p>
+ * The journal is split into segments: a write-behind checkpoint rotates the current segment,
+ * persists the balances to the database and then deletes the rotated segments. Open transfers
+ * are carried into the new segment, and whatever segments remain at startup are replayed, with
+ * the credit of every open transfer applied.
+ */
+public class AccountJournal {
+
+    private static final String SEGMENT_PREFIX = "account-journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final char SEPARATOR = '\t';
+
+    private final Path directory;
+    private long segmentSequence;
+    private Path segmentPath;
+    private FileChannel segmentChannel;
+    private long appendedCount;
+
+    // Transfers across shards debited and not yet credited, guarded by this
+    private final Map<String, OpenTransfer> openTransfers = new LinkedHashMap<>();
+
+    // Group commit state, guarded by syncLock
+    private final Object syncLock = new Object();
+    private long durableCount;
+    private boolean syncInProgress;
+
+    public AccountJournal(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        List<Path> segments = listSegments();
+        this.segmentSequence = segments.isEmpty() ? 0 : getSequence(segments.get(segments.size() - 1));
+        openSegment();
+    }
+
+    /**
+     * Identifier of a new transfer across shards.
+     */
+    public String newTransferId() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Append a transfer between two accounts of the same shard.
+     */
+    public void appendTransfer(String sourceAccountNumber, Money sourceBalance, String destinationAccountNumber, Money destinationBalance) {
+        append(record("T", sourceAccountNumber, sourceBalance.toString(), destinationAccountNumber, destinationBalance.toString()));
+    }
+
+    /**
+     * Append the debit of a transfer across shards, the transfer stays open until {@link #appendCredit}.
+     */
+    public synchronized void appendDebit(String transferId, String sourceAccountNumber, Money sourceBalance,
+                                         String destinationAccountNumber, Money amount) {
+        append(record("D", transferId, sourceAccountNumber, sourceBalance.toString(), destinationAccountNumber, amount.toString()));
+        openTransfers.put(transferId, new OpenTransfer(sourceAccountNumber, destinationAccountNumber, amount.toBigDecimal()));
+    }
+
+    /**
+     * Append the credit closing a transfer across shards.
+     */
+    public synchronized void appendCredit(String transferId, String accountNumber, Money balance) {
+        append(record("C", transferId, accountNumber, balance.toString()));
+        openTransfers.remove(transferId);
+    }
+
+    /**
+     * Wait until every record appended before this call is forced to disk.
+     */
+    public void awaitDurable() throws IOException {
+        long count;
+        synchronized (this) {
+            count = appendedCount;
+        }
+        while (true) {
+            synchronized (syncLock) {
+                while (syncInProgress && durableCount < count) {
+                    try {
+                        syncLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted waiting for the journal to be synced");
+                    }
+                }
+                if (durableCount >= count) {
+                    return;
+                }
+                syncInProgress = true;
+            }
+
+            // This caller forces the segment for all records appended so far, outside the append
+            // monitor so appends go on meanwhile. A segment closed by rotate() was forced before.
+            long syncedCount = 0;
+            try {
+                FileChannel channel;
+                long forcedCount;
+                synchronized (this) {
+                    channel = segmentChannel;
+                    forcedCount = appendedCount;
+                }
+                try {
+                    channel.force(false);
+                } catch (ClosedByInterruptException e) {
+                    throw e;
+                } catch (ClosedChannelException e) {
+                    // Rotated while forcing, rotate() forced the records before closing the segment
+                }
+                syncedCount = forcedCount;
+            } finally {
+                synchronized (syncLock) {
+                    durableCount = Math.max(durableCount, syncedCount);
+                    syncInProgress = false;
+                    syncLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Close the current segment and start a new one, carrying over the open transfers.
+     *
+     * @return all segments before the new one, ready to be deleted once checkpointed
+     */
+    public synchronized List<Path> rotate() throws IOException {
+        segmentChannel.force(false);
+        segmentChannel.close();
+        openSegment();
+        openTransfers.forEach((transferId, openTransfer) -> append(record("P", transferId, openTransfer.sourceAccountNumber,
+                openTransfer.destinationAccountNumber, openTransfer.amount.toPlainString())));
+        segmentChannel.force(false);
+        List<Path> segments = listSegments();
+        segments.remove(segmentPath);
+        return segments;
+    }
+
+    /**
+     * Recover the given segments: the latest journaled balance of every account, with the credit of
+     * every transfer left open applied to the latest balance of its destination, or to its stored
+     * balance if the destination was not journaled. A transfer whose destination is not found is
+     * credited back to its source. The recovered balances are journaled to the
+     * current segment, which closes the open transfers, so the segments can be deleted once
+     * the balances are persisted.
+     *
+     * @param segments       segments to recover, in order
+     * @param storedBalances stored balance of an account
+     * @return recovered balances
+     */
+    public Map<String, BigDecimal> recover(List<Path> segments, Function<String, BigDecimal> storedBalances) throws IOException {
+        Map<String, BigDecimal> balances = new LinkedHashMap<>();
+        Map<String, OpenTransfer> recoveredTransfers = new LinkedHashMap<>();
+        for (Path segment : segments) {
+            readSegment(segment, balances, recoveredTransfers);
+        }
+
+        List<String> recoveryRecords = new ArrayList<>();
+        balances.forEach((accountNumber, balance) -> recoveryRecords.add(record("B", accountNumber, balance.toPlainString())));
+        recoveredTransfers.forEach((transferId, openTransfer) -> {
+            String accountNumber = openTransfer.destinationAccountNumber;
+            BigDecimal balance = balances.containsKey(accountNumber) ? balances.get(accountNumber) : storedBalances.apply(accountNumber);
+            if (balance == null) {
+                accountNumber = openTransfer.sourceAccountNumber;
+                balance = balances.containsKey(accountNumber) ? balances.get(accountNumber) : storedBalances.apply(accountNumber);
+            }
+            balances.put(accountNumber, balance.add(openTransfer.amount));
+            recoveryRecords.add(record("C", transferId, accountNumber, balances.get(accountNumber).toPlainString()));
+        });
+        recoveryRecords.forEach(this::append);
+        awaitDurable();
+        return balances;
+    }
+
+    public void delete(List<Path> segments) throws IOException {
+        for (Path segment : segments) {
+            Files.deleteIfExists(segment);
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        segmentChannel.force(false);
+        segmentChannel.close();
+    }
+
+    /**
+     * Replay the records of a segment in order. A torn or missing record ends the segment, as the
+     * records after it were never acknowledged.
+     */
+    private void readSegment(Path segment, Map<String, BigDecimal> balances, Map<String, OpenTransfer> recoveredTransfers) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+                try {
+                    switch (fields[0]) {
+                        case "T":
+                            checkFieldCount(fields, 5);
+                            balances.put(fields[1], new BigDecimal(fields[2]));
+                            balances.put(fields[3], new BigDecimal(fields[4]));
+                            break;
+                        case "D":
+                            checkFieldCount(fields, 6);
+                            balances.put(fields[2], new BigDecimal(fields[3]));
+                            recoveredTransfers.put(fields[1], new OpenTransfer(fields[2], fields[4], new BigDecimal(fields[5])));
+                            break;
+                        case "P":
+                            checkFieldCount(fields, 5);
+                            recoveredTransfers.put(fields[1], new OpenTransfer(fields[2], fields[3], new BigDecimal(fields[4])));
+                            break;
+                        case "C":
+                            checkFieldCount(fields, 4);
+                            balances.put(fields[2], new BigDecimal(fields[3]));
+                            recoveredTransfers.remove(fields[1]);
+                            break;
+                        case "B":
+                            checkFieldCount(fields, 3);
+                            balances.put(fields[1], new BigDecimal(fields[2]));
+                            break;
+                        default:
+                            return;
+                    }
+                } catch (IllegalArgumentException e) {
+                    // NumberFormatException included, a torn record
+                    return;
+                }
+            }
+        }
+    }
+
+    private void checkFieldCount(String[] fields, int count) {
+        if (fields.length != count) {
+            throw new IllegalArgumentException("Torn journal record");
+        }
+    }
+
+    private synchronized void append(String record) {
+        ByteBuffer buffer = ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+        try {
+            while (buffer.hasRemaining()) {
+                segmentChannel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        appendedCount++;
+    }
+
+    private String record(String type, String... fields) {
+        StringBuilder record = new StringBuilder(type);
+        for (String field : fields) {
+            record.append(SEPARATOR).append(field);
+        }
+        return record.append('\n').toString();
+    }
+
+    private void openSegment() throws IOException {
+        segmentSequence++;
+        segmentPath = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segmentSequence, SEGMENT_SUFFIX));
+        segmentChannel = FileChannel.open(segmentPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(segments::add);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private long getSequence(Path segment) {
+        String fileName = segment.getFileName().toString();
+        return Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static class OpenTransfer {
+        private final String sourceAccountNumber;
+        private final String destinationAccountNumber;
+        private final BigDecimal amount;
+
+        private OpenTransfer(String sourceAccountNumber, String destinationAccountNumber, BigDecimal amount) {
+            this.sourceAccountNumber = sourceAccountNumber;
+            this.destinationAccountNumber = destinationAccountNumber;
+            this.amount = amount;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package org.account.api.engine;
+
+import org.account.api.repository.AccountRepository;
+import org.common.api.money.Money;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * AccountShard owns the in-memory balances of a partition of accounts.
+ * <p>
+ * All reads and writes of the shard state run as sequenced commands on a single
+ * writer thread fed by a bounded queue, so balances are never locked. Accounts
+ * are loaded from the AccountRepository on the loader executor the first time a command
+ * touches them, and the command is resubmitted once they are, so the writer thread never
+ * waits for the database. Every transfer is appended to the AccountJournal before it becomes
+ * visible. Callers wait for the journal to be durable before acknowledging a transfer.
+ * <p>
+ * Account numbers are compared ignoring case, balances are held and journaled under the
+ * account number stored in the database.
+ * <p>
+ * Balances are held as Money of a fixed scale, so commands do long arithmetic only.
+ */
+public class AccountShard {
+
+    /**
+     * Outcome of a debit or credit command.
+     */
+    public enum Result {
+        APPLIED,
+        ACCOUNT_NOT_FOUND,
+        INSUFFICIENT_FUNDS
+    }
+
+    private final TreeMap<String, Money> balances = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final Set<String> dirtyAccountNumbers = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    private final AccountRepository accountRepository;
+    private final AccountJournal accountJournal;
+    private final int scale;
+    private final ThreadPoolExecutor writer;
+    private final Executor loader;
+
+    public AccountShard(int shardId, int queueCapacity, int scale, AccountRepository accountRepository, AccountJournal accountJournal,
+                        Executor loader) {
+        this.accountRepository = accountRepository;
+        this.accountJournal = accountJournal;
+        this.scale = scale;
+        this.loader = loader;
+        this.writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "account-shard-" + shardId);
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Debit the source account of a transfer across shards if it exists and holds sufficient funds.
+     * The journal holds the transfer open until it is credited.
+     */
+    public CompletableFuture<Result> debit(String transferId, String accountNumber, String destinationAccountNumber, Money amount) {
+        return submit(Collections.singletonList(accountNumber), () -> {
+            String storedAccountNumber = getStoredAccountNumber(accountNumber);
+            if (storedAccountNumber == null) {
+                return Result.ACCOUNT_NOT_FOUND;
+            }
+            Money balance = balances.get(storedAccountNumber);
+            if (balance.isLessThan(amount)) {
+                return Result.INSUFFICIENT_FUNDS;
+            }
+            Money newBalance = balance.subtract(amount);
+            accountJournal.appendDebit(transferId, storedAccountNumber, newBalance, destinationAccountNumber, amount);
+            update(storedAccountNumber, newBalance);
+            return Result.APPLIED;
+        });
+    }
+
+    /**
+     * Credit the account of a transfer across shards if it exists, which closes the transfer.
+     */
+    public CompletableFuture<Result> credit(String transferId, String accountNumber, Money amount) {
+        return submit(Collections.singletonList(accountNumber), () -> {
+            String storedAccountNumber = getStoredAccountNumber(accountNumber);
+            if (storedAccountNumber == null) {
+                return Result.ACCOUNT_NOT_FOUND;
+            }
+            Money newBalance = balances.get(storedAccountNumber).add(amount);
+            accountJournal.appendCredit(transferId, storedAccountNumber, newBalance);
+            update(storedAccountNumber, newBalance);
+            return Result.APPLIED;
+        });
+    }
+
+    /**
+     * Move funds between two accounts owned by this shard in a single command.
+     */
+    public CompletableFuture<Result> transfer(String sourceAccountNumber, String destinationAccountNumber, Money amount) {
+        return submit(Arrays.asList(sourceAccountNumber, destinationAccountNumber), () -> {
+            String storedSourceAccountNumber = getStoredAccountNumber(sourceAccountNumber);
+            String storedDestinationAccountNumber = getStoredAccountNumber(destinationAccountNumber);
+            if (storedSourceAccountNumber == null || storedDestinationAccountNumber == null) {
+                return Result.ACCOUNT_NOT_FOUND;
+            }
+            Money sourceBalance = balances.get(storedSourceAccountNumber);
+            if (sourceBalance.isLessThan(amount)) {
+                return Result.INSUFFICIENT_FUNDS;
+            }
+            Money newSourceBalance = sourceBalance.subtract(amount);
+            Money newDestinationBalance = balances.get(storedDestinationAccountNumber).add(amount);
+            accountJournal.appendTransfer(storedSourceAccountNumber, newSourceBalance, storedDestinationAccountNumber, newDestinationBalance);
+            update(storedSourceAccountNumber, newSourceBalance);
+            update(storedDestinationAccountNumber, newDestinationBalance);
+            return Result.APPLIED;
+        });
+    }
+
+    /**
+     * Current balances of the given accounts, loading them if required. Unknown accounts are left out.
+     */
+    public CompletableFuture<Map<String, Money>> getBalances(Collection<String> accountNumbers) {
+        return submit(accountNumbers, () -> {
+            Map<String, Money> snapshot = new LinkedHashMap<>();
+            for (String accountNumber : accountNumbers) {
+                Money balance = balances.get(accountNumber);
+                if (balance != null) {
+                    snapshot.put(accountNumber, balance);
+                }
+            }
+            return snapshot;
+        });
+    }
+
+    /**
+     * Balances already held in memory, without loading missing accounts.
+     */
+    public CompletableFuture<Map<String, Money>> getLoadedBalances() {
+        return submit(() -> new HashMap<>(balances));
+    }
+
+    /**
+     * Balances changed since the last call, to be written behind to the AccountRepository.
+     */
+    public CompletableFuture<Map<String, Money>> drainDirtyBalances() {
+        return submit(() -> {
+            Map<String, Money> dirtyBalances = new HashMap<>();
+            for (String accountNumber : dirtyAccountNumbers) {
+                dirtyBalances.put(accountNumber, balances.get(accountNumber));
+            }
+            dirtyAccountNumbers.clear();
+            return dirtyBalances;
+        });
+    }
+
+    public void shutdown() throws InterruptedException {
+        writer.shutdown();
+        writer.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> command) {
+        return CompletableFuture.supplyAsync(command, writer);
+    }
+
+    /**
+     * Run a command once the given accounts are loaded. Missing accounts are read on the loader
+     * executor and the command is resubmitted with them, a balance loaded by another command in
+     * the meantime is kept. Accounts still missing then are not found.
+     */
+    private <T> CompletableFuture<T> submit(Collection<String> accountNumbers, Supplier<T> command) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        writer.execute(() -> {
+            Set<String> missingAccountNumbers = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            for (String accountNumber : accountNumbers) {
+                if (!balances.containsKey(accountNumber)) {
+                    missingAccountNumbers.add(accountNumber);
+                }
+            }
+            if (missingAccountNumbers.isEmpty()) {
+                complete(result, command);
+                return;
+            }
+            CompletableFuture.supplyAsync(() -> load(missingAccountNumbers), loader).whenComplete((loadedBalances, e) -> {
+                if (e != null) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                try {
+                    writer.execute(() -> {
+                        loadedBalances.forEach(balances::putIfAbsent);
+                        complete(result, command);
+                    });
+                } catch (RuntimeException rejected) {
+                    result.completeExceptionally(rejected);
+                }
+            });
+        });
+        return result;
+    }
+
+    private <T> void complete(CompletableFuture<T> result, Supplier<T> command) {
+        try {
+            result.complete(command.get());
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Balances of the given accounts read from the AccountRepository, by stored account number.
+     */
+    private Map<String, Money> load(Collection<String> accountNumbers) {
+        Map<String, Money> loadedBalances = new HashMap<>();
+        for (String accountNumber : accountNumbers) {
+            accountRepository.findById(accountNumber).ifPresent(account ->
+                    loadedBalances.put(account.getAccountNumber(), Money.of(account.getAccountBalance(), scale)));
+        }
+        return loadedBalances;
+    }
+
+    /**
+     * Account number of a loaded account as stored, which the balances are keyed and journaled by.
+     */
+    private String getStoredAccountNumber(String accountNumber) {
+        String storedAccountNumber = balances.ceilingKey(accountNumber);
+        return storedAccountNumber != null && storedAccountNumber.equalsIgnoreCase(accountNumber) ? storedAccountNumber : null;
+    }
+
+    private void update(String accountNumber, Money balance) {
+        balances.put(accountNumber, balance);
+        dirtyAccountNumbers.add(accountNumber);
+    }
+}
@@ -9,6 +9,7 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import java.math.BigDecimal;
 
 /**
@@ -28,4 +29,9 @@ public class Account {
 
     @Column(name = "account_balance")
     private BigDecimal accountBalance;
+
+    // Incremented on every update, including the bulk UPDATE statements of AccountRepository
+    @Version
+    @Column(name = "version", columnDefinition = "bigint default 0 not null")
+    private Long version;
 }
@@ -0,0 +1,39 @@
+package org.account.api.entity;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+import java.math.BigDecimal;
+
+/**
+ * Model for AccountBucket entity, a balance bucket of a hot account.
+ * Credits to a hot account land on one of its buckets instead of the
+ * ACCOUNT row, the account balance is the ACCOUNT row plus all buckets.
+ * Table name: ACCOUNT_BUCKET
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+@Entity
+@Table(name = "account_bucket")
+@IdClass(AccountBucketId.class)
+public class AccountBucket {
+
+    @Id
+    @Column(name = "account_number")
+    private String accountNumber;
+
+    @Id
+    @Column(name = "bucket_index")
+    private int bucketIndex;
+
+    @Column(name = "bucket_balance")
+    private BigDecimal bucketBalance;
+}
@@ -0,0 +1,20 @@
+package org.account.api.entity;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Primary key of AccountBucket entity.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class AccountBucketId implements Serializable {
+
+    private String accountNumber;
+    private int bucketIndex;
+}
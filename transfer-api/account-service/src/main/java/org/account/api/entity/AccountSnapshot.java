@@ -0,0 +1,36 @@
+package org.account.api.entity;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.math.BigDecimal;
+
+/**
+ * Model for AccountSnapshot entity, the balance of an account including all of its
+ * LedgerEntries up to last_entry_id. The current balance is the snapshot balance plus
+ * the entries after it, snapshots are rolled forward by the LedgerCompactor.
+ * Table name: ACCOUNT_SNAPSHOT
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+@Entity
+@Table(name = "account_snapshot")
+public class AccountSnapshot {
+
+    @Id
+    @Column(name = "account_number")
+    private String accountNumber;
+
+    @Column(name = "balance")
+    private BigDecimal balance;
+
+    @Column(name = "last_entry_id")
+    private long lastEntryId;
+}
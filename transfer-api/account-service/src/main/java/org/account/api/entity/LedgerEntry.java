@@ -0,0 +1,52 @@
+package org.account.api.entity;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Model for LedgerEntry entity, one side of a fund transfer of the ledger engine.
+ * Every transfer inserts a debit entry with a negative amount for the source account
+ * and a credit entry with a positive amount for the destination account, entries
+ * are never updated. The index on (account_number, entry_id) serves the entries of an
+ * account since its AccountSnapshot as a range scan.
+ * Table name: LEDGER_ENTRY
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+@Entity
+@Table(name = "ledger_entry", indexes = @Index(name = "idx_ledger_entry_account_entry", columnList = "account_number, entry_id"))
+public class LedgerEntry {
+
+    // Ids must be drawn from the sequence while the account lock is held, so they are not pooled
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ledger_entry_seq")
+    @SequenceGenerator(name = "ledger_entry_seq", sequenceName = "ledger_entry_seq", allocationSize = 1)
+    @Column(name = "entry_id")
+    private Long entryId;
+
+    @Column(name = "transfer_id", length = 36)
+    private String transferId;
+
+    @Column(name = "account_number")
+    private String accountNumber;
+
+    @Column(name = "amount")
+    private BigDecimal amount;
+
+    @Column(name = "created_at")
+    private Instant createdAt;
+}
@@ -0,0 +1,38 @@
+package org.account.api.entity;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.Instant;
+
+/**
+ * Model for TransferIdempotencyKey entity, the Idempotency-Key of an applied transfer
+ * and a hash of its source, destination and amount.
+ * Inserted in the transaction of the transfer, so the primary key rejects a transfer
+ * applied before with the same key.
+ * Table name: TRANSFER_IDEMPOTENCY_KEY
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+@Entity
+@Table(name = "transfer_idempotency_key", indexes = @Index(name = "idx_transfer_idempotency_key_created", columnList = "created_at"))
+public class TransferIdempotencyKey {
+
+    @Id
+    @Column(name = "idempotency_key")
+    private String idempotencyKey;
+
+    @Column(name = "payload_hash")
+    private String payloadHash;
+
+    @Column(name = "created_at")
+    private Instant createdAt;
+}
@@ -0,0 +1,30 @@
+package org.account.api.filter;
+
+import org.common.api.util.RequestDeadline;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Starts the {@link RequestDeadline} of a request from its X-Request-Timeout-Ms header,
+ * for the thread serving it.
+ */
+@Component
+public class RequestDeadlineFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        RequestDeadline.start(request.getHeader(RequestDeadline.HEADER));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            RequestDeadline.clear();
+        }
+    }
+}
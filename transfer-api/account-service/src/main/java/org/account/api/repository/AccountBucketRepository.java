@@ -0,0 +1,59 @@
+package org.account.api.repository;
+
+import org.account.api.entity.AccountBucket;
+import org.account.api.entity.AccountBucketId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * AccountBucketRepository to read and update balance buckets of hot accounts.
+ */
+@Repository
+public interface AccountBucketRepository extends JpaRepository<AccountBucket, AccountBucketId> {
+
+    /**
+     * Credit one bucket of an account.
+     *
+     * @param accountNumber
+     * @param bucketIndex
+     * @param transferAmount
+     * @return number of updated rows, 0 if the bucket does not exist
+     */
+    @Modifying
+    @Query("update AccountBucket b set b.bucketBalance = b.bucketBalance + :transferAmount " +
+            "where b.accountNumber = :accountNumber and b.bucketIndex = :bucketIndex")
+    int creditBucketBalance(@Param("accountNumber") String accountNumber, @Param("bucketIndex") int bucketIndex,
+                            @Param("transferAmount") BigDecimal transferAmount);
+
+    /**
+     * Read and lock all buckets of an account in bucket index order.
+     *
+     * @param accountNumber
+     * @return
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from AccountBucket b where b.accountNumber = :accountNumber order by b.bucketIndex")
+    List<AccountBucket> findAllByAccountNumberForUpdate(@Param("accountNumber") String accountNumber);
+
+    /**
+     * Sum of bucket balances per account, as [accountNumber, sum] rows.
+     *
+     * @param accountNumbers
+     * @return
+     */
+    @Query("select b.accountNumber, sum(b.bucketBalance) from AccountBucket b " +
+            "where b.accountNumber in :accountNumbers group by b.accountNumber")
+    List<Object[]> sumBucketBalances(@Param("accountNumbers") Collection<String> accountNumbers);
+
+    @Query("select b.bucketIndex from AccountBucket b where b.accountNumber = :accountNumber")
+    List<Integer> findBucketIndexes(@Param("accountNumber") String accountNumber);
+}
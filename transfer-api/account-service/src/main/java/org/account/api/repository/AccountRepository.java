@@ -2,8 +2,23 @@ package org.account.api.repository;
 
 import org.account.api.entity.Account;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
 /**
  * AccountRepository which is an interface that extends the Spring Framework class
  * JpaRepository. JpaRepository class is a generics and takes the following two
@@ -13,4 +28,70 @@ import org.springframework.stereotype.Repository;
  */
 @Repository
 public interface AccountRepository extends JpaRepository<Account,String> {
+
+    /**
+     * Read and lock (SELECT ... FOR UPDATE) the given accounts in a single round trip.
+     * Rows are read in account number order, so every transfer touching the same
+     * accounts acquires its row locks in the same canonical order.
+     *
+     * @param accountNumbers
+     * @return
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select a from Account a where a.accountNumber in :accountNumbers order by a.accountNumber")
+    List<Account> findAllByIdForUpdate(@Param("accountNumbers") Collection<String> accountNumbers);
+
+    /**
+     * Debit the given account only if it holds sufficient funds.
+     *
+     * @param accountNumber
+     * @param transferAmount
+     * @return number of updated rows, 0 if the account does not exist or has insufficient funds
+     */
+    @Modifying
+    @Query("update Account a set a.accountBalance = a.accountBalance - :transferAmount, a.version = a.version + 1 " +
+            "where a.accountNumber = :accountNumber and a.accountBalance >= :transferAmount")
+    int debitAccountBalance(@Param("accountNumber") String accountNumber, @Param("transferAmount") BigDecimal transferAmount);
+
+    /**
+     * Credit the given account.
+     *
+     * @param accountNumber
+     * @param transferAmount
+     * @return number of updated rows, 0 if the account does not exist
+     */
+    @Modifying
+    @Query("update Account a set a.accountBalance = a.accountBalance + :transferAmount, a.version = a.version + 1 " +
+            "where a.accountNumber = :accountNumber")
+    int creditAccountBalance(@Param("accountNumber") String accountNumber, @Param("transferAmount") BigDecimal transferAmount);
+
+    /**
+     * Overwrite the balance of the given account.
+     *
+     * @param accountNumber
+     * @param accountBalance
+     * @return number of updated rows, 0 if the account does not exist
+     */
+    @Modifying
+    @Query("update Account a set a.accountBalance = :accountBalance, a.version = a.version + 1 where a.accountNumber = :accountNumber")
+    int updateAccountBalance(@Param("accountNumber") String accountNumber, @Param("accountBalance") BigDecimal accountBalance);
+
+    /**
+     * Keyset page of accounts in account number order.
+     *
+     * @param afterAccountNumber account number of the last row of the previous page, empty for the first page
+     * @param pageable           page size, always page 0
+     * @return
+     */
+    List<Account> findByAccountNumberGreaterThanOrderByAccountNumber(String afterAccountNumber, Pageable pageable);
+
+    /**
+     * Stream all accounts in account number order from a database cursor.
+     * Must be consumed within a transaction and closed.
+     *
+     * @return
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("select a from Account a order by a.accountNumber")
+    Stream<Account> streamAll();
 }
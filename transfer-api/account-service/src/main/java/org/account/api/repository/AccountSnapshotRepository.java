@@ -0,0 +1,51 @@
+package org.account.api.repository;
+
+import org.account.api.entity.AccountSnapshot;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+/**
+ * AccountSnapshotRepository to read ledger balances.
+ * <p>
+ * A balance is the AccountSnapshot balance, or the ACCOUNT row balance for an account without a
+ * snapshot yet, plus the LedgerEntries after the snapshot. Both parts are read by a single
+ * statement, so a snapshot rolled forward concurrently is never counted twice. Balance queries
+ * return [accountNumber, balance] rows in account number order.
+ */
+@Repository
+public interface AccountSnapshotRepository extends JpaRepository<AccountSnapshot, String> {
+
+    String BALANCE_QUERY = "select a.accountNumber, coalesce(s.balance, a.accountBalance) + " +
+            "coalesce((select sum(e.amount) from LedgerEntry e where e.accountNumber = a.accountNumber " +
+            "and e.entryId > coalesce(s.lastEntryId, 0)), 0) " +
+            "from Account a left join AccountSnapshot s on s.accountNumber = a.accountNumber ";
+
+    @Query(BALANCE_QUERY + "order by a.accountNumber")
+    List<Object[]> findAllBalances();
+
+    @Query(BALANCE_QUERY + "where a.accountNumber in :accountNumbers order by a.accountNumber")
+    List<Object[]> findBalances(@Param("accountNumbers") Collection<String> accountNumbers);
+
+    @Query(BALANCE_QUERY + "where a.accountNumber > :afterAccountNumber order by a.accountNumber")
+    List<Object[]> findBalancesAfter(@Param("afterAccountNumber") String afterAccountNumber, Pageable pageable);
+
+    /**
+     * Stream all balances from a database cursor. Must be consumed within a transaction and closed.
+     *
+     * @return
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query(BALANCE_QUERY + "order by a.accountNumber")
+    Stream<Object[]> streamAllBalances();
+}
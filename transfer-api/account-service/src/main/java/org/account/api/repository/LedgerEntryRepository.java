@@ -0,0 +1,50 @@
+package org.account.api.repository;
+
+import org.account.api.entity.LedgerEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * LedgerEntryRepository to insert and aggregate ledger entries.
+ */
+@Repository
+public interface LedgerEntryRepository extends JpaRepository<LedgerEntry, Long> {
+
+    /**
+     * Sum of amounts and highest entry id of the entries of an account after the given entry,
+     * as a single [sum, maxEntryId] row, both null if there are none.
+     *
+     * @param accountNumber
+     * @param afterEntryId
+     * @return
+     */
+    @Query("select sum(e.amount), max(e.entryId) from LedgerEntry e " +
+            "where e.accountNumber = :accountNumber and e.entryId > :afterEntryId")
+    List<Object[]> sumEntriesAfter(@Param("accountNumber") String accountNumber, @Param("afterEntryId") long afterEntryId);
+
+    /**
+     * Accounts having entries not yet included in their snapshot. Scans the whole table, only
+     * used once at startup to find the accounts left to compact.
+     *
+     * @return
+     */
+    @Query("select distinct e.accountNumber from LedgerEntry e left join AccountSnapshot s on s.accountNumber = e.accountNumber " +
+            "where e.entryId > coalesce(s.lastEntryId, 0)")
+    List<String> findAccountNumbersToCompact();
+
+    /**
+     * Delete the entries of an account included in its snapshot.
+     *
+     * @param accountNumber
+     * @param lastEntryId   last entry id of the snapshot
+     * @return number of deleted entries
+     */
+    @Modifying
+    @Query("delete from LedgerEntry e where e.accountNumber = :accountNumber and e.entryId <= :lastEntryId")
+    int deleteEntriesUpTo(@Param("accountNumber") String accountNumber, @Param("lastEntryId") long lastEntryId);
+}
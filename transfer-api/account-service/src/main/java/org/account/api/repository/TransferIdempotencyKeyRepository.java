@@ -0,0 +1,38 @@
+package org.account.api.repository;
+
+import org.account.api.entity.TransferIdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * TransferIdempotencyKeyRepository to record and expire the idempotency keys of applied transfers.
+ */
+@Repository
+public interface TransferIdempotencyKeyRepository extends JpaRepository<TransferIdempotencyKey, String> {
+
+    /**
+     * Insert the key right away rather than at flush, a duplicate key fails this call
+     * with a DataIntegrityViolationException.
+     *
+     * @param idempotencyKey
+     * @param payloadHash
+     * @param createdAt
+     * @return
+     */
+    @Modifying
+    @Query(value = "insert into transfer_idempotency_key (idempotency_key, payload_hash, created_at) values (:idempotencyKey, :payloadHash, :createdAt)", nativeQuery = true)
+    int insert(@Param("idempotencyKey") String idempotencyKey, @Param("payloadHash") String payloadHash, @Param("createdAt") Instant createdAt);
+
+    @Query("select k.payloadHash from TransferIdempotencyKey k where k.idempotencyKey = :idempotencyKey")
+    Optional<String> findPayloadHash(@Param("idempotencyKey") String idempotencyKey);
+
+    @Modifying
+    @Query("delete from TransferIdempotencyKey k where k.createdAt < :createdBefore")
+    int deleteCreatedBefore(@Param("createdBefore") Instant createdBefore);
+}
@@ -0,0 +1,173 @@
+package org.account.api.service;
+
+
+import org.account.api.entity.Account;
+import org.account.api.entity.AccountBucket;
+import org.account.api.repository.AccountBucketRepository;
+import org.account.api.repository.AccountRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Balance striping for hot accounts, configured with account.hot-accounts.
+ * <p>
+ * A hot account receives credits on one of N balance buckets picked round-robin, so
+ * concurrent credits do not serialize on its ACCOUNT row. Debits are taken from the
+ * ACCOUNT row and drain the buckets into it when the row alone is insufficient. A
+ * scheduled rebalance folds bucket balances back into the ACCOUNT row.
+ */
+@Service
+@ConditionalOnProperty(name = "account.engine.type", havingValue = "jpa", matchIfMissing = true)
+public class AccountBucketService implements SmartInitializingSingleton {
+
+    private final static Logger logger = LoggerFactory.getLogger(AccountBucketService.class);
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private AccountBucketRepository accountBucketRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Account numbers are compared ignoring case, as by the other account lookups
+    private final Set<String> hotAccountNumbers = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    @Value("${account.hot-accounts.buckets:8}")
+    private int bucketCount;
+
+    private final AtomicInteger nextBucketIndex = new AtomicInteger();
+
+    @Value("${account.hot-accounts.account-numbers:}")
+    void setHotAccountNumbers(Set<String> accountNumbers) {
+        hotAccountNumbers.clear();
+        hotAccountNumbers.addAll(accountNumbers);
+    }
+
+    /**
+     * Create missing buckets once the database is initialized.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        rebalance();
+    }
+
+    public boolean isHotAccount(String accountNumber) {
+        return hotAccountNumbers.contains(accountNumber);
+    }
+
+    /**
+     * Credit the next bucket of a hot account. Must run within a transaction.
+     *
+     * @param accountNumber
+     * @param transferAmount
+     * @return false if the bucket does not exist, the caller then credits the ACCOUNT row
+     */
+    public boolean creditBucket(String accountNumber, BigDecimal transferAmount) {
+        int bucketIndex = Math.floorMod(nextBucketIndex.getAndIncrement(), bucketCount);
+        return accountBucketRepository.creditBucketBalance(accountNumber, bucketIndex, transferAmount) == 1;
+    }
+
+    /**
+     * Lock all buckets of an account and set them to zero. Must run within a transaction
+     * holding the lock on the ACCOUNT row, which the drained amount is to be added to.
+     *
+     * @param accountNumber
+     * @return sum of the drained bucket balances
+     */
+    public BigDecimal drainBuckets(String accountNumber) {
+        BigDecimal drainedBalance = BigDecimal.ZERO;
+        for (AccountBucket accountBucket : accountBucketRepository.findAllByAccountNumberForUpdate(accountNumber)) {
+            drainedBalance = drainedBalance.add(accountBucket.getBucketBalance());
+            accountBucket.setBucketBalance(BigDecimal.ZERO);
+        }
+        return drainedBalance;
+    }
+
+    /**
+     * Accounts with the bucket balances of hot accounts added. Hot accounts are returned
+     * as new Account instances, so the summed balance is never written back to the ACCOUNT row.
+     *
+     * @param accounts
+     * @return
+     */
+    public List<Account> addBucketBalances(List<Account> accounts) {
+        List<String> hotAccountNumberList = accounts.stream()
+                .map(Account::getAccountNumber)
+                .filter(this::isHotAccount)
+                .collect(Collectors.toList());
+        if (hotAccountNumberList.isEmpty()) {
+            return accounts;
+        }
+
+        Map<String, BigDecimal> bucketBalances = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Object[] row : accountBucketRepository.sumBucketBalances(hotAccountNumberList)) {
+            bucketBalances.put((String) row[0], (BigDecimal) row[1]);
+        }
+
+        List<Account> accountList = new ArrayList<>(accounts.size());
+        for (Account account : accounts) {
+            BigDecimal bucketBalance = bucketBalances.get(account.getAccountNumber());
+            if (bucketBalance == null) {
+                accountList.add(account);
+            } else {
+                Account hotAccount = new Account();
+                hotAccount.setAccountNumber(account.getAccountNumber());
+                hotAccount.setAccountBalance(account.getAccountBalance().add(bucketBalance));
+                accountList.add(hotAccount);
+            }
+        }
+        return accountList;
+    }
+
+    /**
+     * Fold the buckets of every hot account into its ACCOUNT row and create missing buckets.
+     */
+    @Scheduled(fixedDelayString = "${account.hot-accounts.rebalance-interval-ms:5000}")
+    public void rebalance() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        for (String accountNumber : hotAccountNumbers) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> rebalance(accountNumber));
+            } catch (Exception e) {
+                logger.error("Error rebalancing buckets of account {}", accountNumber, e);
+            }
+        }
+    }
+
+    private void rebalance(String accountNumber) {
+        List<Account> accounts = accountRepository.findAllByIdForUpdate(Collections.singletonList(accountNumber));
+        if (accounts.isEmpty()) {
+            return;
+        }
+        Account account = accounts.get(0);
+        account.setAccountBalance(account.getAccountBalance().add(drainBuckets(accountNumber)));
+
+        List<Integer> bucketIndexes = accountBucketRepository.findBucketIndexes(accountNumber);
+        for (int bucketIndex = 0; bucketIndex < bucketCount; bucketIndex++) {
+            if (!bucketIndexes.contains(bucketIndex)) {
+                accountBucketRepository.save(new AccountBucket(accountNumber, bucketIndex, BigDecimal.ZERO));
+            }
+        }
+    }
+}
@@ -7,11 +7,16 @@ import org.common.api.exception.TransferException;
 import org.common.api.util.ErrorCode;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface AccountService {
 
     List<Account> getAccountDetails() throws TransferException;
     List<Account> getAccountDetails(List<String> accountNumbers) throws TransferException;
+    List<Account> getAccountDetails(String afterAccountNumber, int limit) throws TransferException;
+    void streamAccountDetails(Consumer<Account> accountConsumer) throws TransferException;
     List<ErrorCode> validateAccountDetailsForTransfer(TransferFundDto transferFundDto) throws TransferException;
     List<ErrorCode>  updateAccountDetails(TransferFundDto transferFundDto)  throws TransferException;
+    List<ErrorCode>  updateAccountDetails(TransferFundDto transferFundDto, String idempotencyKey)  throws TransferException;
+    List<List<ErrorCode>> updateAccountDetails(List<TransferFundDto> transferFundDtoList, boolean allOrNothing) throws TransferException;
 }
@@ -0,0 +1,121 @@
+package org.account.api.service;
+
+
+import org.account.api.entity.Account;
+import org.account.api.entity.AccountSnapshot;
+import org.account.api.repository.AccountRepository;
+import org.account.api.repository.AccountSnapshotRepository;
+import org.account.api.repository.LedgerEntryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rolls AccountSnapshots of the ledger engine forward, configured with account.ledger.
+ * <p>
+ * Each account is compacted in its own transaction holding the lock on its ACCOUNT row, the
+ * same lock every ledger transfer holds while it inserts entries for the account. All entries
+ * of the account visible then are committed, and entries inserted later draw higher ids from
+ * the sequence, so moving last_entry_id to the highest entry id never skips an entry.
+ * <p>
+ * Transfers mark the accounts they insert entries for as dirty, and a run only compacts the
+ * dirty accounts, so its cost does not grow with the size of LEDGER_ENTRY. Only the first run
+ * after startup scans the table for accounts with entries after their snapshot. Entries covered
+ * by a snapshot are deleted in the same transaction unless account.ledger.prune-compacted-entries
+ * is false.
+ */
+@Service
+@ConditionalOnProperty(name = "account.engine.type", havingValue = "ledger")
+public class LedgerCompactor {
+
+    private final static Logger logger = LoggerFactory.getLogger(LedgerCompactor.class);
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private AccountSnapshotRepository accountSnapshotRepository;
+
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${account.ledger.prune-compacted-entries:true}")
+    private boolean pruneCompactedEntries;
+
+    private final Set<String> dirtyAccountNumbers = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean scanned;
+
+    /**
+     * Mark accounts as having new entries. Called while the transfer holds the locks on their
+     * ACCOUNT rows, so a compaction of the accounts waits for the entries to be committed.
+     *
+     * @param accountNumbers
+     */
+    public void markDirty(Collection<String> accountNumbers) {
+        dirtyAccountNumbers.addAll(accountNumbers);
+    }
+
+    /**
+     * Roll the snapshot of every dirty account forward to its last entry.
+     */
+    @Scheduled(fixedDelayString = "${account.ledger.compaction-interval-ms:5000}")
+    public synchronized void compact() {
+        Set<String> accountNumbers = new TreeSet<>();
+        if (!scanned) {
+            accountNumbers.addAll(ledgerEntryRepository.findAccountNumbersToCompact());
+            scanned = true;
+        }
+        for (String accountNumber : dirtyAccountNumbers) {
+            dirtyAccountNumbers.remove(accountNumber);
+            accountNumbers.add(accountNumber);
+        }
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        for (String accountNumber : accountNumbers) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> compact(accountNumber));
+            } catch (Exception e) {
+                logger.error("Error compacting ledger entries of account {}", accountNumber, e);
+                dirtyAccountNumbers.add(accountNumber);
+            }
+        }
+    }
+
+    private void compact(String accountNumber) {
+        List<Account> accounts = accountRepository.findAllByIdForUpdate(Collections.singletonList(accountNumber));
+        if (accounts.isEmpty()) {
+            return;
+        }
+        AccountSnapshot accountSnapshot = accountSnapshotRepository.findById(accountNumber)
+                .orElseGet(() -> new AccountSnapshot(accountNumber, accounts.get(0).getAccountBalance(), 0));
+
+        Object[] entries = ledgerEntryRepository.sumEntriesAfter(accountNumber, accountSnapshot.getLastEntryId()).get(0);
+        if (entries[1] == null) {
+            return;
+        }
+        accountSnapshot.setBalance(accountSnapshot.getBalance().add((BigDecimal) entries[0]));
+        accountSnapshot.setLastEntryId((Long) entries[1]);
+        accountSnapshotRepository.save(accountSnapshot);
+        if (pruneCompactedEntries) {
+            ledgerEntryRepository.deleteEntriesUpTo(accountNumber, accountSnapshot.getLastEntryId());
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.account.api.service;
+
+
+import org.account.api.repository.TransferIdempotencyKeyRepository;
+import org.common.api.dto.TransferFundDto;
+import org.common.api.util.ErrorCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Applies a transfer at most once per Idempotency-Key, configured with account.idempotency.
+ * <p>
+ * The key is inserted in the transaction of the transfer, which is committed only if the
+ * transfer is applied. A transfer whose key is already recorded is not applied again and
+ * reports success, as the transfer it repeats, or IDEMPOTENCY_KEY_REUSED if the key was recorded
+ * with a different source, destination or amount. A concurrent duplicate waits on the key until
+ * the first transfer completes. Keys are kept for retention-ms.
+ */
+@Service
+public class TransferIdempotencyService {
+
+    private final static Logger logger = LoggerFactory.getLogger(TransferIdempotencyService.class);
+
+    @Autowired
+    private TransferIdempotencyKeyRepository transferIdempotencyKeyRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${account.idempotency.retention-ms:86400000}")
+    private long retentionMs;
+
+    /**
+     * Run a single transfer in a new READ_COMMITTED transaction, or join the current one.
+     * The transaction is rolled back if the transfer returns errors.
+     *
+     * @param idempotencyKey key of the transfer, null if the transfer is not to be deduplicated
+     * @param transferFundDto the transfer, recorded as a hash with the key
+     * @param transfer
+     * @return error codes of the transfer, empty if it was applied before with the same key
+     */
+    public List<ErrorCode> executeOnce(String idempotencyKey, TransferFundDto transferFundDto, TransactionCallback<List<ErrorCode>> transfer) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        return transactionTemplate.execute(status -> {
+            String payloadHash = idempotencyKey != null ? getPayloadHash(transferFundDto) : null;
+            if (idempotencyKey != null && !register(idempotencyKey, payloadHash)) {
+                status.setRollbackOnly();
+                if (!payloadHash.equals(getRecordedPayloadHash(idempotencyKey))) {
+                    logger.warn("Idempotency key {} reused for a different transfer {}", idempotencyKey, transferFundDto);
+                    return new ArrayList<>(Collections.singletonList(ErrorCode.IDEMPOTENCY_KEY_REUSED));
+                }
+                logger.info("Transfer with idempotency key {} already applied", idempotencyKey);
+                return new ArrayList<>();
+            }
+            List<ErrorCode> listErrorCode = transfer.doInTransaction(status);
+            if (!listErrorCode.isEmpty()) {
+                status.setRollbackOnly();
+            }
+            return listErrorCode;
+        });
+    }
+
+    /**
+     * Delete the keys older than retention-ms.
+     */
+    @Scheduled(fixedDelayString = "${account.idempotency.purge-interval-ms:60000}")
+    public void purge() {
+        try {
+            int purgedCount = new TransactionTemplate(transactionManager).execute(status ->
+                    transferIdempotencyKeyRepository.deleteCreatedBefore(Instant.now().minusMillis(retentionMs)));
+            logger.debug("Purged {} transfer idempotency keys", purgedCount);
+        } catch (Exception e) {
+            logger.error("Error purging transfer idempotency keys", e);
+        }
+    }
+
+    private boolean register(String idempotencyKey, String payloadHash) {
+        try {
+            transferIdempotencyKeyRepository.insert(idempotencyKey, payloadHash, Instant.now());
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            return false;
+        }
+    }
+
+    // Read in a transaction of its own, the failed insert may have aborted the transaction of the transfer
+    private String getRecordedPayloadHash(String idempotencyKey) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transactionTemplate.setReadOnly(true);
+        return transactionTemplate.execute(status -> transferIdempotencyKeyRepository.findPayloadHash(idempotencyKey).orElse(null));
+    }
+
+    /**
+     * SHA-256 of the source and destination account numbers, compared ignoring case as the
+     * accounts are, and of the amount regardless of its scale, so 100 and 100.00 hash alike.
+     *
+     * @param transferFundDto
+     * @return Base64 encoded hash
+     */
+    private static String getPayloadHash(TransferFundDto transferFundDto) {
+        BigDecimal transferAmount = transferFundDto.getTransferAmount();
+        String payload = String.join("\n",
+                String.valueOf(transferFundDto.getSourceAccountNumber()).toLowerCase(Locale.ROOT),
+                String.valueOf(transferFundDto.getDestinationAccountNumber()).toLowerCase(Locale.ROOT),
+                transferAmount != null ? transferAmount.stripTrailingZeros().toPlainString() : "");
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(messageDigest.digest(payload.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
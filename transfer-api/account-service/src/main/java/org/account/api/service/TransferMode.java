@@ -0,0 +1,26 @@
+package org.account.api.service;
+
+/**
+ * Execution modes supported for updating account balances on a fund transfer.
+ * Configured with property: account.transfer.mode
+ */
+public enum TransferMode {
+
+    /**
+     * Read both accounts with SELECT ... FOR UPDATE in account number order,
+     * validate and update the entities.
+     */
+    PESSIMISTIC_LOCK,
+
+    /**
+     * Guarded set based UPDATE statements, insufficient funds are detected
+     * through updated row counts without reading the accounts.
+     */
+    CONDITIONAL_UPDATE,
+
+    /**
+     * Read both accounts without locks, validate and update the entities with a version check.
+     * A conflicting update fails the transaction, which is retried with jittered backoff.
+     */
+    OPTIMISTIC_LOCK
+}
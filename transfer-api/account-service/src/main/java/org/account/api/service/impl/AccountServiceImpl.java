@@ -1,22 +1,48 @@
 package org.account.api.service.impl;
 
 
+import org.account.api.cache.AccountCache;
 import org.account.api.entity.Account;
 import org.account.api.repository.AccountRepository;
+import org.account.api.service.AccountBucketService;
 import org.account.api.service.AccountService;
+import org.account.api.service.TransferIdempotencyService;
+import org.account.api.service.TransferMode;
+import org.account.api.validator.TransferFundValidator;
 import org.common.api.dto.TransferFundDto;
 import org.common.api.exception.TransferException;
 import org.common.api.util.ErrorCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.function.Predicate;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Account service class to perform all Account repository operations supported
@@ -24,11 +50,47 @@ import java.util.function.Predicate;
  * 2. Update Account details
  */
 @Service
+@ConditionalOnProperty(name = "account.engine.type", havingValue = "jpa", matchIfMissing = true)
 public class AccountServiceImpl implements AccountService {
 
+    private final static Logger logger = LoggerFactory.getLogger(AccountServiceImpl.class);
+
     @Autowired
     private AccountRepository accountRepository;
 
+    @Autowired
+    private TransferFundValidator transferFundValidator;
+
+    @Autowired
+    private AccountBucketService accountBucketService;
+
+    @Autowired
+    private AccountCache accountCache;
+
+    @Autowired
+    private TransferIdempotencyService transferIdempotencyService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${account.transfer.mode:PESSIMISTIC_LOCK}")
+    private TransferMode transferMode;
+
+    @Value("${account.transfer.optimistic.max-attempts:5}")
+    private int optimisticMaxAttempts;
+
+    @Value("${account.transfer.optimistic.backoff-ms:5}")
+    private long optimisticBackoffMs;
+
+    @Value("${account.transfer.optimistic.max-backoff-ms:100}")
+    private long optimisticMaxBackoffMs;
+
+    @Value("${account.batch.chunk-size:100}")
+    private int batchChunkSize;
+
     /**
      * Service to read details of all accounts.
      *
@@ -39,14 +101,15 @@ public class AccountServiceImpl implements AccountService {
     @Transactional(readOnly = true, isolation = Isolation.READ_COMMITTED)
     public List<Account> getAccountDetails() throws TransferException {
         try {
-            return accountRepository.findAll();
+            return accountBucketService.addBucketBalances(accountRepository.findAll());
         } catch (Exception e) {
             throw new TransferException(ErrorCode.ERROR_GETTING_ACCOUNT_INFO, e);
         }
     }
 
     /**
-     * Service to read details of specified accounts
+     * Service to read details of specified accounts, served from the AccountCache
+     * when called outside of a read-write transaction.
      *
      * @param accountNumbers
      * @return
@@ -56,7 +119,52 @@ public class AccountServiceImpl implements AccountService {
     @Transactional(readOnly = true, isolation = Isolation.READ_COMMITTED)
     public List<Account> getAccountDetails(List<String> accountNumbers) throws TransferException {
         try {
-            return accountRepository.findAllById(accountNumbers);
+            return accountCache.getAll(accountNumbers, numbers -> accountBucketService.addBucketBalances(accountRepository.findAllById(numbers)));
+        } catch (Exception e) {
+            throw new TransferException(ErrorCode.ERROR_GETTING_ACCOUNT_INFO, e);
+        }
+    }
+
+    /**
+     * Service to read one page of accounts in account number order.
+     *
+     * @param afterAccountNumber account number of the last account of the previous page, null for the first page
+     * @param limit              maximum number of accounts of the page
+     * @return
+     * @throws TransferException
+     */
+    @Override
+    @Transactional(readOnly = true, isolation = Isolation.READ_COMMITTED)
+    public List<Account> getAccountDetails(String afterAccountNumber, int limit) throws TransferException {
+        try {
+            List<Account> accounts = accountRepository.findByAccountNumberGreaterThanOrderByAccountNumber(
+                    afterAccountNumber != null ? afterAccountNumber : "", PageRequest.of(0, limit));
+            return accountBucketService.addBucketBalances(accounts);
+        } catch (Exception e) {
+            throw new TransferException(ErrorCode.ERROR_GETTING_ACCOUNT_INFO, e);
+        }
+    }
+
+    /**
+     * Service to pass every account to the consumer in account number order, as read from a
+     * database cursor. Each account is detached once consumed, so memory use does not grow
+     * with the number of accounts.
+     *
+     * @param accountConsumer
+     * @throws TransferException
+     */
+    @Override
+    @Transactional(readOnly = true, isolation = Isolation.READ_COMMITTED)
+    public void streamAccountDetails(Consumer<Account> accountConsumer) throws TransferException {
+        try (Stream<Account> accounts = accountRepository.streamAll()) {
+            accounts.forEach(account -> {
+                entityManager.detach(account);
+                if (accountBucketService.isHotAccount(account.getAccountNumber())) {
+                    accountConsumer.accept(accountBucketService.addBucketBalances(Collections.singletonList(account)).get(0));
+                } else {
+                    accountConsumer.accept(account);
+                }
+            });
         } catch (Exception e) {
             throw new TransferException(ErrorCode.ERROR_GETTING_ACCOUNT_INFO, e);
         }
@@ -66,122 +174,404 @@ public class AccountServiceImpl implements AccountService {
     @Transactional(readOnly = true, isolation = Isolation.READ_COMMITTED)
     public List<ErrorCode> validateAccountDetailsForTransfer(TransferFundDto transferFundDto) throws TransferException {
 
-        String sourceAccountNumber = transferFundDto.getSourceAccountNumber();
-        String destinationAccountNumber = transferFundDto.getDestinationAccountNumber();
-        BigDecimal transferAmount = transferFundDto.getTransferAmount();
+        // Fetch account details
+        List<Account> accountList = getAccountDetails(Arrays.asList(transferFundDto.getSourceAccountNumber(), transferFundDto.getDestinationAccountNumber()));
+
+        return transferFundValidator.validate(transferFundDto, accountList);
+    }
 
-        List<ErrorCode> errorCodeList = new ArrayList<>();
+    /**
+     * Service to update account details
+     * <p>
+     * The transfer is validated and applied in a single READ_COMMITTED transaction using the configured
+     * {@link TransferMode}, see {@link #transferWithPessimisticLock(TransferFundDto)},
+     * {@link #transferWithConditionalUpdate(TransferFundDto, TransactionStatus)} and
+     * {@link #transferWithOptimisticLock(TransferFundDto)}. Transactions are demarcated here rather
+     * than with @Transactional, so an OPTIMISTIC_LOCK transfer can be retried in a new transaction
+     * without holding a connection between attempts.
+     *
+     * @param transferFundDto
+     * @return
+     * @throws TransferException
+     */
+    @Override
+    public List<ErrorCode> updateAccountDetails(TransferFundDto transferFundDto) throws TransferException {
+        return updateAccountDetails(transferFundDto, null);
+    }
 
-        // Check source and destination account numbers are not same
-        if (sourceAccountNumber.equalsIgnoreCase(destinationAccountNumber)) {
-            errorCodeList.add(ErrorCode.SOURCE_DEST_CAN_NOT_BE_SAME);
+    /**
+     * Service to update account details at most once per idempotency key, see
+     * {@link TransferIdempotencyService}. Each OPTIMISTIC_LOCK attempt records the key again.
+     *
+     * @param transferFundDto
+     * @param idempotencyKey
+     * @return
+     * @throws TransferException
+     */
+    @Override
+    public List<ErrorCode> updateAccountDetails(TransferFundDto transferFundDto, String idempotencyKey) throws TransferException {
+        try {
+            switch (transferMode) {
+                case OPTIMISTIC_LOCK:
+                    return transferWithOptimisticLockRetry(transferFundDto, idempotencyKey);
+                case CONDITIONAL_UPDATE:
+                    return transferIdempotencyService.executeOnce(idempotencyKey, transferFundDto, status -> {
+                        evictOnCompletion(transferFundDto);
+                        return transferWithConditionalUpdate(transferFundDto, status);
+                    });
+                case PESSIMISTIC_LOCK:
+                default:
+                    return transferIdempotencyService.executeOnce(idempotencyKey, transferFundDto, status -> {
+                        evictOnCompletion(transferFundDto);
+                        return transferWithPessimisticLock(transferFundDto);
+                    });
+            }
+        } catch (Exception e) {
+            throw new TransferException(ErrorCode.ERROR_UPDATING_ACCOUNT_INFO, e);
         }
+    }
 
-        // Fetch account details
-        List<Account> accountList = getAccountDetails(Arrays.asList(sourceAccountNumber, destinationAccountNumber));
+    /**
+     * Service to update account details for a batch of transfers, applied in request order.
+     * <p>
+     * All or nothing: the batch runs in a single transaction which is rolled back if any transfer
+     * is invalid, transfers that were valid then report TRANSFER_NOT_APPLIED_BATCH_FAILED.
+     * Best effort: the batch runs in chunks of account.batch.chunk-size transfers, one transaction
+     * per chunk, and only the invalid transfers are left out. Once a chunk fails its transfers
+     * report TRANSFER_OUTCOME_UNKNOWN and the later ones TRANSFER_NOT_APPLIED_BATCH_FAILED, the
+     * results of the committed chunks are kept.
+     * <p>
+     * Batches always use the row locks of {@link #transferWithPessimisticLock(TransferFundDto)},
+     * whatever the configured {@link TransferMode}.
+     *
+     * @param transferFundDtoList
+     * @param allOrNothing
+     * @return error codes of every transfer, in request order
+     * @throws TransferException
+     */
+    @Override
+    public List<List<ErrorCode>> updateAccountDetails(List<TransferFundDto> transferFundDtoList, boolean allOrNothing) throws TransferException {
+        try {
+            TransactionTemplate transactionTemplate = getTransactionTemplate();
 
-        // Check account response
-        if (null == accountList || accountList.size() != 2) {
-            errorCodeList.add(ErrorCode.INVALID_ACCOUNT_NUMBERS);
-        }
+            if (allOrNothing) {
+                return transactionTemplate.execute(status -> {
+                    List<List<ErrorCode>> listErrorCodeList = transferBatchWithPessimisticLock(transferFundDtoList);
+                    if (listErrorCodeList.stream().allMatch(List::isEmpty)) {
+                        return listErrorCodeList;
+                    }
+                    status.setRollbackOnly();
+                    listErrorCodeList.stream()
+                            .filter(List::isEmpty)
+                            .forEach(listErrorCode -> listErrorCode.add(ErrorCode.TRANSFER_NOT_APPLIED_BATCH_FAILED));
+                    return listErrorCodeList;
+                });
+            }
 
-        // Check source account exists
-        Predicate<Account> srcAccountPredicate = account -> account.getAccountNumber().equalsIgnoreCase(sourceAccountNumber);
-        boolean sourceAccountNotExists = accountList.stream().noneMatch(srcAccountPredicate);
-        if (sourceAccountNotExists) {
-            errorCodeList.add(ErrorCode.INVALID_SOURCE_ACCOUNT_NUMBER);
+            List<List<ErrorCode>> listErrorCodeList = new ArrayList<>(transferFundDtoList.size());
+            for (int fromIndex = 0; fromIndex < transferFundDtoList.size(); fromIndex += batchChunkSize) {
+                List<TransferFundDto> chunk = transferFundDtoList.subList(fromIndex, Math.min(transferFundDtoList.size(), fromIndex + batchChunkSize));
+                try {
+                    listErrorCodeList.addAll(transactionTemplate.execute(status -> transferBatchWithPessimisticLock(chunk)));
+                } catch (Exception e) {
+                    // Earlier chunks are committed, keep their results. The failed chunk may have
+                    // failed on commit and the later ones are not attempted.
+                    logger.error("Error applying transfers {} to {} of a best effort batch", fromIndex, fromIndex + chunk.size() - 1, e);
+                    chunk.forEach(transferFundDto -> listErrorCodeList.add(new ArrayList<>(Collections.singletonList(ErrorCode.TRANSFER_OUTCOME_UNKNOWN))));
+                    while (listErrorCodeList.size() < transferFundDtoList.size()) {
+                        listErrorCodeList.add(new ArrayList<>(Collections.singletonList(ErrorCode.TRANSFER_NOT_APPLIED_BATCH_FAILED)));
+                    }
+                    break;
+                }
+            }
+            return listErrorCodeList;
+        } catch (Exception e) {
+            throw new TransferException(ErrorCode.ERROR_UPDATING_ACCOUNT_INFO, e);
         }
+    }
+
+    /**
+     * Every account of the batch is read and locked with a single SELECT ... FOR UPDATE in account
+     * number order, then transfers are validated and applied one after the other to the locked
+     * entities. The changed accounts are flushed once, as JDBC batched UPDATE statements.
+     * <p>
+     * Buckets of hot accounts are drained into their ACCOUNT row up front, as the row is locked anyway.
+     *
+     * @param transferFundDtoList
+     * @return
+     */
+    private List<List<ErrorCode>> transferBatchWithPessimisticLock(List<TransferFundDto> transferFundDtoList) {
 
-        // Check destination account exists
-        Predicate<Account> destAccountPredicate = account -> account.getAccountNumber().equalsIgnoreCase(destinationAccountNumber);
-        boolean destinationAccountNotExists = accountList.stream().noneMatch(destAccountPredicate);
-        if (destinationAccountNotExists) {
-            errorCodeList.add(ErrorCode.INVALID_DESTINATION_ACCOUNT_NUMBER);
+        // One comparator for the lock set and the lookup map, account numbers are compared ignoring case
+        Set<String> accountNumbers = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        for (TransferFundDto transferFundDto : transferFundDtoList) {
+            accountNumbers.add(transferFundDto.getSourceAccountNumber());
+            accountNumbers.add(transferFundDto.getDestinationAccountNumber());
         }
+        accountCache.evictOnCompletion(accountNumbers);
 
-        // Check negative or zero fund transfer not allowed
-        if (transferAmount.compareTo(BigDecimal.ZERO) <= 0) {
-            errorCodeList.add(ErrorCode.NEGATIVE_OR_ZERO_FUND_TRANSFER_NOT_ALLOWED);
+        Map<String, Account> accounts = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Account account : accountRepository.findAllByIdForUpdate(accountNumbers)) {
+            if (accountBucketService.isHotAccount(account.getAccountNumber())) {
+                account.setAccountBalance(account.getAccountBalance().add(accountBucketService.drainBuckets(account.getAccountNumber())));
+            }
+            accounts.put(account.getAccountNumber(), account);
         }
 
-        // Check funds for transfer
-        Account sourceAccount = accountList
-                .stream()
-                .filter(srcAccountPredicate).findAny().orElse(null);
+        List<List<ErrorCode>> listErrorCodeList = new ArrayList<>(transferFundDtoList.size());
+        for (TransferFundDto transferFundDto : transferFundDtoList) {
+            Account sourceAccount = accounts.get(transferFundDto.getSourceAccountNumber());
+            Account destinationAccount = accounts.get(transferFundDto.getDestinationAccountNumber());
+            List<Account> accountList = Stream.of(sourceAccount, destinationAccount)
+                    .filter(Objects::nonNull)
+                    .distinct()
+                    .collect(Collectors.toList());
 
-        if ((!sourceAccountNotExists) && (sourceAccount.getAccountBalance().compareTo(transferAmount) < 0)) {
-            errorCodeList.add(ErrorCode.INSUFFICIENT_FUNDS_FOR_TRANSFER);
+            // Validate against the balances left by the previous transfers of the batch
+            List<ErrorCode> listErrorCode = transferFundValidator.validate(transferFundDto, accountList);
+            if (listErrorCode.isEmpty()) {
+                sourceAccount.setAccountBalance(sourceAccount.getAccountBalance().subtract(transferFundDto.getTransferAmount()));
+                destinationAccount.setAccountBalance(destinationAccount.getAccountBalance().add(transferFundDto.getTransferAmount()));
+            }
+            listErrorCodeList.add(listErrorCode);
         }
 
-        return errorCodeList;
+        accountRepository.saveAllAndFlush(accounts.values());
+        return listErrorCodeList;
     }
 
     /**
-     * Service to update account details
-     * <p>
-     * Propagation	Behaviour:
-     * REQUIRED:	Always executes in a transaction. If there is any existing transaction it uses it. If none exists then only a new one is created
-     * SUPPORTS:	It may or may not run in a transaction. If current transaction exists then it is supported. If none exists then gets executed with out transaction.
-     * NOT_SUPPORTED:	Always executes without a transaction. If there is any existing transaction it gets suspended
-     * REQUIRES_NEW:	Always executes in a new transaction. If there is any existing transaction it gets suspended
-     * NEVER:	Always executes without any transaction. It throws an exception if there is an existing transaction
-     * MANDATORY:	Always executes in a transaction. If there is any existing transaction it is used. If there is no existing transaction it will throw an exception.
+     * Both accounts are read once with SELECT ... FOR UPDATE in account number order, then validated
+     * and updated under those row locks. Locking in a canonical order means crossing transfers
+     * (A to B and B to A) queue up behind each other instead of deadlocking, and READ_COMMITTED is
+     * sufficient because the rows can not change once locked.
      * <p>
-     * readOnly: false as this method modifies the data in database; otherwise this should be set as false
+     * The ACCOUNT row of a hot destination account is not locked, the credit lands on one of its buckets.
      *
      * @param transferFundDto
      * @return
-     * @throws TransferException
      */
-    @Override
-    @Transactional(readOnly = false, isolation = Isolation.REPEATABLE_READ, rollbackFor = TransferException.class)
-    public List<ErrorCode> updateAccountDetails(TransferFundDto transferFundDto) throws TransferException {
+    private List<ErrorCode> transferWithPessimisticLock(TransferFundDto transferFundDto) {
+        return transferWithEntities(transferFundDto, true);
+    }
+
+    /**
+     * Both accounts are read without locks, then validated and updated. The UPDATE statements
+     * check the version read, so an account changed by a concurrent transaction fails the flush
+     * with an OptimisticLockingFailureException and the transaction is rolled back.
+     *
+     * @param transferFundDto
+     * @return
+     */
+    private List<ErrorCode> transferWithOptimisticLock(TransferFundDto transferFundDto) {
+        return transferWithEntities(transferFundDto, false);
+    }
+
+    /**
+     * Run {@link #transferWithOptimisticLock(TransferFundDto)} in a new transaction per attempt.
+     * A conflicting attempt is retried after a random backoff of up to backoff-ms doubled per attempt
+     * and capped at max-backoff-ms, so conflicting transfers do not retry in lock step.
+     *
+     * @param transferFundDto
+     * @param idempotencyKey
+     * @return
+     * @throws InterruptedException
+     */
+    private List<ErrorCode> transferWithOptimisticLockRetry(TransferFundDto transferFundDto, String idempotencyKey) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transferIdempotencyService.executeOnce(idempotencyKey, transferFundDto, status -> {
+                    evictOnCompletion(transferFundDto);
+                    return transferWithOptimisticLock(transferFundDto);
+                });
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= optimisticMaxAttempts) {
+                    throw e;
+                }
+                long backoffMs = Math.min(optimisticMaxBackoffMs, optimisticBackoffMs << Math.min(attempt - 1, 16));
+                logger.debug("Optimistic lock conflict on attempt {} of transfer {}, retrying in up to {} ms", attempt, transferFundDto, backoffMs);
+                Thread.sleep(ThreadLocalRandom.current().nextLong(backoffMs + 1));
+            }
+        }
+    }
+
+    private List<ErrorCode> transferWithEntities(TransferFundDto transferFundDto, boolean pessimisticLock) {
 
         String sourceAccountNumber = transferFundDto.getSourceAccountNumber();
         String destinationAccountNumber = transferFundDto.getDestinationAccountNumber();
         BigDecimal transferAmount = transferFundDto.getTransferAmount();
-        List<ErrorCode> listErrorCode;
+        boolean hotDestinationAccount = accountBucketService.isHotAccount(destinationAccountNumber);
 
-        try {
-            // Validate account details again with row level read and write locks acquired using RR isolation level
-            listErrorCode = validateAccountDetailsForTransfer(transferFundDto);
+        // Fetch account details, locked in account number order unless optimistic
+        List<Account> accountList;
+        if (!pessimisticLock) {
+            accountList = new ArrayList<>(accountRepository.findAllById(Arrays.asList(sourceAccountNumber, destinationAccountNumber)));
+        } else if (hotDestinationAccount) {
+            accountList = new ArrayList<>(accountRepository.findAllByIdForUpdate(Collections.singletonList(sourceAccountNumber)));
+            accountRepository.findById(destinationAccountNumber).ifPresent(accountList::add);
+        } else {
+            accountList = new ArrayList<>(accountRepository.findAllByIdForUpdate(Arrays.asList(sourceAccountNumber, destinationAccountNumber)));
+        }
 
-            // If errors identified log errors in response and exit
-            if (listErrorCode.size() > 0) {
-                return listErrorCode;
-            }
+        // Draw on the buckets of a hot source account when its ACCOUNT row alone is insufficient
+        if (accountBucketService.isHotAccount(sourceAccountNumber)) {
+            accountList.stream()
+                    .filter(account -> account.getAccountNumber().equalsIgnoreCase(sourceAccountNumber))
+                    .filter(account -> account.getAccountBalance().compareTo(transferAmount) < 0)
+                    .findAny()
+                    .ifPresent(account -> {
+                        // Lock the ACCOUNT row before its buckets, the same order as the rebalance job
+                        if (!pessimisticLock) {
+                            accountRepository.findAllByIdForUpdate(Collections.singletonList(sourceAccountNumber));
+                        }
+                        account.setAccountBalance(account.getAccountBalance().add(accountBucketService.drainBuckets(account.getAccountNumber())));
+                    });
+        }
 
-            // Fetch account details
-            List<Account> accountList = getAccountDetails(Arrays.asList(sourceAccountNumber, destinationAccountNumber));
-
-            // Get Source Account
-            Account sourceAccount = accountList.stream()
-                    .filter((account) -> account.getAccountNumber().equalsIgnoreCase(sourceAccountNumber))
-                    .reduce((u, v) -> {
-                        throw new IllegalStateException("More than one source account found");
-                    }).get();
-
-            // Get Destination Account
-            Account destinationAccount = accountList.stream()
-                    .filter((account) -> account.getAccountNumber().equalsIgnoreCase(destinationAccountNumber))
-                    .reduce((u, v) -> {
-                        throw new IllegalStateException("More than one destination account found");
-                    }).get();
-
-            // Prepare Account s for fund transfer
-            sourceAccount.setAccountBalance(sourceAccount.getAccountBalance().subtract(transferAmount));
+        // Validate account details, with row level write locks held if pessimistic
+        List<ErrorCode> listErrorCode = transferFundValidator.validate(transferFundDto, accountList);
+
+        // If errors identified log errors in response and exit
+        if (listErrorCode.size() > 0) {
+            return listErrorCode;
+        }
+
+        // Get Source Account
+        Account sourceAccount = accountList.stream()
+                .filter((account) -> account.getAccountNumber().equalsIgnoreCase(sourceAccountNumber))
+                .reduce((u, v) -> {
+                    throw new IllegalStateException("More than one source account found");
+                }).get();
+
+        // Get Destination Account
+        Account destinationAccount = accountList.stream()
+                .filter((account) -> account.getAccountNumber().equalsIgnoreCase(destinationAccountNumber))
+                .reduce((u, v) -> {
+                    throw new IllegalStateException("More than one destination account found");
+                }).get();
+
+        // Prepare Account s for fund transfer
+        sourceAccount.setAccountBalance(sourceAccount.getAccountBalance().subtract(transferAmount));
+        if (hotDestinationAccount) {
+            creditAccount(destinationAccount.getAccountNumber(), transferAmount);
+        } else {
             destinationAccount.setAccountBalance(destinationAccount.getAccountBalance().add(transferAmount));
+        }
 
-            // Update the account within current isolation level
-            List<Account> listAccounts = accountRepository.saveAllAndFlush(Arrays.asList(sourceAccount, destinationAccount));
+        // Update the accounts, while row locks are held or checking the versions read
+        accountRepository.saveAllAndFlush(Arrays.asList(sourceAccount, destinationAccount));
 
-        } catch (TransferException e) {
-            throw e;
-        } catch (Exception e) {
-            throw new TransferException(ErrorCode.ERROR_UPDATING_ACCOUNT_INFO, e);
+        return listErrorCode;
+    }
+
+    /**
+     * Transfer funds with two guarded UPDATE statements and no entity reads. The debit only
+     * matches when the source holds sufficient funds, so a successful transfer is detected from
+     * the updated row counts alone. Statements run in account number order to keep the same
+     * lock order as {@link #transferWithPessimisticLock(TransferFundDto)}.
+     * <p>
+     * Only when a guard rejects the transfer are the accounts read, to report the same error
+     * codes as the validation path; the transaction is then marked for rollback.
+     *
+     * @param transferFundDto
+     * @return
+     */
+    private List<ErrorCode> transferWithConditionalUpdate(TransferFundDto transferFundDto, TransactionStatus status) {
+
+        String sourceAccountNumber = transferFundDto.getSourceAccountNumber();
+        String destinationAccountNumber = transferFundDto.getDestinationAccountNumber();
+        BigDecimal transferAmount = transferFundDto.getTransferAmount();
+
+        // Same account or non positive amount can be rejected without touching any row
+        if (sourceAccountNumber.equalsIgnoreCase(destinationAccountNumber) || transferAmount.compareTo(BigDecimal.ZERO) <= 0) {
+            return validateWithinTransaction(transferFundDto);
         }
 
+        boolean debited;
+        boolean credited;
+        // Account numbers are ordered ignoring case, as the other lock sets are, so crossing transfers agree on the order
+        if (String.CASE_INSENSITIVE_ORDER.compare(sourceAccountNumber, destinationAccountNumber) < 0) {
+            debited = debitAccount(sourceAccountNumber, transferAmount);
+            credited = debited && creditAccount(destinationAccountNumber, transferAmount);
+        } else {
+            credited = creditAccount(destinationAccountNumber, transferAmount);
+            debited = credited && debitAccount(sourceAccountNumber, transferAmount);
+        }
+
+        if (debited && credited) {
+            return new ArrayList<>();
+        }
+
+        // Undo the applied half so the error codes are derived from the balances before the transfer
+        if (debited) {
+            accountRepository.creditAccountBalance(sourceAccountNumber, transferAmount);
+        }
+        status.setRollbackOnly();
+
+        List<ErrorCode> listErrorCode = validateWithinTransaction(transferFundDto);
+        if (listErrorCode.isEmpty()) {
+            // Balance changed between the guarded update and the read
+            listErrorCode.add(ErrorCode.INSUFFICIENT_FUNDS_FOR_TRANSFER);
+        }
         return listErrorCode;
     }
 
+    /**
+     * Validate a transfer against the accounts as seen by the current transaction.
+     *
+     * @param transferFundDto
+     * @return
+     */
+    private List<ErrorCode> validateWithinTransaction(TransferFundDto transferFundDto) {
+        List<Account> accountList = accountRepository.findAllById(Arrays.asList(transferFundDto.getSourceAccountNumber(), transferFundDto.getDestinationAccountNumber()));
+        return transferFundValidator.validate(transferFundDto, accountBucketService.addBucketBalances(accountList));
+    }
+
+    /**
+     * Guarded debit of an account. A hot account whose ACCOUNT row is insufficient
+     * has its buckets drained into the row before the debit is retried.
+     *
+     * @param accountNumber
+     * @param transferAmount
+     * @return true if debited
+     */
+    private boolean debitAccount(String accountNumber, BigDecimal transferAmount) {
+        if (accountRepository.debitAccountBalance(accountNumber, transferAmount) == 1) {
+            return true;
+        }
+        if (!accountBucketService.isHotAccount(accountNumber)) {
+            return false;
+        }
+        // Lock the ACCOUNT row before its buckets, the same order as the rebalance job
+        if (accountRepository.findAllByIdForUpdate(Collections.singletonList(accountNumber)).isEmpty()) {
+            return false;
+        }
+        accountRepository.creditAccountBalance(accountNumber, accountBucketService.drainBuckets(accountNumber));
+        return accountRepository.debitAccountBalance(accountNumber, transferAmount) == 1;
+    }
+
+    /**
+     * Credit an account, on one of its buckets if it is a hot account.
+     *
+     * @param accountNumber
+     * @param transferAmount
+     * @return true if credited
+     */
+    private boolean creditAccount(String accountNumber, BigDecimal transferAmount) {
+        if (accountBucketService.isHotAccount(accountNumber) && accountBucketService.creditBucket(accountNumber, transferAmount)) {
+            return true;
+        }
+        return accountRepository.creditAccountBalance(accountNumber, transferAmount) == 1;
+    }
+
+    private void evictOnCompletion(TransferFundDto transferFundDto) {
+        accountCache.evictOnCompletion(Arrays.asList(transferFundDto.getSourceAccountNumber(), transferFundDto.getDestinationAccountNumber()));
+    }
+
+    private TransactionTemplate getTransactionTemplate() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        return transactionTemplate;
+    }
+
 }
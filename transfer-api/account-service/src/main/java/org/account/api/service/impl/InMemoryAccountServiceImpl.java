@@ -0,0 +1,461 @@
+package org.account.api.service.impl;
+
+
+import org.account.api.engine.AccountJournal;
+import org.account.api.engine.AccountShard;
+import org.account.api.entity.Account;
+import org.account.api.repository.AccountRepository;
+import org.account.api.service.AccountService;
+import org.account.api.service.TransferIdempotencyService;
+import org.account.api.validator.TransferFundValidator;
+import org.common.api.dto.TransferFundDto;
+import org.common.api.exception.TransferException;
+import org.common.api.money.Money;
+import org.common.api.util.ErrorCode;
+import org.common.api.util.RequestDeadline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-memory account engine, enabled with account.engine.type: in-memory
+ * <p>
+ * Balances are kept in memory and partitioned by account number hash over a number of
+ * AccountShards. Each shard applies commands on a single writer thread, so a transfer is a
+ * sequenced command and takes no database locks. Transfers are appended to an AccountJournal,
+ * which is forced to disk before a transfer is acknowledged, and balances are written behind to
+ * the AccountRepository on a fixed schedule.
+ * <p>
+ * Shards hold balances and apply transfers as {@link Money} of account.engine.money-scale, amounts
+ * are converted once when a request enters the engine and back when accounts are returned.
+ * <p>
+ * Transfers between accounts of the same shard are a single command. Transfers across shards
+ * use a deterministic two step protocol: debit on the source shard, then credit on the
+ * destination shard (compensated on the source shard if the credit is rejected). The journaled
+ * debit holds the whole transfer, so a transfer interrupted by a crash is credited on recovery.
+ */
+@Service
+@ConditionalOnProperty(name = "account.engine.type", havingValue = "in-memory")
+public class InMemoryAccountServiceImpl implements AccountService, SmartInitializingSingleton, DisposableBean {
+
+    private final static Logger logger = LoggerFactory.getLogger(InMemoryAccountServiceImpl.class);
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransferIdempotencyService transferIdempotencyService;
+
+    @Autowired
+    private TransferFundValidator transferFundValidator;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${account.engine.shards:4}")
+    private int shardCount;
+
+    @Value("${account.engine.shard-queue-capacity:10000}")
+    private int shardQueueCapacity;
+
+    @Value("${account.engine.loader-threads:4}")
+    private int loaderThreads;
+
+    @Value("${account.engine.money-scale:" + Money.DEFAULT_SCALE + "}")
+    private int moneyScale;
+
+    @Value("${account.engine.journal-directory:journal}")
+    private String journalDirectory;
+
+    private AccountShard[] accountShards;
+    private AccountJournal accountJournal;
+    private ExecutorService accountLoader;
+
+    // Balances drained from the shards but not yet written to the database
+    private final Map<String, BigDecimal> pendingBalances = new HashMap<>();
+
+    /**
+     * Recover journal segments left over from a previous run, then start the shards.
+     * Runs once all singletons, including the database initializers, are created.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        try {
+            accountJournal = new AccountJournal(Paths.get(journalDirectory));
+            List<Path> segments = accountJournal.rotate();
+            Map<String, BigDecimal> journaledBalances = accountJournal.recover(segments, accountNumber ->
+                    accountRepository.findById(accountNumber).map(Account::getAccountBalance).orElse(null));
+            writeBalances(journaledBalances);
+            accountJournal.delete(segments);
+            logger.info("Recovered {} account balances from {} journal segments", journaledBalances.size(), segments.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        AtomicInteger loaderThreadCount = new AtomicInteger();
+        accountLoader = Executors.newFixedThreadPool(loaderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "account-loader-" + loaderThreadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        accountShards = new AccountShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            accountShards[i] = new AccountShard(i, shardQueueCapacity, moneyScale, accountRepository, accountJournal, accountLoader);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        // Web requests are stopped by now, write the last changes behind before the shards stop
+        writeBehind();
+        for (AccountShard accountShard : accountShards) {
+            accountShard.shutdown();
+        }
+        accountLoader.shutdown();
+        accountJournal.close();
+    }
+
+    @Override
+    public List<Account> getAccountDetails() throws TransferException {
+        try {
+            Map<String, Money> loadedBalances = getLoadedBalances();
+
+            // In-memory balances take precedence over balances not yet written behind
+            List<Account> accounts = new ArrayList<>();
+            for (Account account : accountRepository.findAll()) {
+                accounts.add(getAccount(account, loadedBalances.get(account.getAccountNumber())));
+            }
+            return accounts;
+        } catch (Exception e) {
+            throw new TransferException(ErrorCode.ERROR_GETTING_ACCOUNT_INFO, e);
+        }
+    }
+
+    @Override
+    public List<Account> getAccountDetails(List<String> accountNumbers) throws TransferException {
+        try {
+            Map<AccountShard, List<String>> accountNumbersByShard = new LinkedHashMap<>();
+            for (String accountNumber : accountNumbers) {
+                accountNumbersByShard.computeIfAbsent(getShard(accountNumber), shard -> new ArrayList<>()).add(accountNumber);
+            }
+
+            List<CompletableFuture<Map<String, Money>>> futures = new ArrayList<>();
+            accountNumbersByShard.forEach((shard, shardAccountNumbers) -> futures.add(shard.getBalances(shardAccountNumbers)));
+
+            List<Account> accounts = new ArrayList<>();
+            for (CompletableFuture<Map<String, Money>> future : futures) {
+                future.join().forEach((accountNumber, balance) -> accounts.add(getAccount(accountNumber, balance)));
+            }
+            return accounts;
+        } catch (Exception e) {
+            throw new TransferException(ErrorCode.ERROR_GETTING_ACCOUNT_INFO, e);
+        }
+    }
+
+    @Override
+    public List<Account> getAccountDetails(String afterAccountNumber, int limit) throws TransferException {
+        try {
+            // The database defines the page, the shards hold the current balances of its accounts
+            List<Account> accountPage = accountRepository.findByAccountNumberGreaterThanOrderByAccountNumber(
+                    afterAccountNumber != null ? afterAccountNumber : "", PageRequest.of(0, limit));
+            Map<String, BigDecimal> balances = getAccountDetails(accountPage.stream().map(Account::getAccountNumber).collect(Collectors.toList()))
+                    .stream()
+                    .collect(Collectors.toMap(Account::getAccountNumber, Account::getAccountBalance));
+
+            List<Account> accounts = new ArrayList<>(accountPage.size());
+            for (Account account : accountPage) {
+                accounts.add(getAccount(account.getAccountNumber(), balances.getOrDefault(account.getAccountNumber(), account.getAccountBalance())));
+            }
+            return accounts;
+        } catch (TransferException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new TransferException(ErrorCode.ERROR_GETTING_ACCOUNT_INFO, e);
+        }
+    }
+
+    @Override
+    public void streamAccountDetails(Consumer<Account> accountConsumer) throws TransferException {
+        try {
+            Map<String, Money> loadedBalances = getLoadedBalances();
+
+            TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+            transactionTemplate.setReadOnly(true);
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<Account> accounts = accountRepository.streamAll()) {
+                    accounts.forEach(account -> {
+                        entityManager.detach(account);
+                        accountConsumer.accept(getAccount(account, loadedBalances.get(account.getAccountNumber())));
+                    });
+                }
+            });
+        } catch (Exception e) {
+            throw new TransferException(ErrorCode.ERROR_GETTING_ACCOUNT_INFO, e);
+        }
+    }
+
+    @Override
+    public List<ErrorCode> validateAccountDetailsForTransfer(TransferFundDto transferFundDto) throws TransferException {
+        List<Account> accountList = getAccountDetails(Arrays.asList(transferFundDto.getSourceAccountNumber(), transferFundDto.getDestinationAccountNumber()));
+        return transferFundValidator.validate(transferFundDto, accountList);
+    }
+
+    /**
+     * Apply the transfer at most once per idempotency key. The key is recorded in a database
+     * transaction held open while the shards apply the transfer, see {@link TransferIdempotencyService}.
+     * <p>
+     * The shards can not roll a transfer back with that transaction, so the {@link RequestDeadline}
+     * is checked once before the transfer is handed to the shards, and the transaction of the key
+     * runs without it: a transfer the shards applied always commits its key, however late.
+     *
+     * @param transferFundDto
+     * @param idempotencyKey
+     * @return
+     * @throws TransferException
+     */
+    @Override
+    public List<ErrorCode> updateAccountDetails(TransferFundDto transferFundDto, String idempotencyKey) throws TransferException {
+        if (RequestDeadline.isExpired()) {
+            return new ArrayList<>(Collections.singletonList(ErrorCode.REQUEST_DEADLINE_EXCEEDED));
+        }
+        if (idempotencyKey == null) {
+            return updateAccountDetails(transferFundDto);
+        }
+        Long deadline = RequestDeadline.get();
+        RequestDeadline.clear();
+        try {
+            return transferIdempotencyService.executeOnce(idempotencyKey, transferFundDto, status -> {
+                try {
+                    return updateAccountDetails(transferFundDto);
+                } catch (TransferException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (Exception e) {
+            throw new TransferException(ErrorCode.ERROR_UPDATING_ACCOUNT_INFO, e);
+        } finally {
+            RequestDeadline.set(deadline);
+        }
+    }
+
+    @Override
+    public List<ErrorCode> updateAccountDetails(TransferFundDto transferFundDto) throws TransferException {
+
+        String sourceAccountNumber = transferFundDto.getSourceAccountNumber();
+        String destinationAccountNumber = transferFundDto.getDestinationAccountNumber();
+        BigDecimal transferAmount = transferFundDto.getTransferAmount();
+
+        try {
+            // Same account or non positive amount is rejected without sending any command
+            if (sourceAccountNumber.equalsIgnoreCase(destinationAccountNumber) || transferAmount.compareTo(BigDecimal.ZERO) <= 0) {
+                return validateAccountDetailsForTransfer(transferFundDto);
+            }
+            Money amount = Money.of(transferAmount, moneyScale);
+
+            AccountShard sourceShard = getShard(sourceAccountNumber);
+            AccountShard destinationShard = getShard(destinationAccountNumber);
+
+            AccountShard.Result result;
+            if (sourceShard == destinationShard) {
+                result = sourceShard.transfer(sourceAccountNumber, destinationAccountNumber, amount).join();
+                if (result == AccountShard.Result.APPLIED) {
+                    accountJournal.awaitDurable();
+                }
+            } else {
+                result = transferAcrossShards(sourceShard, destinationShard, sourceAccountNumber, destinationAccountNumber, amount);
+            }
+
+            if (result == AccountShard.Result.APPLIED) {
+                return new ArrayList<>();
+            }
+
+            // Transfer rejected, report the same error codes as the validation path
+            List<ErrorCode> listErrorCode = validateAccountDetailsForTransfer(transferFundDto);
+            if (listErrorCode.isEmpty()) {
+                listErrorCode.add(ErrorCode.INSUFFICIENT_FUNDS_FOR_TRANSFER);
+            }
+            return listErrorCode;
+        } catch (TransferException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new TransferException(ErrorCode.ERROR_UPDATING_ACCOUNT_INFO, e);
+        }
+    }
+
+    /**
+     * Apply a batch of transfers in request order, each one a sequenced transfer command.
+     * <p>
+     * The shards hold no transaction to roll back, so an all or nothing batch is undone by
+     * transferring the applied transfers back in reverse order once a transfer fails. Balances
+     * of the batch accounts are visible to other requests while the batch is in progress.
+     * <p>
+     * A transfer that fails with an error reports TRANSFER_OUTCOME_UNKNOWN and the rest of the
+     * batch TRANSFER_NOT_APPLIED_BATCH_FAILED, the results of the transfers before it are kept.
+     *
+     * @param transferFundDtoList
+     * @param allOrNothing
+     * @return error codes of every transfer, in request order
+     * @throws TransferException
+     */
+    @Override
+    public List<List<ErrorCode>> updateAccountDetails(List<TransferFundDto> transferFundDtoList, boolean allOrNothing) throws TransferException {
+        List<List<ErrorCode>> listErrorCodeList = new ArrayList<>(transferFundDtoList.size());
+        List<TransferFundDto> appliedTransfers = new ArrayList<>();
+        boolean outcomeUnknown = false;
+        for (TransferFundDto transferFundDto : transferFundDtoList) {
+            if (outcomeUnknown || (allOrNothing && appliedTransfers.size() < listErrorCodeList.size())) {
+                // An earlier transfer failed, the rest of the batch is not applied
+                listErrorCodeList.add(new ArrayList<>(Collections.singletonList(ErrorCode.TRANSFER_NOT_APPLIED_BATCH_FAILED)));
+                continue;
+            }
+            List<ErrorCode> listErrorCode;
+            try {
+                listErrorCode = updateAccountDetails(transferFundDto);
+            } catch (TransferException e) {
+                // Keep the results of the transfers already applied, this one may have been applied too
+                logger.error("Error applying transfer {} of a batch", transferFundDto, e);
+                listErrorCode = new ArrayList<>(Collections.singletonList(ErrorCode.TRANSFER_OUTCOME_UNKNOWN));
+                outcomeUnknown = true;
+            }
+            if (listErrorCode.isEmpty()) {
+                appliedTransfers.add(transferFundDto);
+            }
+            listErrorCodeList.add(listErrorCode);
+        }
+
+        if (allOrNothing && appliedTransfers.size() < listErrorCodeList.size()) {
+            // Applied transfers are the ones before the first failure, so indexes match the result list
+            for (int i = appliedTransfers.size() - 1; i >= 0; i--) {
+                TransferFundDto appliedTransfer = appliedTransfers.get(i);
+                TransferFundDto reverseTransfer = new TransferFundDto(appliedTransfer.getDestinationAccountNumber(),
+                        appliedTransfer.getSourceAccountNumber(), appliedTransfer.getTransferAmount());
+                List<ErrorCode> listErrorCode = updateAccountDetails(reverseTransfer);
+                if (!listErrorCode.isEmpty()) {
+                    logger.error("Error reversing transfer {} of a failed batch: {}", appliedTransfer, listErrorCode);
+                }
+                listErrorCodeList.get(i).add(ErrorCode.TRANSFER_NOT_APPLIED_BATCH_FAILED);
+            }
+        }
+        return listErrorCodeList;
+    }
+
+    /**
+     * Write changed balances behind to the database and drop the journal segments they cover.
+     * The journal is rotated before the shards are drained, so every entry of a rotated segment
+     * is included in the drained balances. Commands drained after the rotation journaled to the
+     * new segment, which is forced before their balances are written: a credit written unforced
+     * would be applied again on recovery from the open transfer carried into that segment.
+     */
+    @Scheduled(fixedDelayString = "${account.engine.write-behind-interval-ms:1000}")
+    public synchronized void writeBehind() throws IOException {
+        List<Path> segments = accountJournal.rotate();
+        for (AccountShard accountShard : accountShards) {
+            accountShard.drainDirtyBalances().join().forEach((accountNumber, balance) -> pendingBalances.put(accountNumber, balance.toBigDecimal()));
+        }
+        accountJournal.awaitDurable();
+        writeBalances(pendingBalances);
+        pendingBalances.clear();
+        accountJournal.delete(segments);
+    }
+
+    private AccountShard.Result transferAcrossShards(AccountShard sourceShard, AccountShard destinationShard,
+                                                     String sourceAccountNumber, String destinationAccountNumber,
+                                                     Money transferAmount) throws IOException {
+
+        // Accounts are never removed, so checking the destination first avoids compensation in practice
+        if (destinationShard.getBalances(Collections.singletonList(destinationAccountNumber)).join().isEmpty()) {
+            return AccountShard.Result.ACCOUNT_NOT_FOUND;
+        }
+
+        // Step 1: debit on the source shard, durable before the credit so no credit is recovered without it
+        String transferId = accountJournal.newTransferId();
+        AccountShard.Result debitResult = sourceShard.debit(transferId, sourceAccountNumber, destinationAccountNumber, transferAmount).join();
+        if (debitResult != AccountShard.Result.APPLIED) {
+            return debitResult;
+        }
+        accountJournal.awaitDurable();
+
+        // Step 2: credit on the destination shard, return the funds to the source if it is rejected
+        AccountShard.Result creditResult = destinationShard.credit(transferId, destinationAccountNumber, transferAmount).join();
+        if (creditResult != AccountShard.Result.APPLIED) {
+            sourceShard.credit(transferId, sourceAccountNumber, transferAmount).join();
+        }
+        accountJournal.awaitDurable();
+        return creditResult;
+    }
+
+    private void writeBalances(Map<String, BigDecimal> balances) {
+        if (balances.isEmpty()) {
+            return;
+        }
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                balances.forEach((accountNumber, balance) -> accountRepository.updateAccountBalance(accountNumber, balance)));
+    }
+
+    private AccountShard getShard(String accountNumber) {
+        // Account numbers are compared ignoring case, so each account maps to one shard however it is written
+        return accountShards[Math.floorMod(accountNumber.toLowerCase(Locale.ROOT).hashCode(), accountShards.length)];
+    }
+
+    private Map<String, Money> getLoadedBalances() {
+        Map<String, Money> loadedBalances = new HashMap<>();
+        for (AccountShard accountShard : accountShards) {
+            loadedBalances.putAll(accountShard.getLoadedBalances().join());
+        }
+        return loadedBalances;
+    }
+
+    /**
+     * Account with its in-memory balance, which takes precedence over the balance read from the
+     * database as that may not be written behind yet.
+     */
+    private Account getAccount(Account account, Money loadedBalance) {
+        return getAccount(account.getAccountNumber(), loadedBalance != null ? loadedBalance.toBigDecimal() : account.getAccountBalance());
+    }
+
+    private Account getAccount(String accountNumber, Money balance) {
+        return getAccount(accountNumber, balance.toBigDecimal());
+    }
+
+    private Account getAccount(String accountNumber, BigDecimal balance) {
+        Account account = new Account();
+        account.setAccountNumber(accountNumber);
+        account.setAccountBalance(balance);
+        return account;
+    }
+}
@@ -0,0 +1,262 @@
+package org.account.api.service.impl;
+
+
+import org.account.api.entity.Account;
+import org.account.api.entity.LedgerEntry;
+import org.account.api.repository.AccountRepository;
+import org.account.api.repository.AccountSnapshotRepository;
+import org.account.api.repository.LedgerEntryRepository;
+import org.account.api.service.AccountService;
+import org.account.api.service.LedgerCompactor;
+import org.account.api.service.TransferIdempotencyService;
+import org.account.api.validator.TransferFundValidator;
+import org.common.api.dto.TransferFundDto;
+import org.common.api.exception.TransferException;
+import org.common.api.util.ErrorCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Ledger account engine, enabled with account.engine.type: ledger
+ * <p>
+ * A transfer inserts a debit and a credit LedgerEntry and never updates a balance in place, so
+ * balance history and balances can not drift apart. Balances are derived as the AccountSnapshot
+ * plus the entries after it, see {@link AccountSnapshotRepository}, and the LedgerCompactor keeps
+ * the number of entries after a snapshot small.
+ * <p>
+ * Transfers lock the ACCOUNT rows of their accounts in account number order, as the other engines
+ * do, to validate against a stable balance and to order entries against the LedgerCompactor.
+ */
+@Service
+@ConditionalOnProperty(name = "account.engine.type", havingValue = "ledger")
+public class LedgerAccountServiceImpl implements AccountService {
+
+    private final static Logger logger = LoggerFactory.getLogger(LedgerAccountServiceImpl.class);
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransferIdempotencyService transferIdempotencyService;
+
+    @Autowired
+    private AccountSnapshotRepository accountSnapshotRepository;
+
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Autowired
+    private TransferFundValidator transferFundValidator;
+
+    @Autowired
+    private LedgerCompactor ledgerCompactor;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${account.batch.chunk-size:100}")
+    private int batchChunkSize;
+
+    @Override
+    @Transactional(readOnly = true, isolation = Isolation.READ_COMMITTED)
+    public List<Account> getAccountDetails() throws TransferException {
+        try {
+            return getAccounts(accountSnapshotRepository.findAllBalances());
+        } catch (Exception e) {
+            throw new TransferException(ErrorCode.ERROR_GETTING_ACCOUNT_INFO, e);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true, isolation = Isolation.READ_COMMITTED)
+    public List<Account> getAccountDetails(List<String> accountNumbers) throws TransferException {
+        try {
+            return getAccounts(accountSnapshotRepository.findBalances(accountNumbers));
+        } catch (Exception e) {
+            throw new TransferException(ErrorCode.ERROR_GETTING_ACCOUNT_INFO, e);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true, isolation = Isolation.READ_COMMITTED)
+    public List<Account> getAccountDetails(String afterAccountNumber, int limit) throws TransferException {
+        try {
+            return getAccounts(accountSnapshotRepository.findBalancesAfter(afterAccountNumber != null ? afterAccountNumber : "", PageRequest.of(0, limit)));
+        } catch (Exception e) {
+            throw new TransferException(ErrorCode.ERROR_GETTING_ACCOUNT_INFO, e);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true, isolation = Isolation.READ_COMMITTED)
+    public void streamAccountDetails(Consumer<Account> accountConsumer) throws TransferException {
+        try (Stream<Object[]> balances = accountSnapshotRepository.streamAllBalances()) {
+            balances.forEach(row -> accountConsumer.accept(getAccount(row)));
+        } catch (Exception e) {
+            throw new TransferException(ErrorCode.ERROR_GETTING_ACCOUNT_INFO, e);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true, isolation = Isolation.READ_COMMITTED)
+    public List<ErrorCode> validateAccountDetailsForTransfer(TransferFundDto transferFundDto) throws TransferException {
+        List<Account> accountList = getAccountDetails(Arrays.asList(transferFundDto.getSourceAccountNumber(), transferFundDto.getDestinationAccountNumber()));
+        return transferFundValidator.validate(transferFundDto, accountList);
+    }
+
+    @Override
+    public List<ErrorCode> updateAccountDetails(TransferFundDto transferFundDto) throws TransferException {
+        return updateAccountDetails(transferFundDto, null);
+    }
+
+    @Override
+    public List<ErrorCode> updateAccountDetails(TransferFundDto transferFundDto, String idempotencyKey) throws TransferException {
+        try {
+            return transferIdempotencyService.executeOnce(idempotencyKey, transferFundDto, status -> transferBatch(Collections.singletonList(transferFundDto)).get(0));
+        } catch (Exception e) {
+            throw new TransferException(ErrorCode.ERROR_UPDATING_ACCOUNT_INFO, e);
+        }
+    }
+
+    /**
+     * Apply a batch of transfers in request order, all or nothing in a single transaction
+     * or best effort in chunks of account.batch.chunk-size transfers. Once a chunk fails its
+     * transfers report TRANSFER_OUTCOME_UNKNOWN and the later ones TRANSFER_NOT_APPLIED_BATCH_FAILED,
+     * the results of the committed chunks are kept.
+     *
+     * @param transferFundDtoList
+     * @param allOrNothing
+     * @return error codes of every transfer, in request order
+     * @throws TransferException
+     */
+    @Override
+    public List<List<ErrorCode>> updateAccountDetails(List<TransferFundDto> transferFundDtoList, boolean allOrNothing) throws TransferException {
+        try {
+            TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+            transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+
+            if (allOrNothing) {
+                return transactionTemplate.execute(status -> {
+                    List<List<ErrorCode>> listErrorCodeList = transferBatch(transferFundDtoList);
+                    if (listErrorCodeList.stream().allMatch(List::isEmpty)) {
+                        return listErrorCodeList;
+                    }
+                    status.setRollbackOnly();
+                    listErrorCodeList.stream()
+                            .filter(List::isEmpty)
+                            .forEach(listErrorCode -> listErrorCode.add(ErrorCode.TRANSFER_NOT_APPLIED_BATCH_FAILED));
+                    return listErrorCodeList;
+                });
+            }
+
+            List<List<ErrorCode>> listErrorCodeList = new ArrayList<>(transferFundDtoList.size());
+            for (int fromIndex = 0; fromIndex < transferFundDtoList.size(); fromIndex += batchChunkSize) {
+                List<TransferFundDto> chunk = transferFundDtoList.subList(fromIndex, Math.min(transferFundDtoList.size(), fromIndex + batchChunkSize));
+                try {
+                    listErrorCodeList.addAll(transactionTemplate.execute(status -> transferBatch(chunk)));
+                } catch (Exception e) {
+                    // Earlier chunks are committed, keep their results. The failed chunk may have
+                    // failed on commit and the later ones are not attempted.
+                    logger.error("Error applying transfers {} to {} of a best effort batch", fromIndex, fromIndex + chunk.size() - 1, e);
+                    chunk.forEach(transferFundDto -> listErrorCodeList.add(new ArrayList<>(Collections.singletonList(ErrorCode.TRANSFER_OUTCOME_UNKNOWN))));
+                    while (listErrorCodeList.size() < transferFundDtoList.size()) {
+                        listErrorCodeList.add(new ArrayList<>(Collections.singletonList(ErrorCode.TRANSFER_NOT_APPLIED_BATCH_FAILED)));
+                    }
+                    break;
+                }
+            }
+            return listErrorCodeList;
+        } catch (Exception e) {
+            throw new TransferException(ErrorCode.ERROR_UPDATING_ACCOUNT_INFO, e);
+        }
+    }
+
+    /**
+     * Lock the ACCOUNT rows of all accounts of the transfers in account number order, read their
+     * balances, then validate each transfer against the balances left by the previous ones and
+     * insert a debit and a credit entry for it. The ACCOUNT rows themselves are not updated.
+     *
+     * @param transferFundDtoList
+     * @return
+     */
+    private List<List<ErrorCode>> transferBatch(List<TransferFundDto> transferFundDtoList) {
+
+        // One comparator for the lock set and the lookup map, account numbers are compared ignoring case
+        Set<String> accountNumbers = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        for (TransferFundDto transferFundDto : transferFundDtoList) {
+            accountNumbers.add(transferFundDto.getSourceAccountNumber());
+            accountNumbers.add(transferFundDto.getDestinationAccountNumber());
+        }
+        accountRepository.findAllByIdForUpdate(accountNumbers);
+
+        Map<String, Account> accounts = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Account account : getAccounts(accountSnapshotRepository.findBalances(accountNumbers))) {
+            accounts.put(account.getAccountNumber(), account);
+        }
+
+        Instant createdAt = Instant.now();
+        List<LedgerEntry> ledgerEntries = new ArrayList<>();
+        List<List<ErrorCode>> listErrorCodeList = new ArrayList<>(transferFundDtoList.size());
+        for (TransferFundDto transferFundDto : transferFundDtoList) {
+            Account sourceAccount = accounts.get(transferFundDto.getSourceAccountNumber());
+            Account destinationAccount = accounts.get(transferFundDto.getDestinationAccountNumber());
+            List<Account> accountList = Stream.of(sourceAccount, destinationAccount)
+                    .filter(Objects::nonNull)
+                    .distinct()
+                    .collect(Collectors.toList());
+
+            List<ErrorCode> listErrorCode = transferFundValidator.validate(transferFundDto, accountList);
+            if (listErrorCode.isEmpty()) {
+                BigDecimal transferAmount = transferFundDto.getTransferAmount();
+                String transferId = UUID.randomUUID().toString();
+                sourceAccount.setAccountBalance(sourceAccount.getAccountBalance().subtract(transferAmount));
+                destinationAccount.setAccountBalance(destinationAccount.getAccountBalance().add(transferAmount));
+                ledgerEntries.add(new LedgerEntry(null, transferId, sourceAccount.getAccountNumber(), transferAmount.negate(), createdAt));
+                ledgerEntries.add(new LedgerEntry(null, transferId, destinationAccount.getAccountNumber(), transferAmount, createdAt));
+            }
+            listErrorCodeList.add(listErrorCode);
+        }
+
+        // Entry ids are drawn from the sequence here, while the ACCOUNT row locks are held
+        ledgerEntryRepository.saveAll(ledgerEntries);
+        ledgerCompactor.markDirty(ledgerEntries.stream().map(LedgerEntry::getAccountNumber).collect(Collectors.toSet()));
+        return listErrorCodeList;
+    }
+
+    private List<Account> getAccounts(List<Object[]> balances) {
+        return balances.stream().map(this::getAccount).collect(Collectors.toList());
+    }
+
+    private Account getAccount(Object[] balance) {
+        Account account = new Account();
+        account.setAccountNumber((String) balance[0]);
+        account.setAccountBalance((BigDecimal) balance[1]);
+        return account;
+    }
+}
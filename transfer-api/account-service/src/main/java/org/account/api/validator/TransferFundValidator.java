@@ -0,0 +1,75 @@
+package org.account.api.validator;
+
+import org.account.api.entity.Account;
+import org.common.api.dto.TransferFundDto;
+import org.common.api.util.ErrorCode;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * TransferFundValidator validates a fund transfer request against the
+ * source and destination accounts, shared by all account engines.
+ */
+@Service
+public class TransferFundValidator {
+
+    /**
+     * Validate a fund transfer against already fetched source and destination accounts.
+     *
+     * @param transferFundDto
+     * @param accountList
+     * @return
+     */
+    public List<ErrorCode> validate(TransferFundDto transferFundDto, List<Account> accountList) {
+
+        String sourceAccountNumber = transferFundDto.getSourceAccountNumber();
+        String destinationAccountNumber = transferFundDto.getDestinationAccountNumber();
+        BigDecimal transferAmount = transferFundDto.getTransferAmount();
+
+        List<ErrorCode> errorCodeList = new ArrayList<>();
+
+        // Check source and destination account numbers are not same
+        if (sourceAccountNumber.equalsIgnoreCase(destinationAccountNumber)) {
+            errorCodeList.add(ErrorCode.SOURCE_DEST_CAN_NOT_BE_SAME);
+        }
+
+        // Check account response
+        if (null == accountList || accountList.size() != 2) {
+            errorCodeList.add(ErrorCode.INVALID_ACCOUNT_NUMBERS);
+        }
+
+        // Check source account exists
+        Predicate<Account> srcAccountPredicate = account -> account.getAccountNumber().equalsIgnoreCase(sourceAccountNumber);
+        boolean sourceAccountNotExists = accountList.stream().noneMatch(srcAccountPredicate);
+        if (sourceAccountNotExists) {
+            errorCodeList.add(ErrorCode.INVALID_SOURCE_ACCOUNT_NUMBER);
+        }
+
+        // Check destination account exists
+        Predicate<Account> destAccountPredicate = account -> account.getAccountNumber().equalsIgnoreCase(destinationAccountNumber);
+        boolean destinationAccountNotExists = accountList.stream().noneMatch(destAccountPredicate);
+        if (destinationAccountNotExists) {
+            errorCodeList.add(ErrorCode.INVALID_DESTINATION_ACCOUNT_NUMBER);
+        }
+
+        // Check negative or zero fund transfer not allowed
+        if (transferAmount.compareTo(BigDecimal.ZERO) <= 0) {
+            errorCodeList.add(ErrorCode.NEGATIVE_OR_ZERO_FUND_TRANSFER_NOT_ALLOWED);
+        }
+
+        // Check funds for transfer
+        Account sourceAccount = accountList
+                .stream()
+                .filter(srcAccountPredicate).findAny().orElse(null);
+
+        if ((!sourceAccountNotExists) && (sourceAccount.getAccountBalance().compareTo(transferAmount) < 0)) {
+            errorCodeList.add(ErrorCode.INSUFFICIENT_FUNDS_FOR_TRANSFER);
+        }
+
+        return errorCodeList;
+    }
+}
@@ -0,0 +1,54 @@
+package org.account.api.controller;
+
+import org.common.api.util.ErrorCode;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the AccountServiceController integration test cases
+ * with account.transfer.mode set to CONDITIONAL_UPDATE, and tests
+ * the guarded UPDATE statements of the mode.
+ */
+@TestPropertySource(properties = "account.transfer.mode=CONDITIONAL_UPDATE")
+public class AccountServiceControllerConditionalUpdateIntegrationTest extends AccountServiceControllerIntegrationTest {
+
+    @Test
+    @DisplayName("Test the guarded debit only matches an account holding sufficient funds")
+    void testGuardedDebit() {
+        BigDecimal sa1001Balance = getAccountBalance("sa1001");
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            assertTrue(accountRepository.debitAccountBalance("sa1001", sa1001Balance.add(BigDecimal.ONE)) == 0);
+            assertTrue(accountRepository.debitAccountBalance("sa9999", BigDecimal.ONE) == 0);
+            assertTrue(accountRepository.debitAccountBalance("sa1001", sa1001Balance) == 1);
+            assertTrue(accountRepository.creditAccountBalance("sa9999", BigDecimal.ONE) == 0);
+            status.setRollbackOnly();
+        });
+
+        assertTrue(sa1001Balance.compareTo(getAccountBalance("sa1001")) == 0);
+    }
+
+    @Test
+    @DisplayName("Test a rejected debit rolls back the credit applied before it")
+    void testRejectedDebitAfterCredit() {
+        BigDecimal sa1001Balance = getAccountBalance("sa1001");
+        BigDecimal sa1002Balance = getAccountBalance("sa1002");
+
+        // sa1001 orders before sa1002, so its credit runs before the debit of sa1002 is rejected
+        List<ErrorCode> errorCodeList = accountServiceController.updateAccountDetails(
+                getUpdateAccountDetailsRequest("sa1002", "sa1001", sa1002Balance.add(BigDecimal.ONE))).getErrorCodeList();
+
+        assertTrue(errorCodeList.size() == 1);
+        assertTrue(errorCodeList.contains(ErrorCode.INSUFFICIENT_FUNDS_FOR_TRANSFER));
+        assertTrue(sa1001Balance.compareTo(getAccountBalance("sa1001")) == 0);
+        assertTrue(sa1002Balance.compareTo(getAccountBalance("sa1002")) == 0);
+        assertTrue(sa1001Balance.compareTo(accountRepository.findById("sa1001").get().getAccountBalance()) == 0);
+    }
+}
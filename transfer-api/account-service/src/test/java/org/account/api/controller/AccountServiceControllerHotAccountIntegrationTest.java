@@ -0,0 +1,77 @@
+package org.account.api.controller;
+
+import org.account.api.repository.AccountBucketRepository;
+import org.account.api.service.AccountBucketService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the AccountServiceController integration test cases
+ * with the balance of sa1002 striped over hot account buckets,
+ * and tests the rebalancing of the buckets.
+ */
+@TestPropertySource(properties = {
+        "account.hot-accounts.account-numbers=sa1002",
+        "account.hot-accounts.buckets=4",
+        // Only the test runs the rebalance after startup
+        "account.hot-accounts.rebalance-interval-ms=3600000"})
+public class AccountServiceControllerHotAccountIntegrationTest extends AccountServiceControllerIntegrationTest {
+
+    @Autowired
+    private AccountBucketService accountBucketService;
+
+    @Autowired
+    private AccountBucketRepository accountBucketRepository;
+
+    @Test
+    @DisplayName("Test hot accounts are matched ignoring case")
+    void testHotAccountIgnoringCase() {
+        assertTrue(accountBucketService.isHotAccount("sa1002"));
+        assertTrue(accountBucketService.isHotAccount("SA1002"));
+        assertTrue(!accountBucketService.isHotAccount("sa1001"));
+    }
+
+    @Test
+    @DisplayName("Test credits land on the buckets and the rebalance folds them into the ACCOUNT row")
+    void testRebalance() {
+        BigDecimal sa1002Balance = getAccountBalance("sa1002");
+        BigDecimal storedBalance = accountRepository.findById("sa1002").get().getAccountBalance();
+        BigDecimal bucketBalance = getBucketBalance();
+
+        for (int transfer = 0; transfer < 4; transfer++) {
+            assertTrue(accountServiceController.updateAccountDetails(
+                    getUpdateAccountDetailsRequest("sa1001", "sa1002", BigDecimal.valueOf(25))).getErrorCodeList().isEmpty());
+        }
+
+        // The credits are spread over the buckets, the ACCOUNT row is not updated
+        assertTrue(getBucketBalance().compareTo(bucketBalance.add(BigDecimal.valueOf(100))) == 0);
+        assertTrue(accountRepository.findById("sa1002").get().getAccountBalance().compareTo(storedBalance) == 0);
+        assertTrue(getAccountBalance("sa1002").compareTo(sa1002Balance.add(BigDecimal.valueOf(100))) == 0);
+
+        accountBucketService.rebalance();
+
+        assertTrue(getBucketBalance().compareTo(BigDecimal.ZERO) == 0);
+        assertTrue(accountRepository.findById("sa1002").get().getAccountBalance()
+                .compareTo(sa1002Balance.add(BigDecimal.valueOf(100))) == 0);
+        assertTrue(accountBucketRepository.findBucketIndexes("sa1002").size() == 4);
+        assertTrue(getAccountBalance("sa1002").compareTo(sa1002Balance.add(BigDecimal.valueOf(100))) == 0);
+
+        // Restore the balances
+        assertTrue(accountServiceController.updateAccountDetails(
+                getUpdateAccountDetailsRequest("sa1002", "sa1001", BigDecimal.valueOf(100))).getErrorCodeList().isEmpty());
+        assertTrue(getAccountBalance("sa1002").compareTo(sa1002Balance) == 0);
+    }
+
+    private BigDecimal getBucketBalance() {
+        List<Object[]> rows = accountBucketRepository.sumBucketBalances(Collections.singletonList("sa1002"));
+        return rows.isEmpty() ? BigDecimal.ZERO : (BigDecimal) rows.get(0)[1];
+    }
+}
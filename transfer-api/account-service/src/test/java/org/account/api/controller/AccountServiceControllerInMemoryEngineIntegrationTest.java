@@ -0,0 +1,114 @@
+package org.account.api.controller;
+
+import org.account.api.engine.AccountJournal;
+import org.common.api.money.Money;
+import org.common.api.request.UpdateAccountDetailsRequest;
+import org.common.api.util.ErrorCode;
+import org.common.api.util.RequestDeadline;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the AccountServiceController integration test cases
+ * with account.engine.type set to in-memory, and tests the
+ * recovery of the AccountJournal and the request deadline of
+ * transfers with an idempotency key.
+ */
+@TestPropertySource(properties = {
+        "account.engine.type=in-memory",
+        "account.engine.journal-directory=target/account-journal"})
+public class AccountServiceControllerInMemoryEngineIntegrationTest extends AccountServiceControllerIntegrationTest {
+
+    @Test
+    @DisplayName("Test AccountJournal recovers the last balances and credits open transfers once")
+    void testAccountJournalRecovery() throws IOException {
+        Path journalDirectory = Files.createTempDirectory("account-journal");
+        AccountJournal accountJournal = new AccountJournal(journalDirectory);
+        accountJournal.appendTransfer("sa1001", money("990"), "sa1002", money("2010"));
+        String transferId = accountJournal.newTransferId();
+        accountJournal.appendDebit(transferId, "sa1001", money("890"), "sa1003", money("100"));
+        // The open transfer is carried over, the segment holding its debit is checkpointed and deleted
+        accountJournal.delete(accountJournal.rotate());
+        accountJournal.awaitDurable();
+        accountJournal.close();
+
+        Map<String, BigDecimal> storedBalances = Collections.singletonMap("sa1003", BigDecimal.valueOf(500));
+        AccountJournal recoveringJournal = new AccountJournal(journalDirectory);
+        List<Path> segments = recoveringJournal.rotate();
+        Map<String, BigDecimal> balances = recoveringJournal.recover(segments, storedBalances::get);
+        assertTrue(balances.size() == 1);
+        assertTrue(balances.get("sa1003").compareTo(BigDecimal.valueOf(600)) == 0);
+        recoveringJournal.close();
+
+        // A crash before the recovered segments are deleted recovers the same balances
+        AccountJournal repeatingJournal = new AccountJournal(journalDirectory);
+        balances = repeatingJournal.recover(repeatingJournal.rotate(), storedBalances::get);
+        assertTrue(balances.get("sa1003").compareTo(BigDecimal.valueOf(600)) == 0);
+        repeatingJournal.close();
+    }
+
+    @Test
+    @DisplayName("Test AccountJournal refunds an open transfer to an unknown account and ignores torn records")
+    void testAccountJournalRecoveryOfTornSegment() throws IOException {
+        Path journalDirectory = Files.createTempDirectory("account-journal");
+        AccountJournal accountJournal = new AccountJournal(journalDirectory);
+        accountJournal.appendTransfer("sa1001", money("990"), "sa1002", money("2010"));
+        accountJournal.appendDebit(accountJournal.newTransferId(), "sa1001", money("890"), "sa1009", money("100"));
+        accountJournal.close();
+
+        // A record cut by a crash, the record after it was never acknowledged
+        List<Path> segments = new AccountJournal(journalDirectory).rotate();
+        Files.write(segments.get(0), "T\tsa1001\t10".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        Files.write(segments.get(0), "\nT\tsa1001\t0.00\tsa1002\t3000.00\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        Map<String, BigDecimal> balances = new AccountJournal(journalDirectory).recover(segments, accountNumber -> null);
+        assertTrue(balances.get("sa1001").compareTo(BigDecimal.valueOf(990)) == 0);
+        assertTrue(balances.get("sa1002").compareTo(BigDecimal.valueOf(2010)) == 0);
+        assertTrue(!balances.containsKey("sa1009"));
+    }
+
+    @Test
+    @DisplayName("Test a transfer with an idempotency key is refused before the shards once the request deadline passed")
+    void testUpdateAccountDetailsWithIdempotencyKeyAfterRequestDeadline() {
+        BigDecimal sourceBalance = getAccountBalance("sa1001");
+        UpdateAccountDetailsRequest updateAccountDetailsRequest = getUpdateAccountDetailsRequest("sa1001", "sa1002", BigDecimal.valueOf(10));
+        updateAccountDetailsRequest.setIdempotencyKey(UUID.randomUUID().toString());
+        try {
+            RequestDeadline.start("0");
+            assertTrue(accountServiceController.updateAccountDetails(updateAccountDetailsRequest).getErrorCodeList()
+                    .equals(Arrays.asList(ErrorCode.REQUEST_DEADLINE_EXCEEDED)));
+            assertTrue(getAccountBalance("sa1001").compareTo(sourceBalance) == 0);
+
+            // The key was not recorded, the transfer is applied once it arrives in time, then only once
+            RequestDeadline.start("60000");
+            assertTrue(accountServiceController.updateAccountDetails(updateAccountDetailsRequest).getErrorCodeList().isEmpty());
+            assertTrue(accountServiceController.updateAccountDetails(updateAccountDetailsRequest).getErrorCodeList().isEmpty());
+            assertTrue(RequestDeadline.isPresent());
+        } finally {
+            RequestDeadline.clear();
+        }
+        assertTrue(getAccountBalance("sa1001").compareTo(sourceBalance.subtract(BigDecimal.valueOf(10))) == 0);
+
+        assertTrue(accountServiceController.updateAccountDetails(
+                getUpdateAccountDetailsRequest("sa1002", "sa1001", BigDecimal.valueOf(10))).getErrorCodeList().isEmpty());
+    }
+
+    private Money money(String amount) {
+        return Money.parse(amount, Money.DEFAULT_SCALE);
+    }
+}
@@ -1,12 +1,17 @@
 package org.account.api.controller;
 
+import org.account.api.repository.AccountRepository;
+import org.account.api.service.AccountService;
 import org.common.api.dto.AccountDto;
 import org.common.api.dto.TransferFundDto;
 import org.common.api.request.AccountDetailsRequest;
+import org.common.api.request.UpdateAccountDetailsBatchRequest;
 import org.common.api.request.UpdateAccountDetailsRequest;
 import org.common.api.response.AccountDetailsResponse;
+import org.common.api.response.UpdateAccountDetailsBatchResponse;
 import org.common.api.response.UpdateAccountDetailsResponse;
 import org.common.api.util.ErrorCode;
+import org.common.api.util.RequestDeadline;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,11 +19,28 @@ import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabas
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.TestPropertySource;
-
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionTimedOutException;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.ReflectionUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
@@ -32,7 +54,16 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 @TestPropertySource(locations = "classpath:application-test.yaml")
 public class AccountServiceControllerIntegrationTest {
     @Autowired
-    private AccountServiceController accountServiceController;
+    protected AccountServiceController accountServiceController;
+
+    @Autowired
+    protected AccountRepository accountRepository;
+
+    @Autowired
+    protected PlatformTransactionManager transactionManager;
+
+    @Autowired
+    protected AccountService accountService;
 
     @Test
     @DisplayName("Test getAllAccountDetails")
@@ -217,5 +248,245 @@ public class AccountServiceControllerIntegrationTest {
         assertTrue(errorCodeList.contains(ErrorCode.INSUFFICIENT_FUNDS_FOR_TRANSFER));
     }
 
+    @Test
+    @DisplayName("Test concurrent crossing fund transfers complete without deadlocks")
+    void testConcurrentCrossingTransfers() throws InterruptedException, ExecutionException {
+        BigDecimal sa1001Balance = getAccountBalance("sa1001");
+        BigDecimal sa1002Balance = getAccountBalance("sa1002");
+
+        // Equal number of sa1001 -> sa1002 and sa1002 -> sa1001 transfers, net balance change is zero
+        List<Callable<UpdateAccountDetailsResponse>> transfers = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            transfers.add(() -> accountServiceController.updateAccountDetails(getUpdateAccountDetailsRequest("sa1001", "sa1002", BigDecimal.ONE)));
+            transfers.add(() -> accountServiceController.updateAccountDetails(getUpdateAccountDetailsRequest("sa1002", "sa1001", BigDecimal.ONE)));
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            for (Future<UpdateAccountDetailsResponse> future : executorService.invokeAll(transfers)) {
+                assertTrue(future.get().getErrorCodeList().size() == 0);
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        assertTrue(sa1001Balance.compareTo(getAccountBalance("sa1001")) == 0);
+        assertTrue(sa1002Balance.compareTo(getAccountBalance("sa1002")) == 0);
+    }
+
+    @Test
+    @DisplayName("Test getAccountDetails returns balances of a committed transfer")
+    void testGetAccountDetailsAfterTransfer() {
+        BigDecimal sa1001Balance = getAccountBalance("sa1001");
+        BigDecimal sa1002Balance = getAccountBalance("sa1002");
+
+        UpdateAccountDetailsResponse updateAccountDetailsResponse = accountServiceController.updateAccountDetails(getUpdateAccountDetailsRequest("sa1001", "sa1002", BigDecimal.valueOf(100)));
+        assertTrue(updateAccountDetailsResponse.getErrorCodeList().size() == 0);
+
+        assertTrue(sa1001Balance.subtract(BigDecimal.valueOf(100)).compareTo(getAccountBalance("sa1001")) == 0);
+        assertTrue(sa1002Balance.add(BigDecimal.valueOf(100)).compareTo(getAccountBalance("sa1002")) == 0);
+
+        // Restore balances for the other test cases
+        updateAccountDetailsResponse = accountServiceController.updateAccountDetails(getUpdateAccountDetailsRequest("sa1002", "sa1001", BigDecimal.valueOf(100)));
+        assertTrue(updateAccountDetailsResponse.getErrorCodeList().size() == 0);
+        assertTrue(sa1001Balance.compareTo(getAccountBalance("sa1001")) == 0);
+    }
+
+    @Test
+    @DisplayName("Test updateAccountDetailsBatch all or nothing applies no transfer when one fails")
+    void testUpdateAccountDetailsBatchAllOrNothing() {
+        BigDecimal sa1001Balance = getAccountBalance("sa1001");
+        BigDecimal sa1002Balance = getAccountBalance("sa1002");
+
+        List<TransferFundDto> transferFundDtoList = Arrays.asList(
+                new TransferFundDto("sa1001", "sa1002", BigDecimal.valueOf(100)),
+                new TransferFundDto("sa1002", "sa1001", sa1002Balance.add(BigDecimal.valueOf(1000))));
+        UpdateAccountDetailsBatchResponse updateAccountDetailsBatchResponse = accountServiceController.updateAccountDetailsBatch(
+                new UpdateAccountDetailsBatchRequest(transferFundDtoList, true));
+
+        List<UpdateAccountDetailsResponse> responses = updateAccountDetailsBatchResponse.getUpdateAccountDetailsResponseList();
+        assertTrue(updateAccountDetailsBatchResponse.getErrorCodeList().isEmpty());
+        assertTrue(responses.size() == 2);
+        assertTrue(responses.get(0).getErrorCodeList().contains(ErrorCode.TRANSFER_NOT_APPLIED_BATCH_FAILED));
+        assertTrue(responses.get(1).getErrorCodeList().contains(ErrorCode.INSUFFICIENT_FUNDS_FOR_TRANSFER));
+
+        assertTrue(sa1001Balance.compareTo(getAccountBalance("sa1001")) == 0);
+        assertTrue(sa1002Balance.compareTo(getAccountBalance("sa1002")) == 0);
+    }
+
+    @Test
+    @DisplayName("Test updateAccountDetailsBatch best effort applies the valid transfers in order")
+    void testUpdateAccountDetailsBatchBestEffort() {
+        BigDecimal sa1001Balance = getAccountBalance("sa1001");
+        BigDecimal sa1002Balance = getAccountBalance("sa1002");
+
+        // The third transfer is only valid after the first one is applied
+        List<TransferFundDto> transferFundDtoList = Arrays.asList(
+                new TransferFundDto("sa1001", "sa1002", BigDecimal.valueOf(100)),
+                new TransferFundDto("sa1001", "sa9999", BigDecimal.valueOf(100)),
+                new TransferFundDto("sa1002", "sa1001", sa1002Balance.add(BigDecimal.valueOf(100))));
+        UpdateAccountDetailsBatchResponse updateAccountDetailsBatchResponse = accountServiceController.updateAccountDetailsBatch(
+                new UpdateAccountDetailsBatchRequest(transferFundDtoList, false));
+
+        List<UpdateAccountDetailsResponse> responses = updateAccountDetailsBatchResponse.getUpdateAccountDetailsResponseList();
+        assertTrue(responses.size() == 3);
+        assertTrue(responses.get(0).getErrorCodeList().isEmpty());
+        assertTrue(responses.get(1).getErrorCodeList().contains(ErrorCode.INVALID_DESTINATION_ACCOUNT_NUMBER));
+        assertTrue(responses.get(2).getErrorCodeList().isEmpty());
+
+        assertTrue(sa1001Balance.add(sa1002Balance).compareTo(getAccountBalance("sa1001")) == 0);
+        assertTrue(BigDecimal.ZERO.compareTo(getAccountBalance("sa1002")) == 0);
+
+        // Restore balances for the other test cases
+        UpdateAccountDetailsResponse updateAccountDetailsResponse = accountServiceController.updateAccountDetails(getUpdateAccountDetailsRequest("sa1001", "sa1002", sa1002Balance));
+        assertTrue(updateAccountDetailsResponse.getErrorCodeList().size() == 0);
+    }
+
+    @Test
+    @DisplayName("Test updateAccountDetailsBatch best effort keeps the applied transfers when a later one fails")
+    void testUpdateAccountDetailsBatchBestEffortWhenTransferFails() {
+        BigDecimal sa1001Balance = getAccountBalance("sa1001");
+        BigDecimal sa1002Balance = getAccountBalance("sa1002");
+
+        // One transfer per chunk, the second one fails without a source account
+        Object accountServiceImpl = AopTestUtils.getUltimateTargetObject(accountService);
+        boolean chunked = ReflectionUtils.findField(accountServiceImpl.getClass(), "batchChunkSize") != null;
+        Object batchChunkSize = chunked ? ReflectionTestUtils.getField(accountServiceImpl, "batchChunkSize") : null;
+        if (chunked) {
+            ReflectionTestUtils.setField(accountServiceImpl, "batchChunkSize", 1);
+        }
+        List<TransferFundDto> transferFundDtoList = Arrays.asList(
+                new TransferFundDto("sa1001", "sa1002", BigDecimal.valueOf(100)),
+                new TransferFundDto(null, "sa1002", BigDecimal.valueOf(100)),
+                new TransferFundDto("sa1002", "sa1001", BigDecimal.valueOf(100)));
+        UpdateAccountDetailsBatchResponse updateAccountDetailsBatchResponse;
+        try {
+            updateAccountDetailsBatchResponse = accountServiceController.updateAccountDetailsBatch(
+                    new UpdateAccountDetailsBatchRequest(transferFundDtoList, false));
+        } finally {
+            if (chunked) {
+                ReflectionTestUtils.setField(accountServiceImpl, "batchChunkSize", batchChunkSize);
+            }
+        }
+
+        List<UpdateAccountDetailsResponse> responses = updateAccountDetailsBatchResponse.getUpdateAccountDetailsResponseList();
+        assertTrue(updateAccountDetailsBatchResponse.getErrorCodeList().isEmpty());
+        assertTrue(responses.size() == 3);
+        assertTrue(responses.get(0).getErrorCodeList().isEmpty());
+        assertTrue(responses.get(1).getErrorCodeList().equals(Arrays.asList(ErrorCode.TRANSFER_OUTCOME_UNKNOWN)));
+        assertTrue(responses.get(2).getErrorCodeList().equals(Arrays.asList(ErrorCode.TRANSFER_NOT_APPLIED_BATCH_FAILED)));
+
+        assertTrue(sa1001Balance.subtract(BigDecimal.valueOf(100)).compareTo(getAccountBalance("sa1001")) == 0);
+        assertTrue(sa1002Balance.add(BigDecimal.valueOf(100)).compareTo(getAccountBalance("sa1002")) == 0);
+
+        // Restore balances for the other test cases
+        UpdateAccountDetailsResponse updateAccountDetailsResponse = accountServiceController.updateAccountDetails(getUpdateAccountDetailsRequest("sa1002", "sa1001", BigDecimal.valueOf(100)));
+        assertTrue(updateAccountDetailsResponse.getErrorCodeList().size() == 0);
+    }
+
+    @Test
+    @DisplayName("Test updateAccountDetails applies a transfer once per idempotency key")
+    void testUpdateAccountDetailsWithIdempotencyKey() {
+        BigDecimal sa1001Balance = getAccountBalance("sa1001");
+        BigDecimal sa1002Balance = getAccountBalance("sa1002");
+
+        UpdateAccountDetailsRequest updateAccountDetailsRequest = getUpdateAccountDetailsRequest("sa1001", "sa1002", BigDecimal.valueOf(100));
+        updateAccountDetailsRequest.setIdempotencyKey(UUID.randomUUID().toString());
+        UpdateAccountDetailsResponse firstResponse = accountServiceController.updateAccountDetails(updateAccountDetailsRequest);
+        UpdateAccountDetailsResponse repeatedResponse = accountServiceController.updateAccountDetails(updateAccountDetailsRequest);
+
+        assertTrue(firstResponse.getErrorCodeList().isEmpty());
+        assertTrue(repeatedResponse.getErrorCodeList().isEmpty());
+        assertTrue(getAccountBalance("sa1001").compareTo(sa1001Balance.subtract(BigDecimal.valueOf(100))) == 0);
+        assertTrue(getAccountBalance("sa1002").compareTo(sa1002Balance.add(BigDecimal.valueOf(100))) == 0);
+
+        // The key reused for another amount is rejected, the same transfer in another scale is a repeat
+        String idempotencyKey = updateAccountDetailsRequest.getIdempotencyKey();
+        updateAccountDetailsRequest = getUpdateAccountDetailsRequest("sa1001", "sa1002", BigDecimal.valueOf(10));
+        updateAccountDetailsRequest.setIdempotencyKey(idempotencyKey);
+        assertTrue(accountServiceController.updateAccountDetails(updateAccountDetailsRequest).getErrorCodeList()
+                .equals(Arrays.asList(ErrorCode.IDEMPOTENCY_KEY_REUSED)));
+        updateAccountDetailsRequest = getUpdateAccountDetailsRequest("SA1001", "sa1002", new BigDecimal("100.00"));
+        updateAccountDetailsRequest.setIdempotencyKey(idempotencyKey);
+        assertTrue(accountServiceController.updateAccountDetails(updateAccountDetailsRequest).getErrorCodeList().isEmpty());
+        assertTrue(getAccountBalance("sa1001").compareTo(sa1001Balance.subtract(BigDecimal.valueOf(100))) == 0);
+
+        // A rejected transfer does not record its key, so it can be retried
+        updateAccountDetailsRequest = getUpdateAccountDetailsRequest("sa1001", "sa1002", sa1001Balance.add(BigDecimal.valueOf(100)));
+        updateAccountDetailsRequest.setIdempotencyKey(UUID.randomUUID().toString());
+        assertTrue(accountServiceController.updateAccountDetails(updateAccountDetailsRequest).getErrorCodeList().contains(ErrorCode.INSUFFICIENT_FUNDS_FOR_TRANSFER));
+        assertTrue(accountServiceController.updateAccountDetails(updateAccountDetailsRequest).getErrorCodeList().contains(ErrorCode.INSUFFICIENT_FUNDS_FOR_TRANSFER));
+
+        // Restore balances for the other test cases
+        assertTrue(accountServiceController.updateAccountDetails(getUpdateAccountDetailsRequest("sa1002", "sa1001", BigDecimal.valueOf(100))).getErrorCodeList().isEmpty());
+        assertTrue(sa1001Balance.compareTo(getAccountBalance("sa1001")) == 0);
+    }
+
+    @Test
+    @DisplayName("Test getAccountDetailsPage follows the keyset cursor to the last page")
+    void testGetAccountDetailsPage() {
+        AccountDetailsResponse firstPage = accountServiceController.getAccountDetailsPage(null, 1);
+        assertTrue(firstPage.getListAccountDto().size() == 1);
+        assertTrue("sa1001".equalsIgnoreCase(firstPage.getListAccountDto().get(0).getAccountNumber()));
+        assertTrue("sa1001".equalsIgnoreCase(firstPage.getNextAfterAccountNumber()));
+
+        AccountDetailsResponse secondPage = accountServiceController.getAccountDetailsPage(firstPage.getNextAfterAccountNumber(), 10);
+        assertTrue(secondPage.getListAccountDto().size() == 1);
+        assertTrue("sa1002".equalsIgnoreCase(secondPage.getListAccountDto().get(0).getAccountNumber()));
+        assertTrue(secondPage.getNextAfterAccountNumber() == null);
+    }
+
+    @Test
+    @DisplayName("Test streamAllAccountDetails writes one account per line")
+    void testStreamAllAccountDetails() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        accountServiceController.streamAllAccountDetails().getBody().writeTo(outputStream);
+
+        String[] lines = new String(outputStream.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertTrue(lines.length == 2);
+        assertTrue(lines[0].contains("sa1001"));
+        assertTrue(lines[1].contains("sa1002"));
+    }
+
+    @Test
+    @DisplayName("Test updateAccountDetails is refused or rolled back once the request deadline passed")
+    void testUpdateAccountDetailsAfterRequestDeadline() {
+        BigDecimal sourceBalance = getAccountBalance("sa1001");
+        BigDecimal storedBalance = accountRepository.findById("sa1001").get().getAccountBalance();
+        try {
+            RequestDeadline.start("0");
+            UpdateAccountDetailsResponse updateAccountDetailsResponse = accountServiceController.updateAccountDetails(
+                    getUpdateAccountDetailsRequest("sa1001", "sa1002", BigDecimal.valueOf(100)));
+            assertTrue(updateAccountDetailsResponse.getErrorCodeList().equals(Arrays.asList(ErrorCode.REQUEST_DEADLINE_EXCEEDED)));
+
+            RequestDeadline.start("200");
+            assertThrows(TransactionTimedOutException.class, () -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                accountRepository.updateAccountBalance("sa1001", BigDecimal.ZERO);
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        } finally {
+            RequestDeadline.clear();
+        }
+
+        assertTrue(getAccountBalance("sa1001").compareTo(sourceBalance) == 0);
+        // Engines writing balances behind may have stored the balance in the meantime, never the rolled back one
+        BigDecimal balance = accountRepository.findById("sa1001").get().getAccountBalance();
+        assertTrue(balance.compareTo(storedBalance) == 0 || balance.compareTo(sourceBalance) == 0);
+    }
+
+    protected UpdateAccountDetailsRequest getUpdateAccountDetailsRequest(String sourceAccountNumber, String destinationAccountNumber, BigDecimal transferAmount) {
+        TransferFundDto transferFundDto = new TransferFundDto(sourceAccountNumber, destinationAccountNumber, transferAmount);
+        return new UpdateAccountDetailsRequest(transferFundDto, null);
+    }
+
+    protected BigDecimal getAccountBalance(String accountNumber) {
+        AccountDetailsRequest accountDetailsRequest = new AccountDetailsRequest(Arrays.asList(accountNumber));
+        return accountServiceController.getAccountDetails(accountDetailsRequest).getListAccountDto().get(0).getAccountBalance();
+    }
+
 }
 
@@ -0,0 +1,67 @@
+package org.account.api.controller;
+
+import org.account.api.entity.AccountSnapshot;
+import org.account.api.repository.AccountSnapshotRepository;
+import org.account.api.repository.LedgerEntryRepository;
+import org.account.api.service.LedgerCompactor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the AccountServiceController integration test cases
+ * with account.engine.type set to ledger, compacting snapshots
+ * often enough to interleave with the transfers of the test cases,
+ * and tests the snapshot compaction.
+ */
+@TestPropertySource(properties = {
+        "account.engine.type=ledger",
+        "account.ledger.compaction-interval-ms=50"
+})
+public class AccountServiceControllerLedgerEngineIntegrationTest extends AccountServiceControllerIntegrationTest {
+
+    @Autowired
+    private LedgerCompactor ledgerCompactor;
+
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Autowired
+    private AccountSnapshotRepository accountSnapshotRepository;
+
+    @Test
+    @DisplayName("Test compaction rolls the snapshots of dirty accounts forward and prunes their entries")
+    void testCompaction() {
+        BigDecimal sa1001Balance = getAccountBalance("sa1001");
+        BigDecimal sa1002Balance = getAccountBalance("sa1002");
+
+        assertTrue(accountServiceController.updateAccountDetails(
+                getUpdateAccountDetailsRequest("sa1001", "sa1002", BigDecimal.valueOf(50))).getErrorCodeList().isEmpty());
+
+        ledgerCompactor.compact();
+
+        // Both snapshots cover the transfer, no account is left to compact and no entry is left
+        AccountSnapshot sa1001Snapshot = accountSnapshotRepository.findById("sa1001").get();
+        AccountSnapshot sa1002Snapshot = accountSnapshotRepository.findById("sa1002").get();
+        assertTrue(sa1001Snapshot.getBalance().compareTo(sa1001Balance.subtract(BigDecimal.valueOf(50))) == 0);
+        assertTrue(sa1002Snapshot.getBalance().compareTo(sa1002Balance.add(BigDecimal.valueOf(50))) == 0);
+        assertTrue(ledgerEntryRepository.findAccountNumbersToCompact().isEmpty());
+        assertTrue(ledgerEntryRepository.count() == 0);
+        assertTrue(getAccountBalance("sa1001").compareTo(sa1001Balance.subtract(BigDecimal.valueOf(50))) == 0);
+
+        // Restore the balances, then compact again
+        assertTrue(accountServiceController.updateAccountDetails(
+                getUpdateAccountDetailsRequest("sa1002", "sa1001", BigDecimal.valueOf(50))).getErrorCodeList().isEmpty());
+        ledgerCompactor.compact();
+
+        assertTrue(ledgerEntryRepository.count() == 0);
+        assertTrue(accountSnapshotRepository.findById("sa1001").get().getBalance().compareTo(sa1001Balance) == 0);
+        assertTrue(getAccountBalance("sa1001").compareTo(sa1001Balance) == 0);
+        assertTrue(getAccountBalance("sa1002").compareTo(sa1002Balance) == 0);
+    }
+}
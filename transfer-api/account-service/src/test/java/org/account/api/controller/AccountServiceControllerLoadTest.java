@@ -0,0 +1,134 @@
+package org.account.api.controller;
+
+import org.common.api.dto.TransferFundDto;
+import org.common.api.request.UpdateAccountDetailsRequest;
+import org.common.api.util.ErrorCode;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Load harness for the transfer path of AccountServiceController, run only when
+ * the benchmark system property is set:
+ * <pre>
+ * mvn test -pl account-service -Dtest=AccountServiceControllerLoadTest -Dbenchmark=true \
+ *     -Daccount.transfer.mode=CONDITIONAL_UPDATE -Daccount.hot-accounts.account-numbers=sa1002
+ * </pre>
+ * Concurrent clients transfer sa1001 to sa1002, so every transfer contends on the same two
+ * rows, and the throughput and latency percentiles are logged. The transferred total is moved
+ * back at the end, leaving the balances as the other test cases expect them.
+ */
+@SpringBootTest
+@AutoConfigureTestDatabase
+@ActiveProfiles("test")
+@TestPropertySource(locations = "classpath:application-test.yaml")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class AccountServiceControllerLoadTest {
+
+    private final static Logger logger = LoggerFactory.getLogger(AccountServiceControllerLoadTest.class);
+
+    private static final BigDecimal TRANSFER_AMOUNT = new BigDecimal("0.01");
+
+    @Autowired
+    private AccountServiceController accountServiceController;
+
+    @Value("${benchmark.threads:8}")
+    private int threadCount;
+
+    @Value("${benchmark.transfers:20000}")
+    private int transferCount;
+
+    @Value("${account.transfer.mode:PESSIMISTIC_LOCK}")
+    private String transferMode;
+
+    @Value("${account.engine.type:jpa}")
+    private String engineType;
+
+    @Value("${account.hot-accounts.account-numbers:}")
+    private String hotAccountNumbers;
+
+    @Test
+    @DisplayName("Measure the throughput and latency of concurrent transfers between two accounts")
+    void testTransferLoad() throws Exception {
+        // Warm up the transfer path before measuring
+        int warmUpCount = Math.min(transferCount, 2000);
+        int warmUpFailedCount = runTransfers(new long[warmUpCount]);
+        long[] latencies = new long[transferCount];
+        long startTime = System.nanoTime();
+        int failedCount = runTransfers(latencies);
+        long elapsedNanos = System.nanoTime() - startTime;
+
+        Arrays.sort(latencies);
+        logger.info("engine={} mode={} hotAccounts=[{}] threads={} transfers={} failed={} throughput={}/s p50={}us p99={}us max={}us",
+                engineType, transferMode, hotAccountNumbers, threadCount, transferCount, failedCount,
+                transferCount * 1_000_000_000L / elapsedNanos, percentile(latencies, 50), percentile(latencies, 99),
+                latencies[latencies.length - 1] / 1000);
+
+        // Move the transferred total back
+        int transferredCount = warmUpCount - warmUpFailedCount + transferCount - failedCount;
+        assertTrue(transfer("sa1002", "sa1001", TRANSFER_AMOUNT.multiply(BigDecimal.valueOf(transferredCount))).isEmpty());
+        assertTrue(warmUpFailedCount + failedCount == 0);
+    }
+
+    /**
+     * Run the transfers on the client threads.
+     *
+     * @param latencies filled with the latency of every transfer in nanoseconds
+     * @return number of failed transfers
+     */
+    private int runTransfers(long[] latencies) throws Exception {
+        AtomicInteger nextIndex = new AtomicInteger();
+        AtomicInteger failedCount = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < threadCount; thread++) {
+                futures.add(executorService.submit(() -> {
+                    for (int index = nextIndex.getAndIncrement(); index < latencies.length; index = nextIndex.getAndIncrement()) {
+                        long startTime = System.nanoTime();
+                        List<ErrorCode> errorCodeList = transfer("sa1001", "sa1002", TRANSFER_AMOUNT);
+                        latencies[index] = System.nanoTime() - startTime;
+                        if (!errorCodeList.isEmpty()) {
+                            failedCount.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        return failedCount.get();
+    }
+
+    private List<ErrorCode> transfer(String sourceAccountNumber, String destinationAccountNumber, BigDecimal transferAmount) {
+        TransferFundDto transferFundDto = new TransferFundDto(sourceAccountNumber, destinationAccountNumber, transferAmount);
+        return accountServiceController.updateAccountDetails(new UpdateAccountDetailsRequest(transferFundDto, null)).getErrorCodeList();
+    }
+
+    private long percentile(long[] sortedLatencies, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(index, 0)] / 1000;
+    }
+}
@@ -0,0 +1,70 @@
+package org.account.api.controller;
+
+import org.account.api.validator.TransferFundValidator;
+import org.common.api.util.ErrorCode;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the AccountServiceController integration test cases
+ * with account.transfer.mode set to OPTIMISTIC_LOCK, and tests
+ * a transfer conflicting on every attempt.
+ * Crossing transfers of the concurrency test conflict on every attempt,
+ * so the attempts are not bounded as low as by default.
+ */
+@TestPropertySource(properties = {
+        "account.transfer.mode=OPTIMISTIC_LOCK",
+        "account.transfer.optimistic.max-attempts=100"
+})
+public class AccountServiceControllerOptimisticLockIntegrationTest extends AccountServiceControllerIntegrationTest {
+
+    @SpyBean
+    private TransferFundValidator transferFundValidator;
+
+    @Test
+    @DisplayName("Test a transfer conflicting on every attempt fails after max-attempts attempts")
+    void testOptimisticLockRetryExhaustion() {
+        BigDecimal sa1001Balance = getAccountBalance("sa1001");
+        BigDecimal sa1002Balance = getAccountBalance("sa1002");
+        Object accountServiceImpl = AopTestUtils.getUltimateTargetObject(accountService);
+        int maxAttempts = (int) ReflectionTestUtils.getField(accountServiceImpl, "optimisticMaxAttempts");
+
+        // Every attempt reads sa1001, then a concurrent writer commits a new version of it
+        TransactionTemplate concurrentWriter = new TransactionTemplate(transactionManager);
+        concurrentWriter.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        AtomicInteger attempts = new AtomicInteger();
+        Mockito.doAnswer(invocation -> {
+            attempts.incrementAndGet();
+            concurrentWriter.executeWithoutResult(status -> accountRepository.updateAccountBalance("sa1001",
+                    accountRepository.findById("sa1001").get().getAccountBalance()));
+            return invocation.callRealMethod();
+        }).when(transferFundValidator).validate(Mockito.any(), Mockito.any());
+
+        try {
+            ReflectionTestUtils.setField(accountServiceImpl, "optimisticMaxAttempts", 3);
+            assertTrue(accountServiceController.updateAccountDetails(
+                    getUpdateAccountDetailsRequest("sa1001", "sa1002", BigDecimal.TEN)).getErrorCodeList()
+                    .equals(Arrays.asList(ErrorCode.ERROR_UPDATING_ACCOUNT_INFO)));
+        } finally {
+            ReflectionTestUtils.setField(accountServiceImpl, "optimisticMaxAttempts", maxAttempts);
+            Mockito.reset(transferFundValidator);
+        }
+
+        assertTrue(attempts.get() == 3);
+        assertTrue(sa1001Balance.compareTo(getAccountBalance("sa1001")) == 0);
+        assertTrue(sa1002Balance.compareTo(getAccountBalance("sa1002")) == 0);
+    }
+}
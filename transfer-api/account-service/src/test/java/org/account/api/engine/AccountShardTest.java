@@ -0,0 +1,96 @@
+package org.account.api.engine;
+
+import org.account.api.entity.Account;
+import org.account.api.repository.AccountRepository;
+import org.common.api.money.Money;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test cases of the AccountShard commands and the loading of their accounts
+ */
+public class AccountShardTest {
+
+    private AccountRepository accountRepository;
+
+    private AccountJournal accountJournal;
+
+    private ExecutorService accountLoader;
+
+    private AccountShard accountShard;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        accountRepository = Mockito.mock(AccountRepository.class);
+        accountJournal = new AccountJournal(Files.createTempDirectory("account-journal"));
+        accountLoader = Executors.newSingleThreadExecutor();
+        accountShard = new AccountShard(0, 100, Money.DEFAULT_SCALE, accountRepository, accountJournal, accountLoader);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        accountShard.shutdown();
+        accountLoader.shutdownNow();
+        accountJournal.close();
+    }
+
+    @Test
+    @DisplayName("Test the shard runs other commands while an account is loaded")
+    void testCommandsWhileAccountLoads() throws Exception {
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch loadReleased = new CountDownLatch(1);
+        Mockito.when(accountRepository.findById("sa1001")).thenAnswer(invocation -> {
+            loadStarted.countDown();
+            loadReleased.await();
+            return Optional.of(new Account("sa1001", BigDecimal.valueOf(100), 0L));
+        });
+
+        CompletableFuture<Map<String, Money>> balances = accountShard.getBalances(Collections.singletonList("sa1001"));
+        assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+
+        // The writer thread is not held by the load
+        assertTrue(accountShard.getLoadedBalances().get(5, TimeUnit.SECONDS).isEmpty());
+        assertFalse(balances.isDone());
+
+        loadReleased.countDown();
+        assertTrue(balances.get(5, TimeUnit.SECONDS).get("sa1001").toBigDecimal().compareTo(BigDecimal.valueOf(100)) == 0);
+    }
+
+    @Test
+    @DisplayName("Test the shard holds one balance per account whatever the case of its account number")
+    void testTransferIgnoringCase() throws Exception {
+        Mockito.when(accountRepository.findById(Mockito.anyString())).thenReturn(Optional.empty());
+        Mockito.when(accountRepository.findById("sa1001")).thenReturn(Optional.of(new Account("sa1001", BigDecimal.valueOf(100), 0L)));
+        Mockito.when(accountRepository.findById("sa1002")).thenReturn(Optional.of(new Account("sa1002", BigDecimal.valueOf(100), 0L)));
+
+        assertTrue(accountShard.transfer("sa1001", "sa1002", Money.of(BigDecimal.TEN)).get(5, TimeUnit.SECONDS) == AccountShard.Result.APPLIED);
+        assertTrue(accountShard.transfer("SA1001", "Sa1002", Money.of(BigDecimal.TEN)).get(5, TimeUnit.SECONDS) == AccountShard.Result.APPLIED);
+        assertTrue(accountShard.credit("transfer-1", "SA1002", Money.of(BigDecimal.ONE)).get(5, TimeUnit.SECONDS) == AccountShard.Result.APPLIED);
+        assertTrue(accountShard.debit("transfer-2", "SA9999", "sa1002", Money.of(BigDecimal.ONE)).get(5, TimeUnit.SECONDS) == AccountShard.Result.ACCOUNT_NOT_FOUND);
+
+        Map<String, Money> dirtyBalances = accountShard.drainDirtyBalances().get(5, TimeUnit.SECONDS);
+        assertTrue(dirtyBalances.keySet().equals(new HashSet<>(Arrays.asList("sa1001", "sa1002"))));
+        assertTrue(dirtyBalances.get("sa1001").toBigDecimal().compareTo(BigDecimal.valueOf(80)) == 0);
+        assertTrue(dirtyBalances.get("sa1002").toBigDecimal().compareTo(BigDecimal.valueOf(121)) == 0);
+    }
+}
@@ -0,0 +1,123 @@
+package org.collapsed.api;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.account.api.AccountServiceApplication;
+import org.account.api.controller.AccountServiceController;
+import org.collapsed.api.clients.InProcessAccountServiceClient;
+import org.collapsed.api.clients.InProcessCallDecorator;
+import org.collapsed.api.clients.InProcessEventServiceClient;
+import org.event.api.EventServiceApplication;
+import org.event.api.controller.EventServiceController;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cloud.openfeign.support.FeignHttpClientProperties;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.transfer.api.TransferServiceApplication;
+import org.transfer.api.clients.AccountServiceClient;
+import org.transfer.api.clients.EventServiceClient;
+import org.transfer.api.clients.RequestDeadlineCapability;
+import org.transfer.api.clients.ResilienceCapability;
+import org.transfer.api.clients.RouteConcurrencyInterceptor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Collapsed deployment, for regions running all services on one box: account, event and transfer
+ * services run in one process, and transfer service calls the controllers of the others through
+ * in-process clients instead of Feign, without HTTP, serialization or Eureka lookups.
+ * <p>
+ * Every service keeps its own application context, configuration, database and port, as when
+ * deployed on its own. Arguments are passed to the three services.
+ */
+public class CollapsedServiceApplication {
+
+    private final static Logger logger = LoggerFactory.getLogger(CollapsedServiceApplication.class);
+
+    public static void main(String[] args) {
+        run(args);
+        logger.info("CollapsedServiceApplication successfully initialized.");
+    }
+
+    /**
+     * Run account, event and transfer services.
+     *
+     * @param args
+     * @return the application contexts of account, event and transfer services
+     */
+    public static List<ConfigurableApplicationContext> run(String... args) {
+        ConfigurableApplicationContext accountContext = getSpringApplicationBuilder(AccountServiceApplication.class).run(args);
+        ConfigurableApplicationContext eventContext = getSpringApplicationBuilder(EventServiceApplication.class).run(args);
+
+        AccountServiceController accountServiceController = accountContext.getBean(AccountServiceController.class);
+        EventServiceController eventServiceController = eventContext.getBean(EventServiceController.class);
+        ApplicationContextInitializer<GenericApplicationContext> inProcessClients = context -> {
+            context.registerBean(AccountServiceClient.class,
+                    () -> new InProcessAccountServiceClient(accountServiceController, getInProcessCallDecorator(context, "account-service")));
+            context.registerBean(EventServiceClient.class,
+                    () -> new InProcessEventServiceClient(eventServiceController, getInProcessCallDecorator(context, "event-service")));
+        };
+        // Overrides transfer.clients of the configuration of transfer service
+        String[] transferArgs = Arrays.copyOf(args, args.length + 1);
+        transferArgs[args.length] = "--transfer.clients=in-process";
+        ConfigurableApplicationContext transferContext = getSpringApplicationBuilder(TransferServiceApplication.class)
+                .initializers(inProcessClients)
+                .run(transferArgs);
+        return Arrays.asList(accountContext, eventContext, transferContext);
+    }
+
+    /**
+     * In-process calls are bounded per client by the max-connections-per-route of the Feign transport.
+     *
+     * @param context
+     * @param name
+     * @return
+     */
+    private static InProcessCallDecorator getInProcessCallDecorator(GenericApplicationContext context, String name) {
+        FeignHttpClientProperties properties = context.getBean(FeignHttpClientProperties.class);
+        MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+        return new InProcessCallDecorator(name, context.getBean(ResilienceCapability.class), context.getBean(RequestDeadlineCapability.class),
+                new RouteConcurrencyInterceptor(properties.getMaxConnectionsPerRoute(), properties.getConnectionTimeout(), meterRegistry),
+                meterRegistry);
+    }
+
+    /**
+     * The services share the classpath, so each is pointed at the configuration files and data.sql
+     * of its own module rather than at the first ones found on the classpath.
+     *
+     * @param applicationClass
+     * @return
+     */
+    private static SpringApplicationBuilder getSpringApplicationBuilder(Class<?> applicationClass) {
+        List<String> properties = new ArrayList<>();
+        properties.add("spring.config.location=" + getResourceLocation(applicationClass, "application.yaml"));
+        properties.add("spring.cloud.bootstrap.location=" + getResourceLocation(applicationClass, "bootstrap.yaml"));
+        String dataLocation = getResourceLocation(applicationClass, "data.sql");
+        properties.add(dataLocation == null ? "spring.sql.init.mode=never" : "spring.sql.init.data-locations=" + dataLocation);
+        return new SpringApplicationBuilder(applicationClass).properties(properties.toArray(new String[0]));
+    }
+
+    private static String getResourceLocation(Class<?> applicationClass, String name) {
+        String codeSource = applicationClass.getProtectionDomain().getCodeSource().getLocation().toString();
+        try {
+            Enumeration<URL> resources = applicationClass.getClassLoader().getResources(name);
+            while (resources.hasMoreElements()) {
+                String resource = resources.nextElement().toString();
+                if (resource.contains(codeSource)) {
+                    return resource;
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
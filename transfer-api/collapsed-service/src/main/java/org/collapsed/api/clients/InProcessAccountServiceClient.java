@@ -0,0 +1,47 @@
+package org.collapsed.api.clients;
+
+import org.account.api.controller.AccountServiceController;
+import org.common.api.request.AccountDetailsRequest;
+import org.common.api.request.UpdateAccountDetailsBatchRequest;
+import org.common.api.request.UpdateAccountDetailsRequest;
+import org.common.api.response.AccountDetailsResponse;
+import org.common.api.response.UpdateAccountDetailsBatchResponse;
+import org.common.api.response.UpdateAccountDetailsResponse;
+import org.transfer.api.clients.AccountServiceClient;
+
+/**
+ * AccountServiceClient calling the AccountServiceController of the account service running in the
+ * same process, on the calling thread and without serialization. Calls are decorated as the ones
+ * of the Feign client by the {@link InProcessCallDecorator} of client account-service.
+ */
+public class InProcessAccountServiceClient implements AccountServiceClient {
+
+    private final AccountServiceController accountServiceController;
+
+    private final InProcessCallDecorator inProcessCallDecorator;
+
+    public InProcessAccountServiceClient(AccountServiceController accountServiceController, InProcessCallDecorator inProcessCallDecorator) {
+        this.accountServiceController = accountServiceController;
+        this.inProcessCallDecorator = inProcessCallDecorator;
+    }
+
+    @Override
+    public AccountDetailsResponse getAllAccountDetails() {
+        return inProcessCallDecorator.call("getAllAccountDetails", () -> accountServiceController.getAllAccountDetails());
+    }
+
+    @Override
+    public AccountDetailsResponse getAccountDetails(AccountDetailsRequest accountDetailsRequest) {
+        return inProcessCallDecorator.call("getAccountDetails", () -> accountServiceController.getAccountDetails(accountDetailsRequest));
+    }
+
+    @Override
+    public UpdateAccountDetailsResponse updateAccountDetails(UpdateAccountDetailsRequest updateAccountDetailsRequest) {
+        return inProcessCallDecorator.call("updateAccountDetails", () -> accountServiceController.updateAccountDetails(updateAccountDetailsRequest));
+    }
+
+    @Override
+    public UpdateAccountDetailsBatchResponse updateAccountDetailsBatch(UpdateAccountDetailsBatchRequest updateAccountDetailsBatchRequest) {
+        return inProcessCallDecorator.call("updateAccountDetailsBatch", () -> accountServiceController.updateAccountDetailsBatch(updateAccountDetailsBatchRequest));
+    }
+}
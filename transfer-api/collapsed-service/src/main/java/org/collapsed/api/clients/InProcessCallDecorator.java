@@ -0,0 +1,62 @@
+package org.collapsed.api.clients;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.transfer.api.clients.RequestDeadlineCapability;
+import org.transfer.api.clients.ResilienceCapability;
+import org.transfer.api.clients.RouteConcurrencyInterceptor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Supplier;
+
+/**
+ * Decorates the calls of an in-process client as the Feign clients of transfer service are:
+ * timed by transfer.client.requests, guarded by the circuit breaker and bulkhead of the client,
+ * bounded by the permits of its route, the client name, and run under the request deadline
+ * less transfer.feign.deadline-margin-ms. A call refused by its saturated route fails with an
+ * UncheckedIOException caused by a ConnectException, as it was never sent.
+ */
+public class InProcessCallDecorator {
+
+    private final String name;
+
+    private final ResilienceCapability resilienceCapability;
+
+    private final RequestDeadlineCapability requestDeadlineCapability;
+
+    private final RouteConcurrencyInterceptor routeConcurrencyInterceptor;
+
+    private final MeterRegistry meterRegistry;
+
+    public InProcessCallDecorator(String name, ResilienceCapability resilienceCapability, RequestDeadlineCapability requestDeadlineCapability,
+                                  RouteConcurrencyInterceptor routeConcurrencyInterceptor, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.resilienceCapability = resilienceCapability;
+        this.requestDeadlineCapability = requestDeadlineCapability;
+        this.routeConcurrencyInterceptor = routeConcurrencyInterceptor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> T call(String method, Supplier<T> call) {
+        return getTimer(method).record(() -> resilienceCapability.execute(name, () -> {
+            try {
+                routeConcurrencyInterceptor.acquire(name);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            try {
+                return requestDeadlineCapability.execute(call);
+            } finally {
+                routeConcurrencyInterceptor.release(name);
+            }
+        }));
+    }
+
+    private Timer getTimer(String method) {
+        return Timer.builder("transfer.client.requests")
+                .tag("client", name)
+                .tag("method", method)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,41 @@
+package org.collapsed.api.clients;
+
+import org.common.api.request.RecordTransferEventRequest;
+import org.common.api.request.RecordTransferEventsRequest;
+import org.common.api.response.GetTransferEventsResponse;
+import org.common.api.response.RecordTransferEventResponse;
+import org.common.api.response.RecordTransferEventsResponse;
+import org.event.api.controller.EventServiceController;
+import org.transfer.api.clients.EventServiceClient;
+
+/**
+ * EventServiceClient calling the EventServiceController of the event service running in the
+ * same process, on the calling thread and without serialization. Calls are decorated as the ones
+ * of the Feign client by the {@link InProcessCallDecorator} of client event-service.
+ */
+public class InProcessEventServiceClient implements EventServiceClient {
+
+    private final EventServiceController eventServiceController;
+
+    private final InProcessCallDecorator inProcessCallDecorator;
+
+    public InProcessEventServiceClient(EventServiceController eventServiceController, InProcessCallDecorator inProcessCallDecorator) {
+        this.eventServiceController = eventServiceController;
+        this.inProcessCallDecorator = inProcessCallDecorator;
+    }
+
+    @Override
+    public GetTransferEventsResponse getTransferEvents() {
+        return inProcessCallDecorator.call("getTransferEvents", () -> eventServiceController.getTransferEvents());
+    }
+
+    @Override
+    public RecordTransferEventResponse recordTransferEvent(RecordTransferEventRequest recordTransferEventRequest) {
+        return inProcessCallDecorator.call("recordTransferEvent", () -> eventServiceController.recordTransferEvent(recordTransferEventRequest));
+    }
+
+    @Override
+    public RecordTransferEventsResponse recordTransferEvents(RecordTransferEventsRequest recordTransferEventsRequest) {
+        return inProcessCallDecorator.call("recordTransferEvents", () -> eventServiceController.recordTransferEvents(recordTransferEventsRequest));
+    }
+}
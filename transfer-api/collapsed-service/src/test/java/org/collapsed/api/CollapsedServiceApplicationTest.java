@@ -0,0 +1,67 @@
+package org.collapsed.api;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.collapsed.api.clients.InProcessAccountServiceClient;
+import org.common.api.dto.AccountDto;
+import org.common.api.request.AccountDetailsRequest;
+import org.common.api.request.TransferRequest;
+import org.common.api.response.TransferResponse;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.transfer.api.clients.AccountServiceClient;
+import org.transfer.api.controller.TransferServiceController;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Starts account, event and transfer services in one process and transfers
+ * through the in-process clients.
+ */
+public class CollapsedServiceApplicationTest {
+
+    @Test
+    @DisplayName("Test the collapsed services start and transfer through the decorated in-process clients")
+    void testTransfer() {
+        List<ConfigurableApplicationContext> contexts = CollapsedServiceApplication.run(
+                "--port=0",
+                "--eureka.client.enabled=false",
+                "--spring.cloud.discovery.enabled=false",
+                "--spring.cloud.config.enabled=false",
+                "--account.engine.journal-directory=target/collapsed-journal",
+                "--transfer.outbox.directory=target/collapsed-outbox");
+        try {
+            ConfigurableApplicationContext transferContext = contexts.get(2);
+            AccountServiceClient accountServiceClient = transferContext.getBean(AccountServiceClient.class);
+            assertTrue(accountServiceClient instanceof InProcessAccountServiceClient);
+            BigDecimal sa1001Balance = getAccountBalance(accountServiceClient, "sa1001");
+
+            TransferResponse transferResponse = transferContext.getBean(TransferServiceController.class)
+                    .transfer(new TransferRequest("sa1001", "sa1002", BigDecimal.TEN), null);
+
+            assertTrue(transferResponse.getTransferStatus());
+            assertTrue(getAccountBalance(accountServiceClient, "sa1001").compareTo(sa1001Balance.subtract(BigDecimal.TEN)) == 0);
+
+            // The calls went through the timer, circuit breaker and bulkhead of account-service
+            MeterRegistry meterRegistry = transferContext.getBean(MeterRegistry.class);
+            assertTrue(meterRegistry.get("transfer.client.requests").tag("client", "account-service")
+                    .tag("method", "updateAccountDetails").timer().count() == 1);
+            assertTrue(!meterRegistry.find("resilience4j.circuitbreaker.calls").tag("name", "account-service").meters().isEmpty());
+            assertTrue(!meterRegistry.find("resilience4j.bulkhead.available.concurrent.calls").tag("name", "account-service").meters().isEmpty());
+        } finally {
+            Collections.reverse(contexts);
+            contexts.forEach(ConfigurableApplicationContext::close);
+        }
+    }
+
+    private BigDecimal getAccountBalance(AccountServiceClient accountServiceClient, String accountNumber) {
+        List<AccountDto> accountDtoList = accountServiceClient.getAccountDetails(
+                new AccountDetailsRequest(Arrays.asList(accountNumber))).getListAccountDto();
+        return accountDtoList.get(0).getAccountBalance();
+    }
+}
@@ -5,6 +5,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 
 @Data
 @NoArgsConstructor
@@ -15,4 +16,12 @@ public class TransferEventDto {
     private String sourceAccountNumber;
     private String destinationAccountNumber;
     private BigDecimal transferAmount;
+    // Set by event service when the event is recorded
+    private Instant recordedAt;
+    // Set when the event is appended to the outbox, event service records an event uuid only once
+    private String eventUuid;
+
+    public TransferEventDto(long eventId, String sourceAccountNumber, String destinationAccountNumber, BigDecimal transferAmount) {
+        this(eventId, sourceAccountNumber, destinationAccountNumber, transferAmount, null, null);
+    }
 }
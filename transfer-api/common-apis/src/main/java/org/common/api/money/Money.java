@@ -0,0 +1,176 @@
+package org.common.api.money;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * Immutable amount of money held as a long number of minor units at a fixed scale,
+ * e.g. 1050 with scale 2 for 10.50.
+ * <p>
+ * Arithmetic and comparisons work on the long and allocate no BigDecimal, overflow throws an
+ * ArithmeticException. Amounts of different scales are never mixed. Converting an amount with
+ * more fraction digits than the scale also throws an ArithmeticException, it is never rounded.
+ */
+public final class Money implements Comparable<Money>, Serializable {
+
+    /**
+     * Scale of every amount exchanged by the services, two fraction digits.
+     */
+    public static final int DEFAULT_SCALE = 2;
+
+    private static final long serialVersionUID = 1L;
+
+    private final long minorUnits;
+    private final int scale;
+
+    private Money(long minorUnits, int scale) {
+        if (scale < 0 || scale > 18) {
+            throw new IllegalArgumentException("Unsupported scale: " + scale);
+        }
+        this.minorUnits = minorUnits;
+        this.scale = scale;
+    }
+
+    public static Money ofMinorUnits(long minorUnits, int scale) {
+        return new Money(minorUnits, scale);
+    }
+
+    public static Money of(BigDecimal amount, int scale) {
+        return new Money(amount.setScale(scale).unscaledValue().longValueExact(), scale);
+    }
+
+    public static Money of(BigDecimal amount) {
+        return of(amount, DEFAULT_SCALE);
+    }
+
+    /**
+     * Parse a plain decimal number such as -12.5 digit by digit. Numbers in exponent
+     * notation are parsed through BigDecimal. A number without any digit, such as "." or "-",
+     * throws a NumberFormatException.
+     *
+     * @param value
+     * @param scale
+     * @return
+     */
+    public static Money parse(String value, int scale) {
+        int length = value.length();
+        int index = 0;
+        boolean negative = false;
+        if (length > 0 && (value.charAt(0) == '-' || value.charAt(0) == '+')) {
+            negative = value.charAt(0) == '-';
+            index++;
+        }
+        // Accumulated negated, so the most negative amount does not overflow
+        long negatedMinorUnits = 0;
+        int fractionDigits = -1;
+        boolean digits = false;
+        for (; index < length; index++) {
+            char c = value.charAt(index);
+            if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                return of(new BigDecimal(value), scale);
+            }
+            digits = true;
+            if (fractionDigits >= 0 && ++fractionDigits > scale) {
+                // Trailing zeros beyond the scale do not change the amount
+                if (c != '0') {
+                    throw new ArithmeticException("Amount " + value + " has more than " + scale + " fraction digits");
+                }
+                continue;
+            }
+            negatedMinorUnits = Math.subtractExact(Math.multiplyExact(negatedMinorUnits, 10), c - '0');
+        }
+        if (!digits) {
+            throw new NumberFormatException("Invalid amount: " + value);
+        }
+        for (int fractionDigit = Math.max(fractionDigits, 0); fractionDigit < scale; fractionDigit++) {
+            negatedMinorUnits = Math.multiplyExact(negatedMinorUnits, 10);
+        }
+        return new Money(negative ? negatedMinorUnits : Math.negateExact(negatedMinorUnits), scale);
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    public Money add(Money other) {
+        checkScale(other);
+        return new Money(Math.addExact(minorUnits, other.minorUnits), scale);
+    }
+
+    public Money subtract(Money other) {
+        checkScale(other);
+        return new Money(Math.subtractExact(minorUnits, other.minorUnits), scale);
+    }
+
+    public int signum() {
+        return Long.signum(minorUnits);
+    }
+
+    public boolean isLessThan(Money other) {
+        return compareTo(other) < 0;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, scale);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        checkScale(other);
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Money)) {
+            return false;
+        }
+        Money money = (Money) o;
+        return minorUnits == money.minorUnits && scale == money.scale;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(minorUnits) + scale;
+    }
+
+    /**
+     * Plain decimal representation with exactly scale fraction digits, e.g. -0.50
+     */
+    @Override
+    public String toString() {
+        if (minorUnits == Long.MIN_VALUE) {
+            return toBigDecimal().toPlainString();
+        }
+        String digits = Long.toString(Math.abs(minorUnits));
+        StringBuilder builder = new StringBuilder(digits.length() + scale + 2);
+        if (minorUnits < 0) {
+            builder.append('-');
+        }
+        for (int i = digits.length(); i <= scale; i++) {
+            builder.append('0');
+        }
+        builder.append(digits);
+        if (scale > 0) {
+            builder.insert(builder.length() - scale, '.');
+        }
+        return builder.toString();
+    }
+
+    private void checkScale(Money other) {
+        if (scale != other.scale) {
+            throw new IllegalArgumentException("Scale " + other.scale + " does not match scale " + scale);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.common.api.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.common.api.dto.TransferEventDto;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecordTransferEventsRequest {
+
+    private List<TransferEventDto> transferEventDtoList;
+}
@@ -0,0 +1,19 @@
+package org.common.api.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.common.api.dto.TransferFundDto;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UpdateAccountDetailsBatchRequest {
+
+    private List<TransferFundDto> transferFundDtoList;
+    // true: no transfer is applied unless all are valid, false: valid transfers are applied regardless
+    private boolean allOrNothing;
+
+}
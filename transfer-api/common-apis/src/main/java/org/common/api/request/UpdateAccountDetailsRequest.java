@@ -11,5 +11,7 @@ import org.common.api.dto.TransferFundDto;
 public class UpdateAccountDetailsRequest {
 
     private TransferFundDto transferFundDto;
+    // Applies the transfer at most once per key, null for no deduplication
+    private String idempotencyKey;
 
 }
@@ -15,4 +15,6 @@ public class AccountDetailsResponse {
 
     private List<AccountDto> listAccountDto;
     private List<ErrorCode> errorCode;
+    // Keyset cursor of the next page, null on the last page or when not paginated
+    private String nextAfterAccountNumber;
 }
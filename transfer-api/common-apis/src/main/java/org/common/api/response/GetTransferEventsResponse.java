@@ -15,4 +15,6 @@ public class GetTransferEventsResponse {
 
     private List<TransferEventDto> transferEventDtoList;
     private ErrorCode errorCode;
+    // Keyset cursor of the next page, null on the last page or when not paginated
+    private Long nextAfterEventId;
 }
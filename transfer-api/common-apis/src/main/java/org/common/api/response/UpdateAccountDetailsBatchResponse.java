@@ -0,0 +1,21 @@
+package org.common.api.response;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.common.api.util.ErrorCode;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UpdateAccountDetailsBatchResponse {
+
+    // One response per transfer, in request order
+    private List<UpdateAccountDetailsResponse> updateAccountDetailsResponseList;
+    // Errors failing the batch as a whole
+    private List<ErrorCode> errorCodeList;
+
+}
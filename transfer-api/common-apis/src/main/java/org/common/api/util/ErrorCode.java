@@ -17,7 +17,12 @@ public enum ErrorCode {
     INVALID_SOURCE_ACCOUNT_NUMBER("Invalid source account number."),
     INVALID_DESTINATION_ACCOUNT_NUMBER("Invalid destination account number."),
     NEGATIVE_OR_ZERO_FUND_TRANSFER_NOT_ALLOWED("Negative or zero fund transfer not allowed"),
-    INSUFFICIENT_FUNDS_FOR_TRANSFER("Insufficient funds for transfer.");
+    INSUFFICIENT_FUNDS_FOR_TRANSFER("Insufficient funds for transfer."),
+    TRANSFER_NOT_APPLIED_BATCH_FAILED("Transfer not applied as another transfer of the batch failed."),
+    ACCOUNT_SERVICE_UNAVAILABLE("Account service unavailable. Please try again after sometime."),
+    REQUEST_DEADLINE_EXCEEDED("Request deadline exceeded, transfer not applied."),
+    IDEMPOTENCY_KEY_REUSED("Idempotency key already used for a different transfer."),
+    TRANSFER_OUTCOME_UNKNOWN("Transfer outcome unknown, the transfer may or may not be applied. Check the account before retrying.");
 
     private String errorMessage;
 }
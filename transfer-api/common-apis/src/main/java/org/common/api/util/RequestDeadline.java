@@ -0,0 +1,78 @@
+package org.common.api.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deadline of the request served by the current thread. Services receive and propagate it as the
+ * remaining budget in milliseconds in the X-Request-Timeout-Ms header rather than as an instant,
+ * so it does not depend on the clocks of the services agreeing.
+ */
+public final class RequestDeadline {
+
+    public static final String HEADER = "X-Request-Timeout-Ms";
+
+    private static final ThreadLocal<Long> deadlineNanos = new ThreadLocal<>();
+
+    private RequestDeadline() {
+    }
+
+    /**
+     * Start the deadline of the current request from the value of the header, ignored if it is not a number.
+     *
+     * @param header
+     */
+    public static void start(String header) {
+        if (header == null) {
+            return;
+        }
+        try {
+            set(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Long.parseLong(header.trim())));
+        } catch (NumberFormatException e) {
+            clear();
+        }
+    }
+
+    /**
+     * @return the deadline of the current request in System.nanoTime() terms, null if it has none
+     */
+    public static Long get() {
+        return deadlineNanos.get();
+    }
+
+    /**
+     * Set the deadline of the current thread, e.g. to the one of the request a task was submitted for.
+     *
+     * @param deadline deadline in System.nanoTime() terms, null to clear it
+     */
+    public static void set(Long deadline) {
+        if (deadline == null) {
+            deadlineNanos.remove();
+        } else {
+            deadlineNanos.set(deadline);
+        }
+    }
+
+    public static void clear() {
+        deadlineNanos.remove();
+    }
+
+    public static boolean isPresent() {
+        return deadlineNanos.get() != null;
+    }
+
+    /**
+     * @return milliseconds left before the deadline, 0 once it passed, Long.MAX_VALUE if there is none
+     */
+    public static long getRemainingMs() {
+        Long deadline = deadlineNanos.get();
+        if (deadline == null) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+
+    public static boolean isExpired() {
+        Long deadline = deadlineNanos.get();
+        return deadline != null && deadline - System.nanoTime() <= 0;
+    }
+}
@@ -0,0 +1,13 @@
+package org.common.api.util;
+
+/**
+ * Media types of the internal service APIs. JSON stays the default for every client,
+ * services that ask for it exchange the same DTOs encoded as Smile (binary JSON).
+ */
+public final class WireFormat {
+
+    public static final String APPLICATION_SMILE = "application/x-jackson-smile";
+
+    private WireFormat() {
+    }
+}
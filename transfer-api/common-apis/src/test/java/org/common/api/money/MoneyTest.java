@@ -0,0 +1,69 @@
+package org.common.api.money;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test cases of the parsing, scale and overflow checks of Money
+ */
+public class MoneyTest {
+
+    @Test
+    @DisplayName("Test parse of plain decimal numbers")
+    void testParse() {
+        assertTrue(Money.parse("12.5", 2).getMinorUnits() == 1250);
+        assertTrue(Money.parse("-12.5", 2).getMinorUnits() == -1250);
+        assertTrue(Money.parse("+0.01", 2).getMinorUnits() == 1);
+        assertTrue(Money.parse("7", 2).getMinorUnits() == 700);
+        assertTrue(Money.parse("7.", 2).getMinorUnits() == 700);
+        assertTrue(Money.parse(".5", 2).getMinorUnits() == 50);
+        assertTrue(Money.parse("-.5", 2).getMinorUnits() == -50);
+        assertTrue(Money.parse("1.2500", 2).getMinorUnits() == 125);
+        assertTrue(Money.parse("1.25E2", 2).getMinorUnits() == 12500);
+        assertTrue(Money.parse("12.5", 2).toString().equals("12.50"));
+        assertTrue(Money.parse("-0.5", 2).toString().equals("-0.50"));
+    }
+
+    @Test
+    @DisplayName("Test parse rejects numbers without digits or malformed")
+    void testParseInvalid() {
+        assertThrows(NumberFormatException.class, () -> Money.parse("", 2));
+        assertThrows(NumberFormatException.class, () -> Money.parse("-", 2));
+        assertThrows(NumberFormatException.class, () -> Money.parse(".", 2));
+        assertThrows(NumberFormatException.class, () -> Money.parse("-.", 2));
+        assertThrows(NumberFormatException.class, () -> Money.parse("+.", 2));
+        assertThrows(NumberFormatException.class, () -> Money.parse("1.2.3", 2));
+        assertThrows(NumberFormatException.class, () -> Money.parse("12a", 2));
+    }
+
+    @Test
+    @DisplayName("Test amounts with more fraction digits than the scale are never rounded")
+    void testScale() {
+        assertThrows(ArithmeticException.class, () -> Money.parse("0.001", 2));
+        assertThrows(ArithmeticException.class, () -> Money.of(new BigDecimal("0.001"), 2));
+        assertThrows(IllegalArgumentException.class, () -> Money.parse("1", 2).add(Money.parse("1", 3)));
+        assertThrows(IllegalArgumentException.class, () -> Money.parse("1", 2).compareTo(Money.parse("1", 3)));
+        assertThrows(IllegalArgumentException.class, () -> Money.ofMinorUnits(1, 19));
+        assertTrue(Money.of(new BigDecimal("10.5")).equals(Money.parse("10.50", Money.DEFAULT_SCALE)));
+        assertTrue(Money.parse("10.5", 3).toBigDecimal().compareTo(new BigDecimal("10.5")) == 0);
+    }
+
+    @Test
+    @DisplayName("Test parse and arithmetic throw on overflow")
+    void testOverflow() {
+        assertTrue(Money.parse("9223372036854775807", 0).getMinorUnits() == Long.MAX_VALUE);
+        assertTrue(Money.parse("-9223372036854775808", 0).getMinorUnits() == Long.MIN_VALUE);
+        assertTrue(Money.parse("-92233720368547758.08", 2).toString().equals("-92233720368547758.08"));
+        assertThrows(ArithmeticException.class, () -> Money.parse("9223372036854775808", 0));
+        assertThrows(ArithmeticException.class, () -> Money.parse("92233720368547758.08", 2));
+        assertThrows(ArithmeticException.class, () -> Money.parse("92233720368547759", 2));
+        assertThrows(ArithmeticException.class, () -> Money.ofMinorUnits(Long.MAX_VALUE, 2).add(Money.ofMinorUnits(1, 2)));
+        assertThrows(ArithmeticException.class, () -> Money.ofMinorUnits(Long.MIN_VALUE, 2).subtract(Money.ofMinorUnits(1, 2)));
+        assertThrows(ArithmeticException.class, () -> Money.of(new BigDecimal("1E20"), 2));
+    }
+}
@@ -1,29 +1,49 @@
 package org.event.api.controller;
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import org.common.api.dto.TransferEventDto;
 import org.common.api.exception.TransferException;
 import org.common.api.request.RecordTransferEventRequest;
+import org.common.api.request.RecordTransferEventsRequest;
 import org.common.api.response.GetTransferEventsResponse;
 import org.common.api.response.RecordTransferEventResponse;
+import org.common.api.response.RecordTransferEventsResponse;
 import org.common.api.util.ErrorCode;
+import org.common.api.util.WireFormat;
+import org.event.api.entity.AccountEvent;
 import org.event.api.entity.TransferEvent;
 import org.event.api.mapper.TransferEventMapper;
+import org.event.api.repository.TransferEventFilter;
 import org.event.api.service.EventService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.ObjectFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * EventServiceController defines methods to add Events record and display events
- * 1. Get Transfer Events
- * 2. Record Transfer Events
+ * 1. Get Transfer Events, in full or by filtered page
+ * 2. Get Transfer Events of an account by page
+ * 3. Export Transfer Events as NDJSON or CSV
+ * 4. Record Transfer Events
+ * 5. Record a batch of Transfer Events
  *
  */
 @RestController
@@ -31,12 +51,7 @@ import java.util.stream.Collectors;
 public class EventServiceController {
     private final static Logger logger = LoggerFactory.getLogger(EventServiceController.class);
 
-    @Autowired
-    private ObjectFactory<GetTransferEventsResponse> getTransferEventsResponseObjectFactory;
-
-    @Autowired
-    private ObjectFactory<RecordTransferEventResponse> recordTransferEventResponseObjectFactory;
-
+    private final static String CSV_HEADER = "event_id,source_account_number,destination_account_number,transfer_amount,recorded_at";
 
     @Autowired
     private TransferEventMapper transferEventMapper;
@@ -44,6 +59,11 @@ public class EventServiceController {
     @Autowired
     private EventService eventService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${event.page.max-limit:1000}")
+    private int maxPageLimit;
 
     /**
      * Get all TransferEvents
@@ -52,7 +72,7 @@ public class EventServiceController {
     @GetMapping(value = "/transfer-events")
     public GetTransferEventsResponse getTransferEvents() {
         logger.debug("Getting events for all transfers");
-        GetTransferEventsResponse getTransferEventsResponse = getGetTransferEventsResponse();
+        GetTransferEventsResponse getTransferEventsResponse = new GetTransferEventsResponse();
         try {
             List<TransferEvent> transferEvents = eventService.getTransferEvents();
             List<TransferEventDto> transferEventDtoList = transferEvents.stream().map(transferEventMapper.transferEventEntityToDtoMapper).collect(Collectors.toList());
@@ -70,18 +90,153 @@ public class EventServiceController {
 
     }
 
+    /**
+     * Get one page of the transfer events matching the filters, in the order they were recorded. The next page
+     * is requested with afterEventId set to nextAfterEventId of the response, which is null on the last page.
+     * Events show up in pages event.page.settle-ms after they were recorded.
+     * Filters are the query parameters sourceAccountNumber, destinationAccountNumber, minAmount, maxAmount,
+     * recordedFrom and recordedTo (ISO-8601 instants), see {@link TransferEventFilter}.
+     *
+     * @param transferEventFilter
+     * @param afterEventId        event id of the last event of the previous page, omitted for the first page
+     * @param limit               page size, capped at event.page.max-limit
+     * @return
+     */
+    @GetMapping(value = "/transfer-events", params = "limit")
+    public GetTransferEventsResponse getTransferEventsPage(TransferEventFilter transferEventFilter,
+                                                           @RequestParam(required = false) Long afterEventId, @RequestParam int limit) {
+        logger.debug("Getting transfer events after event id: {}, limit: {}, filter: {}", afterEventId, limit, transferEventFilter);
+        GetTransferEventsResponse getTransferEventsResponse = new GetTransferEventsResponse();
+        try {
+            int pageLimit = Math.max(1, Math.min(limit, maxPageLimit));
+            List<TransferEvent> transferEvents = eventService.getTransferEvents(transferEventFilter, afterEventId, pageLimit);
+            List<TransferEventDto> transferEventDtoList = transferEvents.stream().map(transferEventMapper.transferEventEntityToDtoMapper).collect(Collectors.toList());
+
+            getTransferEventsResponse.setTransferEventDtoList(transferEventDtoList);
+            if (transferEventDtoList.size() == pageLimit) {
+                getTransferEventsResponse.setNextAfterEventId(transferEventDtoList.get(pageLimit - 1).getEventId());
+            }
+            return getTransferEventsResponse;
+        } catch (TransferException e) {
+            logger.error("Error getting page of transfer events {},{}", e.getErrorCode(), e);
+            getTransferEventsResponse.setErrorCode(e.getErrorCode());
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            getTransferEventsResponse.setErrorCode(ErrorCode.ERROR_GETTING_TRANSFER_EVENT_INFO);
+        }
+        return getTransferEventsResponse;
+    }
+
+    /**
+     * Get one page of the transfer events debiting (source account) or crediting (destination account)
+     * the account, in the order they were recorded. The next page is requested with afterEventId set to
+     * nextAfterEventId of the response, which is null on the last page. Events show up in pages
+     * event.page.settle-ms after they were recorded.
+     *
+     * @param accountNumber
+     * @param afterEventId  event id of the last event of the previous page, omitted for the first page
+     * @param limit         page size, capped at and defaulting to event.page.max-limit
+     * @return
+     */
+    @GetMapping(value = "/accounts/{accountNumber}/events")
+    public GetTransferEventsResponse getAccountEvents(@PathVariable String accountNumber,
+                                                      @RequestParam(required = false) Long afterEventId,
+                                                      @RequestParam(required = false) Integer limit) {
+        logger.debug("Getting transfer events of account: {} after event id: {}, limit: {}", accountNumber, afterEventId, limit);
+        GetTransferEventsResponse getTransferEventsResponse = new GetTransferEventsResponse();
+        try {
+            int pageLimit = limit != null ? Math.max(1, Math.min(limit, maxPageLimit)) : maxPageLimit;
+            List<AccountEvent> accountEvents = eventService.getAccountEvents(accountNumber, afterEventId, pageLimit);
+            List<TransferEventDto> transferEventDtoList = accountEvents.stream().map(transferEventMapper.accountEventEntityToDtoMapper).collect(Collectors.toList());
+
+            getTransferEventsResponse.setTransferEventDtoList(transferEventDtoList);
+            if (transferEventDtoList.size() == pageLimit) {
+                getTransferEventsResponse.setNextAfterEventId(transferEventDtoList.get(pageLimit - 1).getEventId());
+            }
+            return getTransferEventsResponse;
+        } catch (TransferException e) {
+            logger.error("Error getting transfer events of account {},{}", e.getErrorCode(), e);
+            getTransferEventsResponse.setErrorCode(e.getErrorCode());
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            getTransferEventsResponse.setErrorCode(ErrorCode.ERROR_GETTING_TRANSFER_EVENT_INFO);
+        }
+        return getTransferEventsResponse;
+    }
+
+    /**
+     * Export the transfer events after afterEventId in the order they were recorded, as newline delimited JSON
+     * (format=ndjson, one TransferEventDto per line) or as CSV with a header line (format=csv).
+     * Events are written as they are read from the database cursor, nothing is collected in memory,
+     * and the response is gzipped for clients accepting it. An interrupted export is resumed by
+     * passing the event id of the last complete line received as afterEventId. Events are exported
+     * event.page.settle-ms after they were recorded, so a resumed export misses none committed late
+     * within that window.
+     * An error after the first line can only be reported by closing the response.
+     *
+     * @param format       ndjson or csv
+     * @param afterEventId event id of the last event already received, omitted to export all events
+     * @return
+     */
+    @GetMapping(value = "/transfer-events/export")
+    public ResponseEntity<StreamingResponseBody> exportTransferEvents(@RequestParam(defaultValue = "ndjson") String format,
+                                                                      @RequestParam(required = false) Long afterEventId) {
+        logger.debug("Exporting transfer events as {} after event id: {}", format, afterEventId);
+        MediaType contentType;
+        String headerLine;
+        TransferEventDtoWriter transferEventDtoWriter;
+        if ("ndjson".equals(format)) {
+            ObjectWriter ndjsonWriter = objectMapper.writerFor(TransferEventDto.class);
+            contentType = MediaType.parseMediaType("application/x-ndjson");
+            headerLine = null;
+            transferEventDtoWriter = (writer, transferEventDto) -> {
+                writer.write(ndjsonWriter.writeValueAsString(transferEventDto));
+                writer.write('\n');
+            };
+        } else if ("csv".equals(format)) {
+            contentType = MediaType.parseMediaType("text/csv");
+            headerLine = CSV_HEADER + "\r\n";
+            transferEventDtoWriter = this::writeCsvLine;
+        } else {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        StreamingResponseBody responseBody = outputStream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            if (headerLine != null) {
+                writer.write(headerLine);
+            }
+            try {
+                eventService.streamTransferEvents(afterEventId, transferEvent -> {
+                    try {
+                        transferEventDtoWriter.write(writer, transferEventMapper.transferEventEntityToDtoMapper.apply(transferEvent));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (TransferException e) {
+                logger.error("Error exporting transfer events {},{}", e.getErrorCode(), e);
+                throw new IOException("Error exporting transfer events", e);
+            }
+            writer.flush();
+        };
+        return ResponseEntity.status(HttpStatus.OK)
+                .contentType(contentType)
+                .body(responseBody);
+    }
+
     /**
      * Record transfer event
      * @param recordTransferEventRequest
      * @return
      */
     @PostMapping(value = "/transfer-event",
-            produces = "application/json",
-            consumes = "application/json")
+            produces = {"application/json", WireFormat.APPLICATION_SMILE},
+            consumes = {"application/json", WireFormat.APPLICATION_SMILE})
     public RecordTransferEventResponse recordTransferEvent(@RequestBody RecordTransferEventRequest recordTransferEventRequest) {
 
         logger.debug("Saving transfer event record: {}", recordTransferEventRequest);
-        RecordTransferEventResponse recordTransferEventResponse = getRecordTransferEventResponse();
+        RecordTransferEventResponse recordTransferEventResponse = new RecordTransferEventResponse();
 
         try {
             TransferEvent transferEvent = eventService.recordTransferEvent(transferEventMapper.transferEventDtoToEntityMapper.apply(recordTransferEventRequest.getTransferEventDto()));
@@ -97,11 +252,61 @@ public class EventServiceController {
         return recordTransferEventResponse;
     }
 
-    private GetTransferEventsResponse getGetTransferEventsResponse() {
-        return getTransferEventsResponseObjectFactory.getObject();
+    /**
+     * Record a batch of transfer events in one transaction, either all events are recorded or none.
+     * Also served at /transfer-events/batch.
+     * @param recordTransferEventsRequest
+     * @return
+     */
+    @PostMapping(value = {"/transfer-events", "/transfer-events/batch"},
+            produces = {"application/json", WireFormat.APPLICATION_SMILE},
+            consumes = {"application/json", WireFormat.APPLICATION_SMILE})
+    public RecordTransferEventsResponse recordTransferEvents(@RequestBody RecordTransferEventsRequest recordTransferEventsRequest) {
+
+        logger.debug("Saving {} transfer event records", recordTransferEventsRequest.getTransferEventDtoList().size());
+        RecordTransferEventsResponse recordTransferEventsResponse = new RecordTransferEventsResponse();
+
+        try {
+            List<TransferEvent> transferEvents = eventService.recordTransferEvents(recordTransferEventsRequest.getTransferEventDtoList().stream()
+                    .map(transferEventMapper.transferEventDtoToEntityMapper).collect(Collectors.toList()));
+            recordTransferEventsResponse.setTransferEventDtoList(transferEvents.stream()
+                    .map(transferEventMapper.transferEventEntityToDtoMapper).collect(Collectors.toList()));
+            return recordTransferEventsResponse;
+        } catch (TransferException e) {
+            logger.error("Error recording transfer events {},{}", e.getErrorCode(), e);
+            recordTransferEventsResponse.setErrorCode(e.getErrorCode());
+        }catch (Exception e){
+            logger.error(e.getMessage(), e);
+            recordTransferEventsResponse.setErrorCode(ErrorCode.ERROR_RECORDING_TRANSFER_EVENT_INFO);
+        }
+        return recordTransferEventsResponse;
+    }
+
+    // RFC 4180 line, account numbers are quoted when they hold a comma, quote or line break
+    private void writeCsvLine(Writer writer, TransferEventDto transferEventDto) throws IOException {
+        writer.write(Long.toString(transferEventDto.getEventId()));
+        writer.write(',');
+        writer.write(toCsvField(transferEventDto.getSourceAccountNumber()));
+        writer.write(',');
+        writer.write(toCsvField(transferEventDto.getDestinationAccountNumber()));
+        writer.write(',');
+        writer.write(transferEventDto.getTransferAmount() != null ? transferEventDto.getTransferAmount().toPlainString() : "");
+        writer.write(',');
+        writer.write(transferEventDto.getRecordedAt() != null ? transferEventDto.getRecordedAt().toString() : "");
+        writer.write("\r\n");
+    }
+
+    private String toCsvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
     }
 
-    private RecordTransferEventResponse getRecordTransferEventResponse() {
-        return recordTransferEventResponseObjectFactory.getObject();
+    private interface TransferEventDtoWriter {
+        void write(Writer writer, TransferEventDto transferEventDto) throws IOException;
     }
 }
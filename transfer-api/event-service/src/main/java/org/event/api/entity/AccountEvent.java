@@ -0,0 +1,53 @@
+package org.event.api.entity;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Model for AccountEvent entity, the per account projection of the transfer events.
+ * Every recorded TransferEvent inserts one row for its source account (a debit) and one
+ * for its destination account (a credit), in the same transaction, rows are never updated.
+ * The index on (account_number, recorded_at, event_id) serves the events of an account in
+ * the order they were recorded as a single range scan.
+ * Table name: ACCOUNT_EVENT
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+@Entity
+@Table(name = "account_event", indexes = {
+        @Index(name = "idx_account_event_account_recorded_event", columnList = "account_number, recorded_at, event_id")})
+@IdClass(AccountEventId.class)
+public class AccountEvent {
+
+    @Id
+    @Column(name = "account_number")
+    private String accountNumber;
+
+    @Id
+    @Column(name = "event_id")
+    private long eventId;
+
+    @Column(name = "source_account_number")
+    private String sourceAccountNumber;
+
+    @Column(name = "destination_account_number")
+    private String destinationAccountNumber;
+
+    @Column(name = "transfer_amt")
+    private BigDecimal transferAmount;
+
+    @Column(name = "recorded_at")
+    private Instant recordedAt;
+}
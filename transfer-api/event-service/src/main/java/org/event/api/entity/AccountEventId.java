@@ -0,0 +1,20 @@
+package org.event.api.entity;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Primary key of AccountEvent entity.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class AccountEventId implements Serializable {
+
+    private String accountNumber;
+    private long eventId;
+}
@@ -7,16 +7,23 @@ import lombok.NoArgsConstructor;
 
 import javax.persistence.*;
 import java.math.BigDecimal;
+import java.time.Instant;
 
 /**
  * Model for TransferEvent entity.
+ * Pages of events are read in (recorded_at, event_id) order, the indexes on (source_account_number,
+ * recorded_at, event_id), (destination_account_number, recorded_at, event_id) and (recorded_at, event_id)
+ * serve the filtered pages as range scans.
  * Table name: TRANSFER_EVENT
  */
 @NoArgsConstructor
 @AllArgsConstructor
 @Data
 @Entity
-@Table(name = "transfer_event")
+@Table(name = "transfer_event", indexes = {
+        @Index(name = "idx_transfer_event_source_event", columnList = "source_account_number, recorded_at, event_id"),
+        @Index(name = "idx_transfer_event_destination_event", columnList = "destination_account_number, recorded_at, event_id"),
+        @Index(name = "idx_transfer_event_recorded_event", columnList = "recorded_at, event_id")})
 public class TransferEvent {
 
     // @ID This annotation specifies
@@ -24,8 +31,11 @@ public class TransferEvent {
     @Id
     // @GeneratedValue This annotation
     // is used to specify the primary
-    // key generation strategy to use
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    // key generation strategy to use.
+    // Ids are allocated by the pooled optimizer, one sequence call per
+    // allocationSize events, in line with hibernate.jdbc.batch_size
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transfer_event_seq")
+    @SequenceGenerator(name = "transfer_event_seq", sequenceName = "transfer_event_seq", allocationSize = 50)
     @Column(name = "event_id")
     private long eventId;
 
@@ -38,4 +48,11 @@ public class TransferEvent {
     @Column(name = "transfer_amt")
     private BigDecimal transferAmount;
 
+    @Column(name = "recorded_at")
+    private Instant recordedAt;
+
+    // Assigned by the transfer service outbox, a redelivered event is recorded only once
+    @Column(name = "event_uuid", length = 36, unique = true)
+    private String eventUuid;
+
 }
@@ -1,48 +1,46 @@
 package org.event.api.mapper;
 
 import org.common.api.dto.TransferEventDto;
+import org.event.api.entity.AccountEvent;
 import org.event.api.entity.TransferEvent;
-import org.springframework.beans.factory.ObjectFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.function.Function;
 
 /**
  * TransferEventMapper maps TransferEvent entity to TransferEventDto
- * and TransferEventDto to TransferEvent entity.
+ * and TransferEventDto to TransferEvent entity, and AccountEvent entity to TransferEventDto.
  */
 @Service
 public class TransferEventMapper {
 
-    @Autowired
-    private ObjectFactory<TransferEvent> transferEventObjectFactory;
-
-    @Autowired
-    private ObjectFactory<TransferEventDto> transferEventDtoObjectFactory;
-
-    private TransferEventDto getTransferEventDto() {
-        return transferEventDtoObjectFactory.getObject();
-    }
-
-    private TransferEvent getTransferEventEntity() {
-        return transferEventObjectFactory.getObject();
-    }
-
     public final Function<TransferEvent, TransferEventDto> transferEventEntityToDtoMapper = eventEntity -> {
-        TransferEventDto eventDto = getTransferEventDto();
+        TransferEventDto eventDto = new TransferEventDto();
         eventDto.setEventId(eventEntity.getEventId());
         eventDto.setSourceAccountNumber(eventEntity.getSourceAccountNumber());
         eventDto.setDestinationAccountNumber(eventEntity.getDestinationAccountNumber());
         eventDto.setTransferAmount(eventEntity.getTransferAmount());
+        eventDto.setRecordedAt(eventEntity.getRecordedAt());
+        eventDto.setEventUuid(eventEntity.getEventUuid());
+        return eventDto;
+    };
+
+    public final Function<AccountEvent, TransferEventDto> accountEventEntityToDtoMapper = accountEventEntity -> {
+        TransferEventDto eventDto = new TransferEventDto();
+        eventDto.setEventId(accountEventEntity.getEventId());
+        eventDto.setSourceAccountNumber(accountEventEntity.getSourceAccountNumber());
+        eventDto.setDestinationAccountNumber(accountEventEntity.getDestinationAccountNumber());
+        eventDto.setTransferAmount(accountEventEntity.getTransferAmount());
+        eventDto.setRecordedAt(accountEventEntity.getRecordedAt());
         return eventDto;
     };
 
     public final Function<TransferEventDto, TransferEvent> transferEventDtoToEntityMapper = eventDto -> {
-        TransferEvent eventEntity = getTransferEventEntity();
+        TransferEvent eventEntity = new TransferEvent();
         eventEntity.setSourceAccountNumber(eventDto.getSourceAccountNumber());
         eventEntity.setDestinationAccountNumber(eventDto.getDestinationAccountNumber());
         eventEntity.setTransferAmount(eventDto.getTransferAmount());
+        eventEntity.setEventUuid(eventDto.getEventUuid());
         return eventEntity;
     };
 }
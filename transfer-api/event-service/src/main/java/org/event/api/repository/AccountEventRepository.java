@@ -0,0 +1,83 @@
+package org.event.api.repository;
+
+import org.event.api.entity.AccountEvent;
+import org.event.api.entity.AccountEventId;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Repository of the per account projection of the transfer events.
+ */
+@Repository
+public interface AccountEventRepository extends JpaRepository<AccountEvent, AccountEventId> {
+
+    /**
+     * Page of the events of an account recorded at or before settledBefore and after the
+     * (afterRecordedAt, afterEventId) position, in (recorded_at, event_id) order.
+     *
+     * @param accountNumber
+     * @param afterRecordedAt
+     * @param afterEventId
+     * @param settledBefore
+     * @param pageable
+     * @return
+     */
+    @Query("select a from AccountEvent a where a.accountNumber = :accountNumber and a.recordedAt <= :settledBefore"
+            + " and (a.recordedAt > :afterRecordedAt or (a.recordedAt = :afterRecordedAt and a.eventId > :afterEventId))"
+            + " order by a.recordedAt, a.eventId")
+    List<AccountEvent> findPage(@Param("accountNumber") String accountNumber, @Param("afterRecordedAt") Instant afterRecordedAt,
+                                @Param("afterEventId") long afterEventId, @Param("settledBefore") Instant settledBefore, Pageable pageable);
+
+    /**
+     * Insert the source account rows missing for the transfer events with an event id in (fromEventId, toEventId].
+     *
+     * @param fromEventId
+     * @param toEventId
+     * @return number of rows inserted
+     */
+    @Modifying
+    @Query(value = "INSERT INTO account_event (account_number, event_id, source_account_number, destination_account_number, transfer_amt, recorded_at)"
+            + " SELECT e.source_account_number, e.event_id, e.source_account_number, e.destination_account_number, e.transfer_amt, e.recorded_at"
+            + " FROM transfer_event e WHERE e.event_id > :fromEventId AND e.event_id <= :toEventId AND e.source_account_number IS NOT NULL"
+            + " AND NOT EXISTS (SELECT 1 FROM account_event a WHERE a.account_number = e.source_account_number AND a.event_id = e.event_id)",
+            nativeQuery = true)
+    int backfillSourceEvents(@Param("fromEventId") long fromEventId, @Param("toEventId") long toEventId);
+
+    /**
+     * Insert the destination account rows missing for the transfer events with an event id in (fromEventId, toEventId],
+     * a transfer to its own source account has only the source account row.
+     *
+     * @param fromEventId
+     * @param toEventId
+     * @return number of rows inserted
+     */
+    @Modifying
+    @Query(value = "INSERT INTO account_event (account_number, event_id, source_account_number, destination_account_number, transfer_amt, recorded_at)"
+            + " SELECT e.destination_account_number, e.event_id, e.source_account_number, e.destination_account_number, e.transfer_amt, e.recorded_at"
+            + " FROM transfer_event e WHERE e.event_id > :fromEventId AND e.event_id <= :toEventId AND e.destination_account_number IS NOT NULL"
+            + " AND (e.source_account_number IS NULL OR e.destination_account_number <> e.source_account_number)"
+            + " AND NOT EXISTS (SELECT 1 FROM account_event a WHERE a.account_number = e.destination_account_number AND a.event_id = e.event_id)",
+            nativeQuery = true)
+    int backfillDestinationEvents(@Param("fromEventId") long fromEventId, @Param("toEventId") long toEventId);
+
+    /**
+     * Set recorded_at of the account rows with an event id in (fromEventId, toEventId] backfilled without one.
+     *
+     * @param fromEventId
+     * @param toEventId
+     * @param recordedAt
+     * @return number of rows updated
+     */
+    @Modifying
+    @Query(value = "UPDATE account_event SET recorded_at = :recordedAt"
+            + " WHERE event_id > :fromEventId AND event_id <= :toEventId AND recorded_at IS NULL",
+            nativeQuery = true)
+    int backfillRecordedAt(@Param("fromEventId") long fromEventId, @Param("toEventId") long toEventId, @Param("recordedAt") Instant recordedAt);
+}
@@ -0,0 +1,25 @@
+package org.event.api.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Filters of a page of transfer events, null when not filtered on.
+ * Amounts are inclusive bounds, recordedFrom is inclusive and recordedTo exclusive.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransferEventFilter {
+
+    private String sourceAccountNumber;
+    private String destinationAccountNumber;
+    private BigDecimal minAmount;
+    private BigDecimal maxAmount;
+    private Instant recordedFrom;
+    private Instant recordedTo;
+}
@@ -2,8 +2,21 @@ package org.event.api.repository;
 
 import org.event.api.entity.TransferEvent;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
 /**
  * TransferEventRepository which is an interface that extends the Spring Framework class
  * JpaRepository. JpaRepository class is a generics and takes the following two
@@ -12,5 +25,68 @@ import org.springframework.stereotype.Repository;
  * Id will be what type of object- String(since id defined in the TransferEvent class is String)
  */
 @Repository
-public interface TransferEventRepository extends JpaRepository<TransferEvent,String> {
+public interface TransferEventRepository extends JpaRepository<TransferEvent,String>, TransferEventRepositoryCustom {
+
+    /**
+     * Stream the transfer events recorded at or before settledBefore and after the (afterRecordedAt, afterEventId)
+     * position in (recorded_at, event_id) order, from a database cursor. Must be consumed within a transaction
+     * and closed.
+     *
+     * @param afterRecordedAt
+     * @param afterEventId
+     * @param settledBefore
+     * @return
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("select e from TransferEvent e where e.recordedAt <= :settledBefore"
+            + " and (e.recordedAt > :afterRecordedAt or (e.recordedAt = :afterRecordedAt and e.eventId > :afterEventId))"
+            + " order by e.recordedAt, e.eventId")
+    Stream<TransferEvent> streamAfter(@Param("afterRecordedAt") Instant afterRecordedAt, @Param("afterEventId") long afterEventId,
+                                      @Param("settledBefore") Instant settledBefore);
+
+    /**
+     * recorded_at of an event, the position of a page or export resuming after it.
+     *
+     * @param eventId
+     * @return
+     */
+    @Query("select e.recordedAt from TransferEvent e where e.eventId = :eventId")
+    Optional<Instant> findRecordedAt(@Param("eventId") long eventId);
+
+    /**
+     * @return lowest event id recorded, null if there is no event
+     */
+    @Query("select min(e.eventId) from TransferEvent e")
+    Long findMinEventId();
+
+    /**
+     * @return highest event id recorded, null if there is no event
+     */
+    @Query("select max(e.eventId) from TransferEvent e")
+    Long findMaxEventId();
+
+    /**
+     * The given event uuids already recorded.
+     *
+     * @param eventUuids
+     * @return
+     */
+    @Query("select e.eventUuid from TransferEvent e where e.eventUuid in :eventUuids")
+    List<String> findRecordedEventUuids(@Param("eventUuids") Collection<String> eventUuids);
+
+    Optional<TransferEvent> findByEventUuid(String eventUuid);
+
+    /**
+     * Set recorded_at of the transfer events with an event id in (fromEventId, toEventId] recorded without one.
+     *
+     * @param fromEventId
+     * @param toEventId
+     * @param recordedAt
+     * @return number of rows updated
+     */
+    @Modifying
+    @Query(value = "UPDATE transfer_event SET recorded_at = :recordedAt"
+            + " WHERE event_id > :fromEventId AND event_id <= :toEventId AND recorded_at IS NULL",
+            nativeQuery = true)
+    int backfillRecordedAt(@Param("fromEventId") long fromEventId, @Param("toEventId") long toEventId, @Param("recordedAt") Instant recordedAt);
 }
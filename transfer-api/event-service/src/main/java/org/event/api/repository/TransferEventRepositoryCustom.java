@@ -0,0 +1,23 @@
+package org.event.api.repository;
+
+import org.event.api.entity.TransferEvent;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface TransferEventRepositoryCustom {
+
+    /**
+     * Read one page of the settled events matching the filter in (recorded_at, event_id) order, only the
+     * given filters are part of the query so it can be served by the matching index.
+     *
+     * @param transferEventFilter
+     * @param afterRecordedAt     recorded_at of the last event of the previous page, null for the first page
+     * @param afterEventId        id of the last event of the previous page
+     * @param settledBefore       only events recorded at or before this instant are read
+     * @param limit               maximum number of events of the page
+     * @return
+     */
+    List<TransferEvent> findPage(TransferEventFilter transferEventFilter, Instant afterRecordedAt, long afterEventId,
+                                 Instant settledBefore, int limit);
+}
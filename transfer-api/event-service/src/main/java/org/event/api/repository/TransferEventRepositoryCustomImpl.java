@@ -0,0 +1,62 @@
+package org.event.api.repository;
+
+import org.event.api.entity.TransferEvent;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TransferEventRepositoryCustomImpl implements TransferEventRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<TransferEvent> findPage(TransferEventFilter transferEventFilter, Instant afterRecordedAt, long afterEventId,
+                                        Instant settledBefore, int limit) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<TransferEvent> query = criteriaBuilder.createQuery(TransferEvent.class);
+        Root<TransferEvent> transferEvent = query.from(TransferEvent.class);
+
+        List<Predicate> predicates = new ArrayList<>();
+        predicates.add(criteriaBuilder.lessThanOrEqualTo(transferEvent.<Instant>get("recordedAt"), settledBefore));
+        if (afterRecordedAt != null) {
+            predicates.add(criteriaBuilder.or(
+                    criteriaBuilder.greaterThan(transferEvent.<Instant>get("recordedAt"), afterRecordedAt),
+                    criteriaBuilder.and(
+                            criteriaBuilder.equal(transferEvent.get("recordedAt"), afterRecordedAt),
+                            criteriaBuilder.greaterThan(transferEvent.get("eventId"), afterEventId))));
+        }
+        if (transferEventFilter.getSourceAccountNumber() != null) {
+            predicates.add(criteriaBuilder.equal(transferEvent.get("sourceAccountNumber"), transferEventFilter.getSourceAccountNumber()));
+        }
+        if (transferEventFilter.getDestinationAccountNumber() != null) {
+            predicates.add(criteriaBuilder.equal(transferEvent.get("destinationAccountNumber"), transferEventFilter.getDestinationAccountNumber()));
+        }
+        if (transferEventFilter.getMinAmount() != null) {
+            predicates.add(criteriaBuilder.greaterThanOrEqualTo(transferEvent.<BigDecimal>get("transferAmount"), transferEventFilter.getMinAmount()));
+        }
+        if (transferEventFilter.getMaxAmount() != null) {
+            predicates.add(criteriaBuilder.lessThanOrEqualTo(transferEvent.<BigDecimal>get("transferAmount"), transferEventFilter.getMaxAmount()));
+        }
+        if (transferEventFilter.getRecordedFrom() != null) {
+            predicates.add(criteriaBuilder.greaterThanOrEqualTo(transferEvent.<Instant>get("recordedAt"), transferEventFilter.getRecordedFrom()));
+        }
+        if (transferEventFilter.getRecordedTo() != null) {
+            predicates.add(criteriaBuilder.lessThan(transferEvent.<Instant>get("recordedAt"), transferEventFilter.getRecordedTo()));
+        }
+        query.where(predicates.toArray(new Predicate[0]))
+                .orderBy(criteriaBuilder.asc(transferEvent.get("recordedAt")), criteriaBuilder.asc(transferEvent.get("eventId")));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+}
@@ -0,0 +1,85 @@
+package org.event.api.service;
+
+
+import org.event.api.repository.AccountEventRepository;
+import org.event.api.repository.TransferEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+
+/**
+ * Backfills the per account projection ACCOUNT_EVENT from the TRANSFER_EVENT rows recorded before it
+ * existed, on startup with event.account-events.backfill true. It is off by default, to be turned on
+ * for the one startup migrating a database recorded without the projection.
+ * <p>
+ * Transfer events are scanned in event id ranges of backfill-chunk-size, each range inserting its
+ * missing rows in a transaction of its own, so the backfill can be interrupted and run again.
+ * Events recorded without a recorded_at, which keyset pages never reach, are stamped with the time
+ * of the backfill first, so consumers page them after the events they already read.
+ * It runs before the web server accepts requests, so no event is recorded while it runs.
+ */
+@Service
+public class AccountEventBackfill implements SmartInitializingSingleton {
+
+    private final static Logger logger = LoggerFactory.getLogger(AccountEventBackfill.class);
+
+    @Autowired
+    private TransferEventRepository transferEventRepository;
+
+    @Autowired
+    private AccountEventRepository accountEventRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${event.account-events.backfill:false}")
+    private boolean backfillEnabled;
+
+    @Value("${event.account-events.backfill-chunk-size:10000}")
+    private int backfillChunkSize;
+
+    /**
+     * Runs once all singletons, including the database initializers, are created.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (backfillEnabled) {
+            backfill();
+        }
+    }
+
+    /**
+     * Insert the ACCOUNT_EVENT rows missing for the recorded transfer events.
+     *
+     * @return number of rows inserted
+     */
+    public long backfill() {
+        Long minEventId = transferEventRepository.findMinEventId();
+        Long maxEventId = transferEventRepository.findMaxEventId();
+        if (minEventId == null) {
+            return 0;
+        }
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        Instant recordedAt = Instant.now();
+        long insertedCount = 0;
+        for (long fromEventId = minEventId - 1; fromEventId < maxEventId; fromEventId += backfillChunkSize) {
+            long toEventId = Math.min(maxEventId, fromEventId + backfillChunkSize);
+            long fromId = fromEventId;
+            insertedCount += transactionTemplate.execute(status -> {
+                transferEventRepository.backfillRecordedAt(fromId, toEventId, recordedAt);
+                accountEventRepository.backfillRecordedAt(fromId, toEventId, recordedAt);
+                return accountEventRepository.backfillSourceEvents(fromId, toEventId) + accountEventRepository.backfillDestinationEvents(fromId, toEventId);
+            });
+        }
+        logger.info("Backfilled {} account events of transfer events {} to {}", insertedCount, minEventId, maxEventId);
+        return insertedCount;
+    }
+}
@@ -2,15 +2,26 @@ package org.event.api.service;
 
 
 import org.common.api.exception.TransferException;
+import org.event.api.entity.AccountEvent;
 import org.event.api.entity.TransferEvent;
+import org.event.api.repository.TransferEventFilter;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 
 public interface EventService {
 
     List<TransferEvent> getTransferEvents() throws TransferException;
 
+    List<TransferEvent> getTransferEvents(TransferEventFilter transferEventFilter, Long afterEventId, int limit) throws TransferException;
+
+    List<AccountEvent> getAccountEvents(String accountNumber, Long afterEventId, int limit) throws TransferException;
+
+    void streamTransferEvents(Long afterEventId, Consumer<TransferEvent> transferEventConsumer) throws TransferException;
+
     TransferEvent recordTransferEvent(TransferEvent event) throws TransferException;
 
+    List<TransferEvent> recordTransferEvents(List<TransferEvent> events) throws TransferException;
+
 }
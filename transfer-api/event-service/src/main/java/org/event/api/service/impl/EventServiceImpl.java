@@ -3,28 +3,56 @@ package org.event.api.service.impl;
 
 import org.common.api.exception.TransferException;
 import org.common.api.util.ErrorCode;
+import org.event.api.entity.AccountEvent;
 import org.event.api.entity.TransferEvent;
+import org.event.api.repository.AccountEventRepository;
+import org.event.api.repository.TransferEventFilter;
 import org.event.api.repository.TransferEventRepository;
 import org.event.api.service.EventService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.Instant;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Event service class to perform all Event repository operations supported
- * 1. Get Transfer events
- * 2. Record Transfer event
+ * 1. Get Transfer events, in full, by page or as a stream
+ * 2. Get Transfer events of an account by page
+ * 3. Record Transfer event, with its per account projection
  */
 @Service
 public class EventServiceImpl implements EventService {
 
+    // Bounds the statements recording an event, event.page.settle-ms is chosen well above it
+    private static final int RECORD_TIMEOUT_SECONDS = 2;
+
     @Autowired
     private TransferEventRepository transferEventRepository;
 
+    @Autowired
+    private AccountEventRepository accountEventRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${event.page.settle-ms:5000}")
+    private long settleMs;
+
     @Override
     @Transactional(readOnly = true,isolation = Isolation.READ_COMMITTED)
     public List<TransferEvent> getTransferEvents() throws TransferException {
@@ -35,6 +63,86 @@ public class EventServiceImpl implements EventService {
         }
     }
 
+    /**
+     * Service to read one page of the transfer events matching the filter, in (recorded_at, event_id) order.
+     * <p>
+     * Event ids come from a pooled sequence, so a lower id can commit after a higher one and paging on
+     * the id alone would skip it. Pages are read in recorded_at order instead, and only hold events
+     * recorded event.page.settle-ms ago or earlier. afterEventId stands for the (recorded_at, event_id)
+     * position of its event.
+     * <p>
+     * The settle window is best effort: recorded_at is taken from the clock of the recording instance
+     * before the insert, the transaction timeout bounds the statements recording an event but not its
+     * commit, and the clocks of the instances may be skewed. An event whose commit is seen later than
+     * the window shows up behind a page already read. A consumer that must not miss an event reconciles
+     * by reading again with recordedFrom a settle window before its position and skipping the event ids
+     * it already has.
+     *
+     * @param transferEventFilter
+     * @param afterEventId        event id of the last event of the previous page, null for the first page
+     * @param limit               maximum number of events of the page
+     * @return
+     * @throws TransferException
+     */
+    @Override
+    @Transactional(readOnly = true,isolation = Isolation.READ_COMMITTED)
+    public List<TransferEvent> getTransferEvents(TransferEventFilter transferEventFilter, Long afterEventId, int limit) throws TransferException {
+        try {
+            return transferEventRepository.findPage(transferEventFilter, getRecordedAt(afterEventId), afterEventId != null ? afterEventId : 0,
+                    getSettledBefore(), limit);
+        } catch (Exception e) {
+            throw new TransferException(ErrorCode.ERROR_GETTING_TRANSFER_EVENT_INFO, e);
+        }
+    }
+
+    /**
+     * Service to read one page of the settled transfer events debiting or crediting the account, in
+     * (recorded_at, event_id) order, from the per account projection, see
+     * {@link #getTransferEvents(TransferEventFilter, Long, int)}.
+     *
+     * @param accountNumber
+     * @param afterEventId  event id of the last event of the previous page, null for the first page
+     * @param limit         maximum number of events of the page
+     * @return
+     * @throws TransferException
+     */
+    @Override
+    @Transactional(readOnly = true,isolation = Isolation.READ_COMMITTED)
+    public List<AccountEvent> getAccountEvents(String accountNumber, Long afterEventId, int limit) throws TransferException {
+        try {
+            // The first page starts before any event could have been recorded
+            return accountEventRepository.findPage(accountNumber, afterEventId != null ? getRecordedAt(afterEventId) : Instant.EPOCH,
+                    afterEventId != null ? afterEventId : Long.MIN_VALUE, getSettledBefore(), PageRequest.of(0, limit));
+        } catch (Exception e) {
+            throw new TransferException(ErrorCode.ERROR_GETTING_TRANSFER_EVENT_INFO, e);
+        }
+    }
+
+    /**
+     * Service to pass every settled transfer event after afterEventId to the consumer in (recorded_at, event_id)
+     * order, as read from a database cursor, see {@link #getTransferEvents(TransferEventFilter, Long, int)}.
+     * Each event is detached once consumed, so memory use does not grow with the number of events.
+     *
+     * @param afterEventId          event id of the last event already received, null to start from the first event
+     * @param transferEventConsumer
+     * @throws TransferException
+     */
+    @Override
+    @Transactional(readOnly = true,isolation = Isolation.READ_COMMITTED)
+    public void streamTransferEvents(Long afterEventId, Consumer<TransferEvent> transferEventConsumer) throws TransferException {
+        // The first export starts before any event could have been recorded
+        Instant afterRecordedAt = afterEventId != null ? getRecordedAt(afterEventId) : Instant.EPOCH;
+        try (Stream<TransferEvent> transferEvents = transferEventRepository.streamAfter(afterRecordedAt,
+                afterEventId != null ? afterEventId : Long.MIN_VALUE, getSettledBefore())) {
+            transferEvents.forEach(transferEvent -> {
+                entityManager.detach(transferEvent);
+                transferEventConsumer.accept(transferEvent);
+            });
+        } catch (Exception e) {
+            throw new TransferException(ErrorCode.ERROR_GETTING_TRANSFER_EVENT_INFO, e);
+        }
+    }
+
     /**
      * Propagation	Behaviour:
      * REQUIRED:	Always executes in a transaction. If there is any existing transaction it uses it. If none exists then only a new one is created
@@ -51,12 +159,98 @@ public class EventServiceImpl implements EventService {
      * @throws TransferException
      */
     @Override
-    @Transactional(readOnly = false,rollbackFor = TransferException.class)
+    @Transactional(readOnly = false,rollbackFor = TransferException.class,timeout = RECORD_TIMEOUT_SECONDS)
     public TransferEvent recordTransferEvent(TransferEvent event) throws TransferException {
         try {
-            return transferEventRepository.saveAndFlush(event);
+            // A redelivered event returns the event recorded first
+            if (event.getEventUuid() != null) {
+                Optional<TransferEvent> recordedEvent = transferEventRepository.findByEventUuid(event.getEventUuid());
+                if (recordedEvent.isPresent()) {
+                    return recordedEvent.get();
+                }
+            }
+            event.setRecordedAt(Instant.now());
+            TransferEvent transferEvent = transferEventRepository.save(event);
+            recordAccountEvents(transferEvent);
+            transferEventRepository.flush();
+            return transferEvent;
+        } catch (Exception e) {
+            throw new TransferException(ErrorCode.ERROR_RECORDING_TRANSFER_EVENT_INFO, e);
+        }
+    }
+
+    /**
+     * Record all events and their per account projections in one transaction, inserted as JDBC batches of
+     * spring.jpa.properties.hibernate.jdbc.batch_size.
+     * <p>
+     * Events whose event uuid is already recorded, or repeated within the batch, are redeliveries of the
+     * outbox and are skipped; only the events recorded now are returned. The unique constraint on event_uuid
+     * fails a batch racing with another delivery of the same events, its retry then skips them.
+     *
+     * @param events
+     * @return
+     * @throws TransferException
+     */
+    @Override
+    @Transactional(readOnly = false,rollbackFor = TransferException.class,timeout = RECORD_TIMEOUT_SECONDS)
+    public List<TransferEvent> recordTransferEvents(List<TransferEvent> events) throws TransferException {
+        try {
+            Set<String> eventUuids = events.stream()
+                    .map(TransferEvent::getEventUuid)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet());
+            if (!eventUuids.isEmpty()) {
+                Set<String> skippedEventUuids = new HashSet<>(transferEventRepository.findRecordedEventUuids(eventUuids));
+                events = events.stream()
+                        .filter(event -> event.getEventUuid() == null || skippedEventUuids.add(event.getEventUuid()))
+                        .collect(Collectors.toList());
+            }
+
+            Instant recordedAt = Instant.now();
+            events.forEach(event -> event.setRecordedAt(recordedAt));
+            List<TransferEvent> transferEvents = transferEventRepository.saveAll(events);
+            transferEvents.forEach(this::recordAccountEvents);
+            transferEventRepository.flush();
+            return transferEvents;
         } catch (Exception e) {
             throw new TransferException(ErrorCode.ERROR_RECORDING_TRANSFER_EVENT_INFO, e);
         }
     }
+
+    // Persisted rather than saved, the assigned key would make save() merge and select each row first
+    private void recordAccountEvents(TransferEvent transferEvent) {
+        if (transferEvent.getSourceAccountNumber() != null) {
+            entityManager.persist(toAccountEvent(transferEvent.getSourceAccountNumber(), transferEvent));
+        }
+        if (transferEvent.getDestinationAccountNumber() != null
+                && !transferEvent.getDestinationAccountNumber().equals(transferEvent.getSourceAccountNumber())) {
+            entityManager.persist(toAccountEvent(transferEvent.getDestinationAccountNumber(), transferEvent));
+        }
+    }
+
+    private AccountEvent toAccountEvent(String accountNumber, TransferEvent transferEvent) {
+        return new AccountEvent(accountNumber, transferEvent.getEventId(), transferEvent.getSourceAccountNumber(),
+                transferEvent.getDestinationAccountNumber(), transferEvent.getTransferAmount(), transferEvent.getRecordedAt());
+    }
+
+    /**
+     * Events recorded at or before this instant are settled: the transactions recording them and every
+     * event recorded before them are expected to have ended, see
+     * {@link #getTransferEvents(TransferEventFilter, Long, int)} for the reconciliation of late ones.
+     */
+    private Instant getSettledBefore() {
+        return Instant.now().minusMillis(settleMs);
+    }
+
+    /**
+     * @return recorded_at of the event to resume after, null to start from the first event
+     * @throws TransferException if no event has the id
+     */
+    private Instant getRecordedAt(Long afterEventId) throws TransferException {
+        if (afterEventId == null) {
+            return null;
+        }
+        return transferEventRepository.findRecordedAt(afterEventId)
+                .orElseThrow(() -> new TransferException(ErrorCode.ERROR_GETTING_TRANSFER_EVENT_INFO));
+    }
 }
@@ -1,22 +1,49 @@
 package org.event.api.controller;
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import org.common.api.dto.TransferEventDto;
 import org.common.api.request.RecordTransferEventRequest;
+import org.common.api.request.RecordTransferEventsRequest;
 import org.common.api.response.GetTransferEventsResponse;
 import org.common.api.response.RecordTransferEventResponse;
+import org.common.api.response.RecordTransferEventsResponse;
+import org.common.api.util.WireFormat;
+import org.event.api.repository.TransferEventFilter;
+import org.event.api.service.AccountEventBackfill;
+import org.event.api.service.EventService;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.WebApplicationContext;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 
 /**
  * Integration test cases to test functionalities of
@@ -31,6 +58,18 @@ public class EventServiceControllerIntegrationTest {
     @Autowired
     private EventServiceController eventServiceController;
 
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private AccountEventBackfill accountEventBackfill;
+
     @Test
     @DisplayName("Test getTransferEvents")
     void testGetTransferEvents() {
@@ -73,4 +112,303 @@ public class EventServiceControllerIntegrationTest {
         assertTrue(recordTransferEventResponse.getTransferEventDto().getTransferAmount().compareTo(BigDecimal.valueOf(100)) == 0);
 
     }
+
+    @Test
+    @Transactional
+    @DisplayName("Test recordTransferEvents")
+    void testRecordTransferEvents() {
+        int eventCount = eventServiceController.getTransferEvents().getTransferEventDtoList().size();
+
+        List<TransferEventDto> transferEventDtoList = new ArrayList<>();
+        for (int i = 1; i <= 120; i++) {
+            transferEventDtoList.add(new TransferEventDto(0, "sa1001", "sa1002", BigDecimal.valueOf(i)));
+        }
+
+        RecordTransferEventsResponse recordTransferEventsResponse = eventServiceController.recordTransferEvents(new RecordTransferEventsRequest(transferEventDtoList));
+
+        assertTrue(recordTransferEventsResponse.getErrorCode() == null);
+        assertTrue(recordTransferEventsResponse.getTransferEventDtoList().size() == 120);
+        assertTrue(recordTransferEventsResponse.getTransferEventDtoList().stream().allMatch(transferEventDto -> transferEventDto.getEventId() != 0));
+        assertTrue(recordTransferEventsResponse.getTransferEventDtoList().get(119).getTransferAmount().compareTo(BigDecimal.valueOf(120)) == 0);
+        assertTrue(eventServiceController.getTransferEvents().getTransferEventDtoList().size() == eventCount + 120);
+    }
+
+    @Test
+    @Transactional
+    @DisplayName("Test recordTransferEvents skips redelivered events by event uuid")
+    void testRecordTransferEventsRedelivered() {
+        int eventCount = eventServiceController.getTransferEvents().getTransferEventDtoList().size();
+
+        List<TransferEventDto> transferEventDtoList = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            TransferEventDto transferEventDto = new TransferEventDto(0, "sa1001", "sa1002", BigDecimal.valueOf(i));
+            transferEventDto.setEventUuid(UUID.randomUUID().toString());
+            transferEventDtoList.add(transferEventDto);
+        }
+        // The last event is repeated within the batch
+        transferEventDtoList.add(transferEventDtoList.get(2));
+
+        RecordTransferEventsResponse recordTransferEventsResponse = eventServiceController.recordTransferEvents(new RecordTransferEventsRequest(transferEventDtoList));
+        assertTrue(recordTransferEventsResponse.getErrorCode() == null);
+        assertTrue(recordTransferEventsResponse.getTransferEventDtoList().size() == 3);
+
+        // The whole batch is redelivered
+        recordTransferEventsResponse = eventServiceController.recordTransferEvents(new RecordTransferEventsRequest(transferEventDtoList));
+        assertTrue(recordTransferEventsResponse.getErrorCode() == null);
+        assertTrue(recordTransferEventsResponse.getTransferEventDtoList().isEmpty());
+
+        RecordTransferEventResponse recordTransferEventResponse = eventServiceController.recordTransferEvent(new RecordTransferEventRequest(transferEventDtoList.get(0)));
+        assertTrue(recordTransferEventResponse.getTransferEventDto().getEventUuid().equals(transferEventDtoList.get(0).getEventUuid()));
+        assertTrue(eventServiceController.getTransferEvents().getTransferEventDtoList().size() == eventCount + 3);
+    }
+
+    @Test
+    @Transactional
+    @DisplayName("Test recordTransferEvents in Smile for clients asking for it and in JSON otherwise")
+    void testRecordTransferEventsWireFormat() throws Exception {
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory()).findAndRegisterModules();
+        RecordTransferEventsRequest recordTransferEventsRequest = new RecordTransferEventsRequest(
+                Collections.singletonList(new TransferEventDto(0, "sa1001", "sa1002", BigDecimal.valueOf(100))));
+
+        MvcResult smileResult = mockMvc.perform(post("/event-api/transfer-events")
+                        .contentType(WireFormat.APPLICATION_SMILE)
+                        .accept(WireFormat.APPLICATION_SMILE, MediaType.APPLICATION_JSON_VALUE)
+                        .content(smileMapper.writeValueAsBytes(recordTransferEventsRequest)))
+                .andReturn();
+
+        assertTrue(smileResult.getResponse().getContentType().startsWith(WireFormat.APPLICATION_SMILE));
+        RecordTransferEventsResponse recordTransferEventsResponse = smileMapper.readValue(
+                smileResult.getResponse().getContentAsByteArray(), RecordTransferEventsResponse.class);
+        assertTrue(recordTransferEventsResponse.getTransferEventDtoList().get(0).getEventId() != 0);
+        assertTrue(recordTransferEventsResponse.getTransferEventDtoList().get(0).getTransferAmount().compareTo(BigDecimal.valueOf(100)) == 0);
+
+        MvcResult jsonResult = mockMvc.perform(post("/event-api/transfer-events")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsBytes(recordTransferEventsRequest)))
+                .andReturn();
+
+        assertTrue(jsonResult.getResponse().getContentType().startsWith(MediaType.APPLICATION_JSON_VALUE));
+        assertTrue(objectMapper.readValue(jsonResult.getResponse().getContentAsByteArray(), RecordTransferEventsResponse.class)
+                .getTransferEventDtoList().size() == 1);
+    }
+
+    @Test
+    @Transactional
+    @DisplayName("Test recordTransferEvents at /transfer-events/batch with ids allocated by a pooled sequence")
+    void testRecordTransferEventsBatch() throws Exception {
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        List<TransferEventDto> transferEventDtoList = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            transferEventDtoList.add(new TransferEventDto(0, "sa1001", "sa1002", BigDecimal.valueOf(i)));
+        }
+
+        MvcResult result = mockMvc.perform(post("/event-api/transfer-events/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsBytes(new RecordTransferEventsRequest(transferEventDtoList))))
+                .andReturn();
+
+        List<TransferEventDto> recordedTransferEventDtoList = objectMapper.readValue(result.getResponse().getContentAsByteArray(),
+                RecordTransferEventsResponse.class).getTransferEventDtoList();
+        assertTrue(recordedTransferEventDtoList.size() == 100);
+        assertTrue(recordedTransferEventDtoList.stream().mapToLong(TransferEventDto::getEventId).distinct().count() == 100);
+        assertTrue(jdbcTemplate.queryForObject("SELECT INCREMENT FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = 'TRANSFER_EVENT_SEQ'",
+                Long.class) == 50);
+    }
+
+    @Test
+    @Transactional
+    @DisplayName("Test getTransferEventsPage pages the filtered transfer events in the order they were recorded")
+    void testGetTransferEventsPage() throws Exception {
+        List<TransferEventDto> transferEventDtoList = new ArrayList<>();
+        for (int i = 1; i <= 30; i++) {
+            transferEventDtoList.add(new TransferEventDto(0, i % 2 == 0 ? "sa2001" : "sa2002", "sa2003", BigDecimal.valueOf(i)));
+        }
+        eventServiceController.recordTransferEvents(new RecordTransferEventsRequest(transferEventDtoList));
+
+        List<TransferEventDto> pagedTransferEventDtoList = new ArrayList<>();
+        Long afterEventId = null;
+        do {
+            GetTransferEventsResponse getTransferEventsResponse = eventServiceController.getTransferEventsPage(
+                    new TransferEventFilter("sa2001", null, null, null, null, null), afterEventId, 4);
+            assertTrue(getTransferEventsResponse.getTransferEventDtoList().size() <= 4);
+            pagedTransferEventDtoList.addAll(getTransferEventsResponse.getTransferEventDtoList());
+            afterEventId = getTransferEventsResponse.getNextAfterEventId();
+        } while (afterEventId != null);
+
+        assertTrue(pagedTransferEventDtoList.size() == 15);
+        assertTrue(pagedTransferEventDtoList.stream().allMatch(transferEventDto -> "sa2001".equals(transferEventDto.getSourceAccountNumber())));
+        for (int i = 1; i < pagedTransferEventDtoList.size(); i++) {
+            assertTrue(pagedTransferEventDtoList.get(i - 1).getEventId() < pagedTransferEventDtoList.get(i).getEventId());
+        }
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        MvcResult result = mockMvc.perform(get("/event-api/transfer-events")
+                        .param("destinationAccountNumber", "sa2003")
+                        .param("minAmount", "10")
+                        .param("maxAmount", "19")
+                        .param("recordedFrom", Instant.now().minusSeconds(60).toString())
+                        .param("limit", "100"))
+                .andReturn();
+        GetTransferEventsResponse getTransferEventsResponse = objectMapper.readValue(result.getResponse().getContentAsByteArray(), GetTransferEventsResponse.class);
+
+        assertTrue(getTransferEventsResponse.getTransferEventDtoList().size() == 10);
+        assertTrue(getTransferEventsResponse.getTransferEventDtoList().stream().allMatch(transferEventDto -> transferEventDto.getRecordedAt() != null
+                && transferEventDto.getTransferAmount().compareTo(BigDecimal.TEN) >= 0
+                && transferEventDto.getTransferAmount().compareTo(BigDecimal.valueOf(19)) <= 0));
+        assertTrue(getTransferEventsResponse.getNextAfterEventId() == null);
+
+        assertTrue(eventServiceController.getTransferEventsPage(new TransferEventFilter(null, "sa2003", null, null,
+                Instant.now().plusSeconds(60), null), null, 100).getTransferEventDtoList().isEmpty());
+    }
+
+    @Test
+    @Transactional
+    @DisplayName("Test getTransferEventsPage returns an event with a lower id committed after the previous page, once settled")
+    void testGetTransferEventsPageOfLateEvent() {
+        TransferEventFilter transferEventFilter = new TransferEventFilter("sa5001", null, null, null, null, null);
+        eventServiceController.recordTransferEvents(new RecordTransferEventsRequest(
+                Collections.singletonList(new TransferEventDto(0, "sa5001", "sa5002", BigDecimal.ONE))));
+        GetTransferEventsResponse getTransferEventsResponse = eventServiceController.getTransferEventsPage(transferEventFilter, null, 1);
+        assertTrue(getTransferEventsResponse.getTransferEventDtoList().size() == 1);
+        long afterEventId = getTransferEventsResponse.getNextAfterEventId();
+
+        // Another instance recording an event with an id of its pooled block, lower than the ones paged
+        jdbcTemplate.update("INSERT INTO transfer_event (event_id, source_account_number, destination_account_number, transfer_amt, recorded_at) "
+                + "VALUES (?, 'sa5001', 'sa5002', 2, ?)", -1, Timestamp.from(Instant.now()));
+
+        Object eventService = AopTestUtils.getUltimateTargetObject(webApplicationContext.getBean(EventService.class));
+        long settleMs = (long) ReflectionTestUtils.getField(eventService, "settleMs");
+        try {
+            // Not settled yet, then paged after the event of the previous page
+            ReflectionTestUtils.setField(eventService, "settleMs", 60000L);
+            assertTrue(eventServiceController.getTransferEventsPage(transferEventFilter, afterEventId, 10).getTransferEventDtoList().isEmpty());
+        } finally {
+            ReflectionTestUtils.setField(eventService, "settleMs", settleMs);
+        }
+        List<TransferEventDto> transferEventDtoList = eventServiceController.getTransferEventsPage(transferEventFilter, afterEventId, 10).getTransferEventDtoList();
+        assertTrue(transferEventDtoList.size() == 1);
+        assertTrue(transferEventDtoList.get(0).getEventId() == -1);
+
+        assertTrue(eventServiceController.getTransferEventsPage(transferEventFilter, 123456789L, 10).getErrorCode() != null);
+    }
+
+    @Test
+    @Transactional
+    @DisplayName("Test exportTransferEvents writes NDJSON or CSV lines and resumes after an event id, in recorded order")
+    void testExportTransferEvents() throws IOException {
+        List<TransferEventDto> transferEventDtoList = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            transferEventDtoList.add(new TransferEventDto(0, "sa3001", i == 5 ? "sa,3002" : "sa3002", BigDecimal.valueOf(i)));
+        }
+        List<TransferEventDto> recordedTransferEventDtoList = eventServiceController.recordTransferEvents(
+                new RecordTransferEventsRequest(transferEventDtoList)).getTransferEventDtoList();
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        eventServiceController.exportTransferEvents("ndjson", null).getBody().writeTo(outputStream);
+        String[] lines = new String(outputStream.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertTrue(lines.length == 5);
+        for (int i = 0; i < lines.length; i++) {
+            TransferEventDto transferEventDto = objectMapper.readValue(lines[i], TransferEventDto.class);
+            assertTrue(transferEventDto.getEventId() == recordedTransferEventDtoList.get(i).getEventId());
+            assertTrue(transferEventDto.getRecordedAt() != null);
+        }
+
+        outputStream = new ByteArrayOutputStream();
+        eventServiceController.exportTransferEvents("csv", recordedTransferEventDtoList.get(2).getEventId()).getBody().writeTo(outputStream);
+        lines = new String(outputStream.toByteArray(), StandardCharsets.UTF_8).split("\r\n");
+        assertTrue(lines.length == 3);
+        assertTrue(lines[0].equals("event_id,source_account_number,destination_account_number,transfer_amount,recorded_at"));
+        assertTrue(lines[1].startsWith(recordedTransferEventDtoList.get(3).getEventId() + ",sa3001,sa3002,4.00,"));
+        assertTrue(lines[2].startsWith(recordedTransferEventDtoList.get(4).getEventId() + ",sa3001,\"sa,3002\",5.00,"));
+
+        // An event with a lower id committed after the export is part of the resumed export
+        jdbcTemplate.update("INSERT INTO transfer_event (event_id, source_account_number, destination_account_number, transfer_amt, recorded_at) "
+                + "VALUES (?, 'sa3001', 'sa3002', 6, ?)", -2, Timestamp.from(Instant.now()));
+        outputStream = new ByteArrayOutputStream();
+        eventServiceController.exportTransferEvents("ndjson", recordedTransferEventDtoList.get(4).getEventId()).getBody().writeTo(outputStream);
+        lines = new String(outputStream.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertTrue(lines.length == 1);
+        assertTrue(objectMapper.readValue(lines[0], TransferEventDto.class).getEventId() == -2);
+
+        assertTrue(eventServiceController.exportTransferEvents("xml", null).getStatusCodeValue() == 400);
+    }
+
+    @Test
+    @Transactional
+    @DisplayName("Test getAccountEvents pages the debits and credits of an account")
+    void testGetAccountEvents() throws Exception {
+        List<TransferEventDto> transferEventDtoList = new ArrayList<>();
+        for (int i = 1; i <= 6; i++) {
+            transferEventDtoList.add(i % 2 == 0
+                    ? new TransferEventDto(0, "sa4001", "sa4002", BigDecimal.valueOf(i))
+                    : new TransferEventDto(0, "sa4003", "sa4001", BigDecimal.valueOf(i)));
+        }
+        transferEventDtoList.add(new TransferEventDto(0, "sa4001", "sa4001", BigDecimal.valueOf(7)));
+        transferEventDtoList.add(new TransferEventDto(0, "sa4002", "sa4003", BigDecimal.valueOf(8)));
+        eventServiceController.recordTransferEvents(new RecordTransferEventsRequest(transferEventDtoList));
+        eventServiceController.recordTransferEvent(new RecordTransferEventRequest(new TransferEventDto(0, "sa4002", "sa4001", BigDecimal.valueOf(9))));
+
+        List<TransferEventDto> pagedTransferEventDtoList = new ArrayList<>();
+        Long afterEventId = null;
+        do {
+            GetTransferEventsResponse getTransferEventsResponse = eventServiceController.getAccountEvents("sa4001", afterEventId, 3);
+            assertTrue(getTransferEventsResponse.getTransferEventDtoList().size() <= 3);
+            pagedTransferEventDtoList.addAll(getTransferEventsResponse.getTransferEventDtoList());
+            afterEventId = getTransferEventsResponse.getNextAfterEventId();
+        } while (afterEventId != null);
+
+        assertTrue(pagedTransferEventDtoList.size() == 8);
+        assertTrue(pagedTransferEventDtoList.stream().filter(transferEventDto -> "sa4001".equals(transferEventDto.getSourceAccountNumber())).count() == 4);
+        assertTrue(pagedTransferEventDtoList.stream().filter(transferEventDto -> "sa4001".equals(transferEventDto.getDestinationAccountNumber())).count() == 5);
+        for (int i = 1; i < pagedTransferEventDtoList.size(); i++) {
+            assertTrue(pagedTransferEventDtoList.get(i - 1).getEventId() < pagedTransferEventDtoList.get(i).getEventId());
+        }
+        assertTrue(pagedTransferEventDtoList.get(7).getTransferAmount().compareTo(BigDecimal.valueOf(9)) == 0);
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        MvcResult result = mockMvc.perform(get("/event-api/accounts/sa4003/events")).andReturn();
+        GetTransferEventsResponse getTransferEventsResponse = objectMapper.readValue(result.getResponse().getContentAsByteArray(), GetTransferEventsResponse.class);
+
+        assertTrue(getTransferEventsResponse.getTransferEventDtoList().size() == 4);
+        assertTrue(getTransferEventsResponse.getNextAfterEventId() == null);
+        assertTrue(eventServiceController.getAccountEvents("sa4004", null, null).getTransferEventDtoList().isEmpty());
+    }
+
+    @Test
+    @Transactional
+    @DisplayName("Test AccountEventBackfill projects the transfer events recorded without account events once")
+    void testAccountEventBackfill() {
+        // Transfer events recorded before the per account projection existed
+        Timestamp recordedAt = Timestamp.from(Instant.now());
+        jdbcTemplate.update("INSERT INTO transfer_event (event_id, source_account_number, destination_account_number, transfer_amt, recorded_at) "
+                + "VALUES (-10, 'sa6001', 'sa6002', 1, ?), (-11, 'sa6002', 'sa6001', 2, ?), (-12, 'sa6001', 'sa6001', 3, ?)",
+                recordedAt, recordedAt, recordedAt);
+        assertTrue(eventServiceController.getAccountEvents("sa6001", null, null).getTransferEventDtoList().isEmpty());
+
+        assertTrue(accountEventBackfill.backfill() == 5);
+        assertTrue(accountEventBackfill.backfill() == 0);
+
+        List<TransferEventDto> transferEventDtoList = eventServiceController.getAccountEvents("sa6001", null, null).getTransferEventDtoList();
+        assertTrue(transferEventDtoList.size() == 3);
+        assertTrue(transferEventDtoList.get(0).getEventId() == -12);
+        assertTrue(eventServiceController.getAccountEvents("sa6002", null, null).getTransferEventDtoList().size() == 2);
+    }
+
+    @Test
+    @Transactional
+    @DisplayName("Test AccountEventBackfill stamps the transfer events recorded without recorded_at so pages reach them")
+    void testAccountEventBackfillWithoutRecordedAt() {
+        jdbcTemplate.update("INSERT INTO transfer_event (event_id, source_account_number, destination_account_number, transfer_amt, recorded_at) "
+                + "VALUES (-20, 'sa7001', 'sa7002', 1, NULL)");
+        TransferEventFilter transferEventFilter = new TransferEventFilter("sa7001", null, null, null, null, null);
+        assertTrue(eventServiceController.getTransferEventsPage(transferEventFilter, null, 10).getTransferEventDtoList().isEmpty());
+
+        assertTrue(accountEventBackfill.backfill() == 2);
+
+        List<TransferEventDto> transferEventDtoList = eventServiceController.getTransferEventsPage(transferEventFilter, null, 10).getTransferEventDtoList();
+        assertTrue(transferEventDtoList.size() == 1);
+        assertTrue(transferEventDtoList.get(0).getEventId() == -20 && transferEventDtoList.get(0).getRecordedAt() != null);
+        assertTrue(eventServiceController.getAccountEvents("sa7002", null, null).getTransferEventDtoList().size() == 1);
+    }
 }
@@ -0,0 +1,99 @@
+package org.gateway.api.filter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Stamps every routed request with its deadline, as the remaining budget in milliseconds in the
+ * X-Request-Timeout-Ms header. The budget is the request-timeout-ms metadata of the route, or
+ * gateway.request-timeout-ms, or the shorter one asked by the client in the same header. A route
+ * with a negative request-timeout-ms, e.g. a long running stream, only gets the budget the client
+ * asked for. The budget is forwarded less gateway.deadline-margin-ms, left for the response to
+ * travel back before the gateway gives up on it. A request arriving without budget left is
+ * answered with 504 Gateway Timeout and counted by gateway.requests.expired.
+ */
+@Component
+public class RequestDeadlineFilter implements GlobalFilter, Ordered {
+
+    public static final String HEADER = "X-Request-Timeout-Ms";
+
+    public static final String REQUEST_TIMEOUT_METADATA = "request-timeout-ms";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${gateway.request-timeout-ms:10000}")
+    private long requestTimeoutMs;
+
+    @Value("${gateway.deadline-margin-ms:50}")
+    private long deadlineMarginMs;
+
+    private Counter expiredCounter;
+
+    @PostConstruct
+    public void init() {
+        expiredCounter = Counter.builder("gateway.requests.expired").register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Long budgetMs = getBudgetMs(getRouteTimeoutMs(exchange), exchange.getRequest().getHeaders().getFirst(HEADER));
+        if (budgetMs == null) {
+            return chain.filter(exchange);
+        }
+        long forwardedBudgetMs = budgetMs - deadlineMarginMs;
+        if (forwardedBudgetMs <= 0) {
+            expiredCounter.increment();
+            exchange.getResponse().setStatusCode(HttpStatus.GATEWAY_TIMEOUT);
+            return exchange.getResponse().setComplete();
+        }
+        return chain.filter(exchange.mutate()
+                .request(request -> request.headers(headers -> headers.set(HEADER, String.valueOf(forwardedBudgetMs))))
+                .build());
+    }
+
+    /**
+     * @return budget of the request, null if neither the route nor the client bound it
+     */
+    private Long getBudgetMs(long routeTimeoutMs, String header) {
+        Long clientBudgetMs = null;
+        if (header != null) {
+            try {
+                clientBudgetMs = Long.parseLong(header.trim());
+            } catch (NumberFormatException e) {
+                clientBudgetMs = null;
+            }
+        }
+        if (routeTimeoutMs < 0) {
+            return clientBudgetMs;
+        }
+        return clientBudgetMs != null ? Math.min(routeTimeoutMs, clientBudgetMs) : routeTimeoutMs;
+    }
+
+    private long getRouteTimeoutMs(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        Object routeTimeoutMs = route != null ? route.getMetadata().get(REQUEST_TIMEOUT_METADATA) : null;
+        if (routeTimeoutMs == null) {
+            return requestTimeoutMs;
+        }
+        return routeTimeoutMs instanceof Number ? ((Number) routeTimeoutMs).longValue() : Long.parseLong(routeTimeoutMs.toString().trim());
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
@@ -5,7 +5,6 @@ import org.slf4j.LoggerFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
-import org.springframework.cloud.openfeign.EnableFeignClients;
 
 /**
  * This application works as a central orchestrator
@@ -14,7 +13,6 @@ import org.springframework.cloud.openfeign.EnableFeignClients;
  * another.
  */
 @EnableDiscoveryClient
-@EnableFeignClients
 @SpringBootApplication
 public class TransferServiceApplication {
 
@@ -0,0 +1,84 @@
+package org.transfer.api.cache;
+
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.common.api.response.TransferResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of TransferResponses keyed by Idempotency-Key, configured with
+ * transfer.idempotency, exposes Micrometer metrics under cache name "transfer-responses".
+ * <p>
+ * An entry is added when a transfer starts, so concurrent requests with the same key wait for
+ * that one transfer and share its response. Only successful transfers stay cached, a failed
+ * transfer had no effect and is executed again when retried. Account service records the key
+ * with the transfer, which keeps a retry on another instance from applying it again.
+ */
+@Component
+public class TransferResponseCache {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${transfer.idempotency.maximum-size:100000}")
+    private long maximumSize;
+
+    @Value("${transfer.idempotency.expire-after-write-ms:600000}")
+    private long expireAfterWriteMs;
+
+    private Cache<String, CompletableFuture<TransferResponse>> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofMillis(expireAfterWriteMs))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "transfer-responses");
+    }
+
+    /**
+     * Get the response of the transfer with the given key, executing the transfer if no
+     * transfer with the key is in flight or succeeded.
+     *
+     * @param idempotencyKey
+     * @param transfer
+     * @return
+     */
+    public TransferResponse getOrExecute(String idempotencyKey, Supplier<TransferResponse> transfer) {
+        CompletableFuture<TransferResponse> future = new CompletableFuture<>();
+        CompletableFuture<TransferResponse> existingFuture = cache.asMap().putIfAbsent(idempotencyKey, future);
+        if (existingFuture != null) {
+            try {
+                return existingFuture.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        try {
+            TransferResponse transferResponse = transfer.get();
+            if (!Boolean.TRUE.equals(transferResponse.getTransferStatus())) {
+                cache.asMap().remove(idempotencyKey, future);
+            }
+            future.complete(transferResponse);
+            return transferResponse;
+        } catch (RuntimeException e) {
+            cache.asMap().remove(idempotencyKey, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package org.transfer.api.clients;
 
 import org.common.api.request.AccountDetailsRequest;
+import org.common.api.request.UpdateAccountDetailsBatchRequest;
 import org.common.api.request.UpdateAccountDetailsRequest;
 import org.common.api.response.AccountDetailsResponse;
+import org.common.api.response.UpdateAccountDetailsBatchResponse;
 import org.common.api.response.UpdateAccountDetailsResponse;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -26,4 +28,7 @@ public interface AccountServiceClient {
     @RequestMapping(method = RequestMethod.POST, value = "/account-api/update")
     UpdateAccountDetailsResponse updateAccountDetails(UpdateAccountDetailsRequest updateAccountDetailsRequest);
 
+    @RequestMapping(method = RequestMethod.POST, value = "/account-api/update-batch")
+    UpdateAccountDetailsBatchResponse updateAccountDetailsBatch(UpdateAccountDetailsBatchRequest updateAccountDetailsBatchRequest);
+
 }
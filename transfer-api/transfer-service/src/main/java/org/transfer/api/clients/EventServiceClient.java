@@ -2,9 +2,11 @@ package org.transfer.api.clients;
 
 import org.common.api.request.AccountDetailsRequest;
 import org.common.api.request.RecordTransferEventRequest;
+import org.common.api.request.RecordTransferEventsRequest;
 import org.common.api.response.AccountDetailsResponse;
 import org.common.api.response.GetTransferEventsResponse;
 import org.common.api.response.RecordTransferEventResponse;
+import org.common.api.response.RecordTransferEventsResponse;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -25,5 +27,8 @@ public interface EventServiceClient {
     @RequestMapping(method = RequestMethod.POST, value = "/event-api/transfer-event")
     RecordTransferEventResponse recordTransferEvent(RecordTransferEventRequest recordTransferEventRequest);
 
+    @RequestMapping(method = RequestMethod.POST, value = "/event-api/transfer-events")
+    RecordTransferEventsResponse recordTransferEvents(RecordTransferEventsRequest recordTransferEventsRequest);
+
 
 }
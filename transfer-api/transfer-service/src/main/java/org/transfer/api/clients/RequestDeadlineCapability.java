@@ -0,0 +1,74 @@
+package org.transfer.api.clients;
+
+import feign.Capability;
+import feign.Client;
+import feign.Request;
+import feign.RequestInterceptor;
+import feign.RequestTemplate;
+import org.common.api.util.RequestDeadline;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Propagates the {@link RequestDeadline} of the current request into the Feign calls it makes:
+ * the remaining budget less transfer.feign.deadline-margin-ms is sent in the X-Request-Timeout-Ms
+ * header, and the remaining budget bounds the read timeout of the call so it is not waited for
+ * beyond the deadline. Calls made without Feign, as by the in-process clients, run under the
+ * same budget through {@link #execute}.
+ */
+@Component
+public class RequestDeadlineCapability implements Capability, RequestInterceptor {
+
+    @Value("${transfer.feign.deadline-margin-ms:20}")
+    private long deadlineMarginMs;
+
+    @Override
+    public void apply(RequestTemplate template) {
+        if (RequestDeadline.isPresent()) {
+            template.removeHeader(RequestDeadline.HEADER);
+            template.header(RequestDeadline.HEADER, String.valueOf(getBudgetMs()));
+        }
+    }
+
+    /**
+     * @return the budget sent on, milliseconds left before the deadline of the current request less deadline-margin-ms
+     */
+    public long getBudgetMs() {
+        return Math.max(0, RequestDeadline.getRemainingMs() - deadlineMarginMs);
+    }
+
+    @Override
+    public Client enrich(Client client) {
+        return (request, options) -> {
+            long remainingMs = RequestDeadline.getRemainingMs();
+            if (remainingMs >= options.readTimeoutMillis()) {
+                return client.execute(request, options);
+            }
+            return client.execute(request, new Request.Options(options.connectTimeoutMillis(), TimeUnit.MILLISECONDS,
+                    Math.max(1, remainingMs), TimeUnit.MILLISECONDS, options.isFollowRedirects()));
+        };
+    }
+
+    /**
+     * Run a call made without Feign under the deadline it would be sent, the remaining budget
+     * less deadline-margin-ms, and restore the deadline of the current request after it.
+     *
+     * @param call
+     * @return
+     */
+    public <T> T execute(Supplier<T> call) {
+        Long deadline = RequestDeadline.get();
+        if (deadline == null) {
+            return call.get();
+        }
+        RequestDeadline.set(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(getBudgetMs()));
+        try {
+            return call.get();
+        } finally {
+            RequestDeadline.set(deadline);
+        }
+    }
+}
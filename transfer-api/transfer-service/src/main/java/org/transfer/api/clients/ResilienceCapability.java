@@ -0,0 +1,190 @@
+package org.transfer.api.clients;
+
+import feign.Capability;
+import feign.Client;
+import feign.Response;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Guards each Feign client (account-service, event-service) with its own circuit breaker and
+ * semaphore bulkhead, configured with transfer.resilience. A call refused by an open breaker or
+ * a full bulkhead fails fast with CallNotPermittedException or BulkheadFullException.
+ * Connection errors, 5xx responses and calls slower than slow-call-duration-threshold-ms count as
+ * failures, the per client deadlines themselves are the feign.client.config timeouts.
+ * Clients calling without Feign, as the in-process ones and the WebClient of the reactive
+ * transfers, are guarded by {@link #execute}.
+ * <p>
+ * Exposes resilience4j.circuitbreaker.* and resilience4j.bulkhead.* metrics tagged by client name,
+ * and the counter transfer.client.bulkhead.rejected.
+ */
+@Component
+public class ResilienceCapability implements Capability {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${transfer.resilience.failure-rate-threshold:50}")
+    private float failureRateThreshold;
+
+    @Value("${transfer.resilience.slow-call-duration-threshold-ms:2000}")
+    private long slowCallDurationThresholdMs;
+
+    @Value("${transfer.resilience.sliding-window-size:20}")
+    private int slidingWindowSize;
+
+    @Value("${transfer.resilience.minimum-number-of-calls:10}")
+    private int minimumNumberOfCalls;
+
+    @Value("${transfer.resilience.wait-duration-in-open-state-ms:5000}")
+    private long waitDurationInOpenStateMs;
+
+    @Value("${transfer.resilience.max-concurrent-calls:50}")
+    private int maxConcurrentCalls;
+
+    @Value("${transfer.resilience.max-wait-duration-ms:0}")
+    private long maxWaitDurationMs;
+
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    private BulkheadRegistry bulkheadRegistry;
+
+    @PostConstruct
+    public void init() {
+        circuitBreakerRegistry = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slowCallRateThreshold(failureRateThreshold)
+                .slowCallDurationThreshold(Duration.ofMillis(slowCallDurationThresholdMs))
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(minimumNumberOfCalls)
+                .waitDurationInOpenState(Duration.ofMillis(waitDurationInOpenStateMs))
+                .build());
+        bulkheadRegistry = BulkheadRegistry.of(BulkheadConfig.custom()
+                .maxConcurrentCalls(maxConcurrentCalls)
+                .maxWaitDuration(Duration.ofMillis(maxWaitDurationMs))
+                .build());
+        bulkheadRegistry.getEventPublisher().onEntryAdded(event -> {
+            Bulkhead bulkhead = event.getAddedEntry();
+            Counter rejectedCounter = Counter.builder("transfer.client.bulkhead.rejected")
+                    .tag("name", bulkhead.getName())
+                    .register(meterRegistry);
+            bulkhead.getEventPublisher().onCallRejected(rejectedEvent -> rejectedCounter.increment());
+        });
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry).bindTo(meterRegistry);
+        TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheadRegistry).bindTo(meterRegistry);
+    }
+
+    @Override
+    public Client enrich(Client client) {
+        return (request, options) -> {
+            String name = request.requestTemplate().feignTarget().name();
+            CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(name);
+            Bulkhead bulkhead = bulkheadRegistry.bulkhead(name);
+
+            bulkhead.acquirePermission();
+            try {
+                circuitBreaker.acquirePermission();
+                long start = System.nanoTime();
+                Response response;
+                try {
+                    response = client.execute(request, options);
+                } catch (IOException | RuntimeException e) {
+                    circuitBreaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, e);
+                    throw e;
+                }
+                if (response.status() >= 500) {
+                    circuitBreaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS,
+                            new IOException("Status " + response.status() + " from " + name));
+                } else {
+                    circuitBreaker.onSuccess(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+                return response;
+            } finally {
+                bulkhead.onComplete();
+            }
+        };
+    }
+
+    /**
+     * Guard a call made without Feign with the circuit breaker and bulkhead of the named client,
+     * any exception of the call counts as a failure.
+     *
+     * @param name client name, e.g. account-service
+     * @param call
+     * @return
+     */
+    public <T> T execute(String name, Supplier<T> call) {
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(name);
+        Bulkhead bulkhead = bulkheadRegistry.bulkhead(name);
+
+        bulkhead.acquirePermission();
+        try {
+            circuitBreaker.acquirePermission();
+            long start = System.nanoTime();
+            T result;
+            try {
+                result = call.get();
+            } catch (RuntimeException e) {
+                circuitBreaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, e);
+                throw e;
+            }
+            circuitBreaker.onSuccess(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } finally {
+            bulkhead.onComplete();
+        }
+    }
+
+    /**
+     * Guard a reactive call with the circuit breaker and bulkhead of the named client, permits
+     * are taken on subscription and returned once the call completes, fails or is cancelled.
+     *
+     * @param name client name, e.g. account-service
+     * @param call
+     * @return
+     */
+    public <T> Mono<T> execute(String name, Mono<T> call) {
+        return Mono.defer(() -> {
+            CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(name);
+            Bulkhead bulkhead = bulkheadRegistry.bulkhead(name);
+
+            bulkhead.acquirePermission();
+            try {
+                circuitBreaker.acquirePermission();
+            } catch (CallNotPermittedException e) {
+                bulkhead.onComplete();
+                throw e;
+            }
+            long start = System.nanoTime();
+            return call
+                    .doOnSuccess(result -> circuitBreaker.onSuccess(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                    .doOnError(e -> circuitBreaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, e))
+                    .doFinally(signalType -> {
+                        if (signalType == SignalType.CANCEL) {
+                            circuitBreaker.releasePermission();
+                        }
+                        bulkhead.onComplete();
+                    });
+        });
+    }
+}
@@ -0,0 +1,70 @@
+package org.transfer.api.clients;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds the exchanges in flight per route (host and port), and so the HTTP/1.1 connections
+ * opened to a service instance. A request waiting longer than acquireTimeoutMs for its route
+ * fails with a ConnectException, as it was never sent, and is counted by feign.http.requests.rejected.
+ * Clients calling without OkHttp, as the in-process ones, take the permits of a route with
+ * {@link #acquire} and {@link #release}.
+ */
+public class RouteConcurrencyInterceptor implements Interceptor {
+
+    private final int maxPerRoute;
+
+    private final long acquireTimeoutMs;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, Semaphore> routePermits = new ConcurrentHashMap<>();
+
+    public RouteConcurrencyInterceptor(int maxPerRoute, long acquireTimeoutMs, MeterRegistry meterRegistry) {
+        this.maxPerRoute = maxPerRoute;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        String route = chain.request().url().host() + ":" + chain.request().url().port();
+        acquire(route);
+        try {
+            return chain.proceed(chain.request());
+        } finally {
+            release(route);
+        }
+    }
+
+    public void acquire(String route) throws IOException {
+        Semaphore permits = routePermits.computeIfAbsent(route, key -> new Semaphore(maxPerRoute));
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                Counter.builder("feign.http.requests.rejected")
+                        .tag("route", route)
+                        .register(meterRegistry)
+                        .increment();
+                throw new ConnectException("Connections to " + route + " saturated");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    public void release(String route) {
+        routePermits.get(route).release();
+    }
+
+}
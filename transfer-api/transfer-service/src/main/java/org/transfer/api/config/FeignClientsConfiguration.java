@@ -0,0 +1,16 @@
+package org.transfer.api.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.openfeign.EnableFeignClients;
+import org.springframework.context.annotation.Configuration;
+import org.transfer.api.clients.AccountServiceClient;
+
+/**
+ * Account and event services are called over HTTP through the Feign clients, unless transfer.clients
+ * is in-process and the deployment provides its own AccountServiceClient and EventServiceClient.
+ */
+@Configuration
+@ConditionalOnProperty(value = "transfer.clients", havingValue = "feign", matchIfMissing = true)
+@EnableFeignClients(basePackageClasses = AccountServiceClient.class)
+public class FeignClientsConfiguration {
+}
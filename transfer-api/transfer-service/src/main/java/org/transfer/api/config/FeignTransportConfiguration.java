@@ -0,0 +1,76 @@
+package org.transfer.api.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.okhttp3.OkHttpConnectionPoolMetrics;
+import io.micrometer.core.instrument.binder.okhttp3.OkHttpMetricsEventListener;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.openfeign.support.FeignHttpClientProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.transfer.api.clients.RouteConcurrencyInterceptor;
+
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport of the Feign clients: a single OkHttp client with a keep-alive connection pool,
+ * HTTP/2 negotiated where the server offers it and transparent gzip of responses.
+ * Configured with feign.httpclient, exposes Micrometer metrics of the pool (okhttp.pool.*),
+ * of the exchanges (feign.http.requests) and of requests rejected by a saturated route.
+ */
+@Configuration
+@ConditionalOnProperty(value = "feign.okhttp.enabled")
+public class FeignTransportConfiguration {
+
+    @Value("${transfer.feign.http2-prior-knowledge:false}")
+    private boolean http2PriorKnowledge;
+
+    private OkHttpClient okHttpClient;
+
+    @Bean
+    public ConnectionPool feignConnectionPool(FeignHttpClientProperties properties, MeterRegistry meterRegistry) {
+        ConnectionPool connectionPool = new ConnectionPool(properties.getMaxConnections(),
+                properties.getTimeToLive(), properties.getTimeToLiveUnit());
+        new OkHttpConnectionPoolMetrics(connectionPool, "okhttp.pool", Tags.of("client", "feign"),
+                properties.getMaxConnections()).bindTo(meterRegistry);
+        return connectionPool;
+    }
+
+    @Bean
+    public OkHttpClient feignOkHttpClient(ConnectionPool feignConnectionPool, FeignHttpClientProperties properties,
+                                          MeterRegistry meterRegistry) {
+        okHttpClient = new OkHttpClient.Builder()
+                .connectionPool(feignConnectionPool)
+                // Plain text HTTP/2 has no upgrade negotiation, it is only used if every service speaks it
+                .protocols(http2PriorKnowledge
+                        ? Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE)
+                        : Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(properties.getConnectionTimeout(), TimeUnit.MILLISECONDS)
+                .readTimeout(properties.getOkHttp().getReadTimeout())
+                .followRedirects(properties.isFollowRedirects())
+                .addInterceptor(new RouteConcurrencyInterceptor(properties.getMaxConnectionsPerRoute(),
+                        properties.getConnectionTimeout(), meterRegistry))
+                .eventListener(OkHttpMetricsEventListener.builder(meterRegistry, "feign.http.requests")
+                        .uriMapper(request -> request.url().encodedPath())
+                        .tags(Tags.of("client", "feign"))
+                        .build())
+                .build();
+        return okHttpClient;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (okHttpClient != null) {
+            okHttpClient.dispatcher().executorService().shutdown();
+            okHttpClient.connectionPool().evictAll();
+        }
+    }
+
+}
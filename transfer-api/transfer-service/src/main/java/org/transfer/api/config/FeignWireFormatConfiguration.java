@@ -0,0 +1,90 @@
+package org.transfer.api.config;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import feign.RequestInterceptor;
+import feign.codec.Decoder;
+import feign.codec.Encoder;
+import feign.optionals.OptionalDecoder;
+import org.common.api.util.WireFormat;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.cloud.openfeign.support.HttpMessageConverterCustomizer;
+import org.springframework.cloud.openfeign.support.ResponseEntityDecoder;
+import org.springframework.cloud.openfeign.support.SpringDecoder;
+import org.springframework.cloud.openfeign.support.SpringEncoder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes the request bodies of the Feign clients as Smile and accepts Smile or JSON responses,
+ * when transfer.feign.wire-format is smile. The server endpoints keep their JSON default.
+ */
+@Configuration
+@ConditionalOnProperty(value = "transfer.feign.wire-format", havingValue = "smile")
+public class FeignWireFormatConfiguration {
+
+    @Autowired
+    private ObjectProvider<Jackson2ObjectMapperBuilder> objectMapperBuilder;
+
+    @Autowired
+    private ObjectFactory<HttpMessageConverters> messageConverters;
+
+    @Autowired
+    private ObjectProvider<HttpMessageConverterCustomizer> messageConverterCustomizers;
+
+    private volatile HttpMessageConverters feignHttpMessageConverters;
+
+    @Bean
+    public Encoder feignEncoder() {
+        SpringEncoder springEncoder = new SpringEncoder(getFeignMessageConverters());
+        return (object, bodyType, template) -> {
+            if (!template.headers().containsKey(HttpHeaders.CONTENT_TYPE)) {
+                template.header(HttpHeaders.CONTENT_TYPE, WireFormat.APPLICATION_SMILE);
+            }
+            springEncoder.encode(object, bodyType, template);
+        };
+    }
+
+    @Bean
+    public Decoder feignDecoder() {
+        return new OptionalDecoder(new ResponseEntityDecoder(new SpringDecoder(getFeignMessageConverters(), messageConverterCustomizers)));
+    }
+
+    @Bean
+    public RequestInterceptor wireFormatRequestInterceptor() {
+        return template -> template.header(HttpHeaders.ACCEPT, WireFormat.APPLICATION_SMILE, MediaType.APPLICATION_JSON_VALUE);
+    }
+
+    private ObjectFactory<HttpMessageConverters> getFeignMessageConverters() {
+        return this::getFeignHttpMessageConverters;
+    }
+
+    // Built once, on the first call of a Feign client
+    private HttpMessageConverters getFeignHttpMessageConverters() {
+        if (feignHttpMessageConverters != null) {
+            return feignHttpMessageConverters;
+        }
+        synchronized (this) {
+            if (feignHttpMessageConverters == null) {
+                List<HttpMessageConverter<?>> converters = new ArrayList<>();
+                converters.add(new MappingJackson2SmileHttpMessageConverter(
+                        objectMapperBuilder.getObject().factory(new SmileFactory()).build()));
+                converters.addAll(messageConverters.getObject().getConverters());
+                feignHttpMessageConverters = new HttpMessageConverters(false, converters);
+            }
+            return feignHttpMessageConverters;
+        }
+    }
+
+}
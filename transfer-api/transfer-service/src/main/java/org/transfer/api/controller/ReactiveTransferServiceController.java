@@ -0,0 +1,67 @@
+package org.transfer.api.controller;
+
+
+import org.common.api.request.TransferRequest;
+import org.common.api.response.TransferResponse;
+import org.common.api.util.ErrorCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.transfer.api.service.ReactiveTransferService;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+
+/**
+ * ReactiveTransferServiceController, non-blocking variant of TransferServiceController.
+ * <p>
+ * Returns the transfer as a Mono, so the request thread is released while account
+ * and event service are called and the response is written once the transfer completes.
+ */
+@RestController
+@RequestMapping("/transfer-api/reactive")
+public class ReactiveTransferServiceController {
+    private final static Logger logger = LoggerFactory.getLogger(ReactiveTransferServiceController.class);
+
+    @Autowired
+    private ReactiveTransferService reactiveTransferService;
+
+    /**
+     * API Transfer funds from one account to another. A request repeating the
+     * Idempotency-Key header of an applied transfer does not transfer again.
+     *
+     * @param transferRequest
+     * @param idempotencyKey
+     * @return
+     */
+    @PostMapping(value = "/transfer", produces = "application/json", consumes = "application/json")
+    public Mono<TransferResponse> transfer(@RequestBody TransferRequest transferRequest,
+                                           @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+
+        logger.debug("Reactive transfer request received: {}, idempotency key: {}", transferRequest, idempotencyKey);
+
+        // Called right away rather than deferred, on the thread holding the deadline of the request
+        Mono<TransferResponse> transfer;
+        try {
+            transfer = reactiveTransferService.transfer(transferRequest, idempotencyKey);
+        } catch (Exception e) {
+            transfer = Mono.error(e);
+        }
+        return transfer
+                .onErrorResume(e -> {
+                    logger.error(e.getMessage(), e);
+                    TransferResponse transferResponse = new TransferResponse();
+                    transferResponse.setTransferStatus(false);
+                    transferResponse.setErrors(Arrays.asList(ErrorCode.INTERNAL_SERVER_ERROR.getErrorMessage()));
+                    transferResponse.setSourceAccountNumber(transferRequest.getSourceAccountNumber());
+                    transferResponse.setDestinationAccountNumber(transferRequest.getDestinationAccountNumber());
+                    transferResponse.setTransferAmount(transferRequest.getTransferAmount());
+                    return Mono.just(transferResponse);
+                });
+    }
+}
@@ -1,19 +1,35 @@
 package org.transfer.api.controller;
 
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import org.common.api.request.TransferRequest;
 import org.common.api.response.TransferResponse;
 import org.common.api.util.ErrorCode;
+import org.common.api.util.RequestDeadline;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.ObjectFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.transfer.api.service.TransferService;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 /**
@@ -27,31 +43,35 @@ import java.util.Arrays;
 @RequestMapping("/transfer-api")
 public class TransferServiceController {
     private final static Logger logger = LoggerFactory.getLogger(TransferServiceController.class);
-    @Autowired
-    private ObjectFactory<TransferResponse> transferResponseObjectFactory;
 
     @Autowired
     private TransferService transferService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     /**
-     * API Transfer funds from one account to another.
+     * API Transfer funds from one account to another. A request retried with the same
+     * Idempotency-Key header gets the response of the first one and does not transfer again.
      *
      * @param transferRequest
+     * @param idempotencyKey
      * @return
      */
     @PostMapping(value = "/transfer", produces = "application/json", consumes = "application/json")
-    public TransferResponse transfer(@RequestBody TransferRequest transferRequest) {
+    public TransferResponse transfer(@RequestBody TransferRequest transferRequest,
+                                     @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
 
-        logger.debug("Transfer request received: {}", transferRequest);
+        logger.debug("Transfer request received: {}, idempotency key: {}", transferRequest, idempotencyKey);
         TransferResponse transferResponse;
 
         try {
-            return transferService.transfer(transferRequest);
+            return transferService.transfer(transferRequest, idempotencyKey);
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
         }
 
-        transferResponse = getTransferResponse();
+        transferResponse = new TransferResponse();
         transferResponse.setTransferStatus(false);
         transferResponse.setErrors(Arrays.asList(ErrorCode.INTERNAL_SERVER_ERROR.getErrorMessage()));
         transferResponse.setSourceAccountNumber(transferRequest.getSourceAccountNumber());
@@ -61,9 +81,45 @@ public class TransferServiceController {
         return transferResponse;
     }
 
-    private TransferResponse getTransferResponse() {
-        return transferResponseObjectFactory.getObject();
+    /**
+     * API Transfer funds for a stream of newline delimited JSON TransferRequests, one per line.
+     * Requests are transferred in batches as they are read, and one TransferResponse per line is
+     * streamed back in request order as the batches complete. A malformed line ends the response
+     * after the responses of the requests before it.
+     *
+     * @param request
+     * @return
+     * @throws IOException
+     */
+    @PostMapping(value = "/transfers", produces = "application/x-ndjson", consumes = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> transfers(HttpServletRequest request) throws IOException {
+        logger.debug("Bulk transfer request received");
+        InputStream inputStream = request.getInputStream();
+        ObjectWriter transferResponseWriter = objectMapper.writerFor(TransferResponse.class);
+        // The body is written on an async thread once the request thread, and its deadline, are gone
+        Long deadline = RequestDeadline.get();
+        StreamingResponseBody responseBody = outputStream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            RequestDeadline.set(deadline);
+            try (MappingIterator<TransferRequest> transferRequests = objectMapper.readerFor(TransferRequest.class).readValues(inputStream)) {
+                transferService.transfer(transferRequests, transferResponse -> {
+                    try {
+                        writer.write(transferResponseWriter.writeValueAsString(transferResponse));
+                        writer.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (RuntimeException e) {
+                logger.error("Error streaming bulk transfer: {}", e.getMessage(), e);
+                throw new IOException("Error streaming bulk transfer", e);
+            } finally {
+                RequestDeadline.clear();
+                writer.flush();
+            }
+        };
+        return ResponseEntity.status(HttpStatus.OK)
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(responseBody);
     }
-
 }
-
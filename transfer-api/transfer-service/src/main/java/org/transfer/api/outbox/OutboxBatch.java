@@ -0,0 +1,21 @@
+package org.transfer.api.outbox;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.common.api.dto.TransferEventDto;
+
+import java.util.List;
+
+/**
+ * Events read from the outbox segment segmentSequence, with the segment position after each event.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxBatch {
+    private List<TransferEventDto> transferEventDtoList;
+    private long segmentSequence;
+    private List<Long> nextPositions;
+}
@@ -0,0 +1,463 @@
+package org.transfer.api.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.common.api.dto.TransferEventDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TransferEventOutbox is a durable, append-only log of transfer events still to be recorded
+ * with event service, configured with transfer.outbox.
+ * <p>
+ * Events are appended as JSON lines to numbered segment files. An append returns once the event
+ * is forced to disk: the first waiting appender forces the segment for every event appended so
+ * far, so concurrent appends share one fsync. A segment is rotated once it reaches
+ * segment-size-bytes.
+ * <p>
+ * The TransferEventRelay reads events from the commit offset, a segment number and position
+ * persisted in the offset file, and commits the offset once event service acknowledged them.
+ * Segments before the commit offset are deleted. Delivery is at least once: events read but
+ * not committed before a crash are sent again after the restart. Every event is given an event
+ * uuid when it is appended, and event service skips an event uuid it already recorded.
+ * <p>
+ * A batch event service keeps rejecting is parked with {@link #park}: its events are moved to the
+ * parked file for inspection and replay, so they no longer hold up the events behind them.
+ * <p>
+ * The outbox holds at most max-pending-events events not yet committed, {@link #tryAppend}
+ * refuses further events so the caller records them synchronously. Exposes the gauge
+ * transfer.outbox.pending and the counter transfer.outbox.rejected.
+ */
+@Component
+public class TransferEventOutbox {
+
+    private final static Logger logger = LoggerFactory.getLogger(TransferEventOutbox.class);
+
+    private static final String SEGMENT_PREFIX = "transfer-outbox-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String OFFSET_FILE = "transfer-outbox.offset";
+    private static final String PARKED_FILE = "transfer-outbox-parked.log";
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${transfer.outbox.directory:outbox}")
+    private String outboxDirectory;
+
+    @Value("${transfer.outbox.segment-size-bytes:16777216}")
+    private long segmentSizeBytes;
+
+    @Value("${transfer.outbox.max-pending-events:100000}")
+    private long maxPendingEvents;
+
+    private Path directory;
+    private ObjectWriter eventWriter;
+    private ObjectReader eventReader;
+
+    // Active segment, guarded by this
+    private long segmentSequence;
+    private FileChannel segmentChannel;
+    private long appendedCount;
+
+    // Group commit state, guarded by syncLock
+    private final Object syncLock = new Object();
+    private long durableCount;
+    private boolean syncInProgress;
+
+    // Events appended and not yet committed, waited for by the relay on pendingLock
+    private final AtomicLong pendingCount = new AtomicLong();
+    private final Object pendingLock = new Object();
+    private volatile long pendingThreshold = Long.MAX_VALUE;
+    private Counter rejectedCounter;
+
+    // Commit offset, only used by the relay thread
+    private long committedSegmentSequence;
+    private long committedPosition;
+
+    @PostConstruct
+    public void init() throws IOException {
+        directory = Files.createDirectories(Paths.get(outboxDirectory));
+        eventWriter = objectMapper.writerFor(TransferEventDto.class);
+        eventReader = objectMapper.readerFor(TransferEventDto.class);
+
+        List<Path> segments = listSegments();
+        readOffset(segments);
+        segmentSequence = segments.isEmpty() ? committedSegmentSequence : getSequence(segments.get(segments.size() - 1));
+        openSegment(Math.max(segmentSequence, 1));
+        pendingCount.set(countPendingEvents(segments));
+
+        Gauge.builder("transfer.outbox.pending", pendingCount, AtomicLong::get)
+                .description("Transfer events in the outbox not yet relayed to event service")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder("transfer.outbox.rejected")
+                .description("Transfer events recorded synchronously as the outbox was full")
+                .register(meterRegistry);
+        logger.info("Opened transfer event outbox {} at segment {}, committed offset {}:{}",
+                directory, segmentSequence, committedSegmentSequence, committedPosition);
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        segmentChannel.force(false);
+        segmentChannel.close();
+    }
+
+    /**
+     * Append an event and wait until it is forced to disk, unless the outbox is full.
+     *
+     * @param transferEventDto
+     * @return false if the outbox is full and the event was not appended
+     * @throws IOException
+     */
+    public boolean tryAppend(TransferEventDto transferEventDto) throws IOException {
+        return tryAppend(Collections.singletonList(transferEventDto));
+    }
+
+    /**
+     * Append events and wait until they are forced to disk with a single sync, unless the
+     * outbox has no room for all of them.
+     *
+     * @param transferEventDtoList
+     * @return false if the outbox is full and no event was appended
+     * @throws IOException
+     */
+    public boolean tryAppend(List<TransferEventDto> transferEventDtoList) throws IOException {
+        if (pendingCount.get() + transferEventDtoList.size() > maxPendingEvents) {
+            rejectedCounter.increment(transferEventDtoList.size());
+            return false;
+        }
+        append(transferEventDtoList);
+        return true;
+    }
+
+    /**
+     * Append an event and wait until it is forced to disk.
+     *
+     * @param transferEventDto
+     * @throws IOException
+     */
+    public void append(TransferEventDto transferEventDto) throws IOException {
+        append(Collections.singletonList(transferEventDto));
+    }
+
+    private void append(List<TransferEventDto> transferEventDtoList) throws IOException {
+        if (transferEventDtoList.isEmpty()) {
+            return;
+        }
+        List<byte[]> records = new ArrayList<>(transferEventDtoList.size());
+        for (TransferEventDto transferEventDto : transferEventDtoList) {
+            if (transferEventDto.getEventUuid() == null) {
+                transferEventDto.setEventUuid(UUID.randomUUID().toString());
+            }
+            records.add((eventWriter.writeValueAsString(transferEventDto) + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        long count;
+        synchronized (this) {
+            for (byte[] record : records) {
+                if (segmentChannel.size() + record.length > segmentSizeBytes && segmentChannel.size() > 0) {
+                    rotate();
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                while (buffer.hasRemaining()) {
+                    segmentChannel.write(buffer);
+                }
+            }
+            appendedCount += records.size();
+            count = appendedCount;
+        }
+        awaitDurable(count);
+
+        if (pendingCount.addAndGet(records.size()) >= pendingThreshold) {
+            synchronized (pendingLock) {
+                pendingLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Wait until at least the given number of events is pending or the timeout elapsed.
+     *
+     * @param eventCount
+     * @param timeoutMs
+     * @throws InterruptedException
+     */
+    public void awaitPendingEvents(int eventCount, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        synchronized (pendingLock) {
+            pendingThreshold = eventCount;
+            try {
+                long remainingMs;
+                while (pendingCount.get() < eventCount
+                        && (remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())) > 0) {
+                    pendingLock.wait(remainingMs);
+                }
+            } finally {
+                pendingThreshold = Long.MAX_VALUE;
+            }
+        }
+    }
+
+    public long getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Read up to maxEvents events from the commit offset. Moves the commit offset past segments
+     * that are fully committed and no longer appended to, deleting them.
+     *
+     * @param maxEvents
+     * @return
+     * @throws IOException
+     */
+    public OutboxBatch readBatch(int maxEvents) throws IOException {
+        while (true) {
+            // A segment rotated before it is read holds no event the read misses, one rotated
+            // later may get its last events after the read and is read again
+            long activeSegmentSequence;
+            synchronized (this) {
+                activeSegmentSequence = segmentSequence;
+            }
+
+            Path segment = getSegmentPath(committedSegmentSequence);
+            List<TransferEventDto> events = new ArrayList<>();
+            List<Long> nextPositions = new ArrayList<>();
+            if (Files.exists(segment)) {
+                readEvents(segment, committedPosition, maxEvents, events, nextPositions);
+            }
+            if (!events.isEmpty()) {
+                return new OutboxBatch(events, committedSegmentSequence, nextPositions);
+            }
+
+            // Nothing left in this segment, move on if it was no longer appended to when read
+            if (committedSegmentSequence >= activeSegmentSequence) {
+                return new OutboxBatch(events, committedSegmentSequence, nextPositions);
+            }
+            writeOffset(committedSegmentSequence + 1, 0);
+            Files.deleteIfExists(segment);
+        }
+    }
+
+    /**
+     * Commit the offset after the first eventCount events of the given batch, once event service
+     * acknowledged them.
+     *
+     * @param outboxBatch
+     * @param eventCount
+     * @throws IOException
+     */
+    public void commit(OutboxBatch outboxBatch, int eventCount) throws IOException {
+        if (eventCount > 0) {
+            writeOffset(outboxBatch.getSegmentSequence(), outboxBatch.getNextPositions().get(eventCount - 1));
+            pendingCount.addAndGet(-eventCount);
+        }
+    }
+
+    /**
+     * Move the events of the given batch to the parked file and commit the offset after them.
+     *
+     * @param outboxBatch
+     * @throws IOException
+     */
+    public void park(OutboxBatch outboxBatch) throws IOException {
+        StringBuilder records = new StringBuilder();
+        for (TransferEventDto transferEventDto : outboxBatch.getTransferEventDtoList()) {
+            records.append(eventWriter.writeValueAsString(transferEventDto)).append('\n');
+        }
+        try (FileChannel channel = FileChannel.open(directory.resolve(PARKED_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        commit(outboxBatch, outboxBatch.getTransferEventDtoList().size());
+    }
+
+    private void awaitDurable(long count) throws IOException {
+        while (true) {
+            synchronized (syncLock) {
+                while (syncInProgress && durableCount < count) {
+                    try {
+                        syncLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted waiting for the outbox to be synced");
+                    }
+                }
+                if (durableCount >= count) {
+                    return;
+                }
+                syncInProgress = true;
+            }
+
+            // This appender forces the segment for all events appended so far
+            long syncedCount = 0;
+            try {
+                synchronized (this) {
+                    segmentChannel.force(false);
+                    syncedCount = appendedCount;
+                }
+            } finally {
+                synchronized (syncLock) {
+                    durableCount = Math.max(durableCount, syncedCount);
+                    syncInProgress = false;
+                    syncLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    private void rotate() throws IOException {
+        // Events of the old segment become durable before any event of the new one
+        segmentChannel.force(false);
+        segmentChannel.close();
+        openSegment(segmentSequence + 1);
+    }
+
+    private void openSegment(long sequence) throws IOException {
+        segmentSequence = sequence;
+        segmentChannel = FileChannel.open(getSegmentPath(sequence),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Read complete lines from the given position, a torn last line is left for a later read.
+     * The position after each event read is added to nextPositions.
+     */
+    void readEvents(Path segment, long position, int maxEvents, List<TransferEventDto> events,
+                            List<Long> nextPositions) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            byte[] line = new byte[256];
+            int lineLength = 0;
+            long readPosition = position;
+            while (events.size() < maxEvents && channel.read(buffer, readPosition) > 0) {
+                buffer.flip();
+                readPosition += buffer.remaining();
+                while (buffer.hasRemaining() && events.size() < maxEvents) {
+                    byte b = buffer.get();
+                    if (b != '\n') {
+                        if (lineLength == line.length) {
+                            byte[] longerLine = new byte[line.length * 2];
+                            System.arraycopy(line, 0, longerLine, 0, lineLength);
+                            line = longerLine;
+                        }
+                        line[lineLength++] = b;
+                        continue;
+                    }
+                    position += lineLength + 1;
+                    if (lineLength > 0) {
+                        events.add(eventReader.readValue(line, 0, lineLength));
+                        nextPositions.add(position);
+                    }
+                    lineLength = 0;
+                }
+                buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Count the events after the commit offset, left over from before a restart.
+     */
+    private long countPendingEvents(List<Path> segments) throws IOException {
+        long count = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        for (Path segment : segments) {
+            long sequence = getSequence(segment);
+            if (sequence < committedSegmentSequence) {
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                long position = sequence == committedSegmentSequence ? committedPosition : 0;
+                int read;
+                while ((read = channel.read(buffer, position)) > 0) {
+                    position += read;
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        if (buffer.get() == '\n') {
+                            count++;
+                        }
+                    }
+                    buffer.clear();
+                }
+            }
+        }
+        return count;
+    }
+
+    private void readOffset(List<Path> segments) throws IOException {
+        Path offsetFile = directory.resolve(OFFSET_FILE);
+        if (Files.exists(offsetFile)) {
+            String[] offset = new String(Files.readAllBytes(offsetFile), StandardCharsets.UTF_8).trim().split(":");
+            committedSegmentSequence = Long.parseLong(offset[0]);
+            committedPosition = Long.parseLong(offset[1]);
+        } else {
+            committedSegmentSequence = segments.isEmpty() ? 1 : getSequence(segments.get(0));
+            committedPosition = 0;
+        }
+    }
+
+    private void writeOffset(long sequence, long position) throws IOException {
+        Path offsetFile = directory.resolve(OFFSET_FILE);
+        Path tempFile = directory.resolve(OFFSET_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap((sequence + ":" + position).getBytes(StandardCharsets.UTF_8)));
+            channel.force(false);
+        }
+        Files.move(tempFile, offsetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        committedSegmentSequence = sequence;
+        committedPosition = position;
+    }
+
+    private Path getSegmentPath(long sequence) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(segments::add);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private long getSequence(Path segment) {
+        String fileName = segment.getFileName().toString();
+        return Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length()));
+    }
+}
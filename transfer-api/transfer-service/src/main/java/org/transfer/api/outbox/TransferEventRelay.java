@@ -0,0 +1,188 @@
+package org.transfer.api.outbox;
+
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.common.api.exception.TransferException;
+import org.common.api.request.RecordTransferEventsRequest;
+import org.common.api.response.RecordTransferEventsResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.transfer.api.service.TransferService;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+
+/**
+ * Relays the transfer events of the {@link TransferEventOutbox} to event service on a dedicated
+ * thread. A batch is sent to /event-api/transfer-events once transfer.outbox.relay-batch-size
+ * events are pending or relay-linger-ms elapsed, and the outbox offset is committed once event
+ * service recorded it. A failed batch is retried after relay-retry-interval-ms. The thread is not
+ * started with relay-enabled false, batches are then only relayed by calls to {@link #relay()}.
+ * <p>
+ * A batch event service rejected relay-max-attempts times in a row is relayed again one event at a
+ * time, and an event rejected relay-max-attempts times on its own is parked in the outbox, so a
+ * poison event does not stall the relay. Calls that failed without a response from event service
+ * are retried without limit.
+ * <p>
+ * Exposes the distribution summary transfer.outbox.relay.batch.size, the timer
+ * transfer.outbox.relay and the counters transfer.outbox.relay.errors and transfer.outbox.parked.
+ */
+@Service
+public class TransferEventRelay {
+
+    private final static Logger logger = LoggerFactory.getLogger(TransferEventRelay.class);
+
+    @Autowired
+    private TransferEventOutbox transferEventOutbox;
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${transfer.outbox.relay-batch-size:100}")
+    private int relayBatchSize;
+
+    @Value("${transfer.outbox.relay-linger-ms:200}")
+    private long relayLingerMs;
+
+    @Value("${transfer.outbox.relay-retry-interval-ms:1000}")
+    private long relayRetryIntervalMs;
+
+    @Value("${transfer.outbox.relay-enabled:true}")
+    private boolean relayEnabled;
+
+    @Value("${transfer.outbox.relay-max-attempts:10}")
+    private int relayMaxAttempts;
+
+    private DistributionSummary batchSizeSummary;
+    private Timer relayTimer;
+    private Counter relayErrorCounter;
+    private Counter parkedCounter;
+
+    // Rejections of the batch at the commit offset, and events still to be relayed one at a time
+    private int rejectedAttempts;
+    private int isolatedEventCount;
+
+    private Thread relayThread;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        batchSizeSummary = DistributionSummary.builder("transfer.outbox.relay.batch.size")
+                .description("Transfer events per batch relayed to event service")
+                .register(meterRegistry);
+        relayTimer = Timer.builder("transfer.outbox.relay")
+                .description("Time to record a batch of transfer events with event service")
+                .register(meterRegistry);
+        relayErrorCounter = Counter.builder("transfer.outbox.relay.errors")
+                .description("Batches of transfer events event service failed to record")
+                .register(meterRegistry);
+        parkedCounter = Counter.builder("transfer.outbox.parked")
+                .description("Transfer events parked as event service kept rejecting them")
+                .register(meterRegistry);
+
+        if (!relayEnabled) {
+            logger.info("TransferEvent relay thread disabled");
+            return;
+        }
+        running = true;
+        relayThread = new Thread(this::run, "transfer-event-relay");
+        relayThread.setDaemon(true);
+        relayThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (relayThread == null) {
+            return;
+        }
+        running = false;
+        relayThread.interrupt();
+        relayThread.join(relayRetryIntervalMs);
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                transferEventOutbox.awaitPendingEvents(relayBatchSize, relayLingerMs);
+                if (!relay()) {
+                    Thread.sleep(relayRetryIntervalMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Relay batches until the outbox is drained or event service fails.
+     *
+     * @return false if event service failed
+     */
+    public synchronized boolean relay() {
+        try {
+            while (true) {
+                OutboxBatch outboxBatch = transferEventOutbox.readBatch(isolatedEventCount > 0 ? 1 : relayBatchSize);
+                int eventCount = outboxBatch.getTransferEventDtoList().size();
+                if (eventCount == 0) {
+                    return true;
+                }
+
+                RecordTransferEventsResponse recordTransferEventsResponse = relayTimer.recordCallable(() ->
+                        transferService.recordTransferEvents(new RecordTransferEventsRequest(outboxBatch.getTransferEventDtoList())));
+                if (recordTransferEventsResponse == null) {
+                    throw new TransferException(null);
+                }
+                if (recordTransferEventsResponse.getErrorCode() != null) {
+                    if (!setAside(outboxBatch)) {
+                        throw new TransferException(recordTransferEventsResponse.getErrorCode());
+                    }
+                    continue;
+                }
+                transferEventOutbox.commit(outboxBatch, eventCount);
+                batchSizeSummary.record(eventCount);
+                rejectedAttempts = 0;
+                isolatedEventCount = Math.max(isolatedEventCount - eventCount, 0);
+            }
+        } catch (Exception e) {
+            relayErrorCounter.increment();
+            logger.error("Error relaying TransferEvents, {} pending: {}", transferEventOutbox.getPendingCount(), e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Count a rejection of the batch at the commit offset. Once rejected relay-max-attempts times,
+     * a batch of several events is split into single events and a single event is parked.
+     *
+     * @param outboxBatch
+     * @return false if the batch is to be retried after relay-retry-interval-ms
+     */
+    private boolean setAside(OutboxBatch outboxBatch) throws IOException {
+        if (++rejectedAttempts < relayMaxAttempts) {
+            return false;
+        }
+        rejectedAttempts = 0;
+        int eventCount = outboxBatch.getTransferEventDtoList().size();
+        if (eventCount > 1) {
+            logger.warn("Batch of {} TransferEvents rejected {} times, relaying its events one at a time", eventCount, relayMaxAttempts);
+            isolatedEventCount = eventCount;
+            return true;
+        }
+        logger.error("TransferEvent {} rejected {} times, parked", outboxBatch.getTransferEventDtoList().get(0), relayMaxAttempts);
+        transferEventOutbox.park(outboxBatch);
+        parkedCounter.increment();
+        isolatedEventCount = Math.max(isolatedEventCount - 1, 0);
+        return true;
+    }
+}
@@ -0,0 +1,17 @@
+package org.transfer.api.service;
+
+
+import org.common.api.request.TransferRequest;
+import org.common.api.response.TransferResponse;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveTransferService {
+
+    /**
+     * Transfer Orchestrator method, completes without blocking the calling thread,
+     * applying the transfer at most once per idempotency key
+     * @param transferRequest
+     * @param idempotencyKey
+     */
+    Mono<TransferResponse> transfer(TransferRequest transferRequest, String idempotencyKey);
+}
@@ -3,13 +3,19 @@ package org.transfer.api.service;
 
 import org.common.api.request.AccountDetailsRequest;
 import org.common.api.request.RecordTransferEventRequest;
+import org.common.api.request.RecordTransferEventsRequest;
 import org.common.api.request.TransferRequest;
 import org.common.api.request.UpdateAccountDetailsRequest;
 import org.common.api.response.AccountDetailsResponse;
 import org.common.api.response.RecordTransferEventResponse;
+import org.common.api.response.RecordTransferEventsResponse;
 import org.common.api.response.TransferResponse;
 import org.common.api.response.UpdateAccountDetailsResponse;
 
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
 public interface TransferService {
 
     /**
@@ -29,9 +35,35 @@ public interface TransferService {
      */
     RecordTransferEventResponse recordTransferEvent(RecordTransferEventRequest recordTransferEventRequest);
 
+    /**
+     * Record a batch of TransferEvents in Event Records
+     */
+    RecordTransferEventsResponse recordTransferEvents(RecordTransferEventsRequest recordTransferEventsRequest);
+
     /**
      * Transfer Orchestrator method
      * @param transferRequest
      */
     TransferResponse transfer(TransferRequest transferRequest);
+
+    /**
+     * Transfer Orchestrator method, executing the transfer at most once per idempotency key
+     * @param transferRequest
+     * @param idempotencyKey
+     */
+    TransferResponse transfer(TransferRequest transferRequest, String idempotencyKey);
+
+    /**
+     * Transfer a batch with a single best effort account service call
+     * @param transferRequestList
+     * @return responses in request order
+     */
+    List<TransferResponse> transfer(List<TransferRequest> transferRequestList);
+
+    /**
+     * Transfer a stream of requests in batches, with a bounded number of batches in flight
+     * @param transferRequests
+     * @param transferResponseConsumer receives the responses in request order
+     */
+    void transfer(Iterator<TransferRequest> transferRequests, Consumer<TransferResponse> transferResponseConsumer);
 }
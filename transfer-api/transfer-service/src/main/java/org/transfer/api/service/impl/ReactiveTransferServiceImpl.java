@@ -0,0 +1,206 @@
+package org.transfer.api.service.impl;
+
+
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import org.common.api.dto.TransferEventDto;
+import org.common.api.dto.TransferFundDto;
+import org.common.api.request.RecordTransferEventRequest;
+import org.common.api.request.TransferRequest;
+import org.common.api.request.UpdateAccountDetailsRequest;
+import org.common.api.response.RecordTransferEventResponse;
+import org.common.api.response.TransferResponse;
+import org.common.api.response.UpdateAccountDetailsResponse;
+import org.common.api.util.ErrorCode;
+import org.common.api.util.RequestDeadline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.transfer.api.clients.RequestDeadlineCapability;
+import org.transfer.api.clients.ResilienceCapability;
+import org.transfer.api.outbox.TransferEventOutbox;
+import org.transfer.api.service.ReactiveTransferService;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.stream.Collectors;
+
+/**
+ * Non-blocking variant of {@link TransferServiceImpl}, calling account and event service
+ * with a load balanced WebClient on the reactor-netty event loop. No thread waits for a
+ * response, so the number of transfers in flight is not bounded by a thread pool.
+ * <p>
+ * Follows the same transfer process as TransferServiceImpl. Calls are guarded by the circuit
+ * breakers and bulkheads of the Feign clients, carry the request deadline as the Feign clients
+ * do and are bounded by it and by transfer.reactive.response-timeout-ms, a timed out account
+ * update fails the transfer. Account service applies a transfer at most once per idempotency key.
+ */
+@Service
+public class ReactiveTransferServiceImpl implements ReactiveTransferService {
+
+    private final static Logger logger = LoggerFactory.getLogger(ReactiveTransferServiceImpl.class);
+
+    @Autowired
+    private WebClient.Builder loadBalancedWebClientBuilder;
+
+    @Autowired
+    private TransferEventOutbox transferEventOutbox;
+
+    @Autowired
+    private ResilienceCapability resilienceCapability;
+
+    @Autowired
+    private RequestDeadlineCapability requestDeadlineCapability;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${transfer.reactive.account-service-url:http://account-service}")
+    private String accountServiceUrl;
+
+    @Value("${transfer.reactive.event-service-url:http://event-service}")
+    private String eventServiceUrl;
+
+    @Value("${transfer.reactive.connect-timeout-ms:1000}")
+    private int connectTimeoutMs;
+
+    @Value("${transfer.reactive.response-timeout-ms:5000}")
+    private long responseTimeoutMs;
+
+    private WebClient webClient;
+
+    private Counter expiredCounter;
+
+    @PostConstruct
+    public void init() {
+        expiredCounter = Counter.builder("transfer.requests.expired").register(meterRegistry);
+        HttpClient httpClient = HttpClient.create()
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .responseTimeout(Duration.ofMillis(responseTimeoutMs));
+        webClient = loadBalancedWebClientBuilder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+
+    /**
+     * Transfer with an optional idempotency key, called on the thread of the request so its
+     * deadline is read before the calls run on the event loop.
+     *
+     * @param transferRequest
+     * @param idempotencyKey
+     * @return
+     */
+    @Override
+    public Mono<TransferResponse> transfer(TransferRequest transferRequest, String idempotencyKey) {
+
+        if (RequestDeadline.isExpired()) {
+            logger.error("Deadline of the request exceeded, transfer not sent to account service");
+            expiredCounter.increment();
+            return Mono.just(getFailedTransferResponse(transferRequest, ErrorCode.REQUEST_DEADLINE_EXCEEDED));
+        }
+
+        // Prepare Commit Transfer Request
+        TransferFundDto transferFundDto = new TransferFundDto(transferRequest.getSourceAccountNumber(),
+                transferRequest.getDestinationAccountNumber(), transferRequest.getTransferAmount());
+
+        Mono<UpdateAccountDetailsResponse> updateAccountBalance = post(accountServiceUrl + "/account-api/update")
+                .bodyValue(new UpdateAccountDetailsRequest(transferFundDto, idempotencyKey))
+                .retrieve()
+                .bodyToMono(UpdateAccountDetailsResponse.class)
+                .timeout(getTimeout());
+
+        // Fails fast while account service is unavailable
+        return resilienceCapability.execute("account-service", updateAccountBalance)
+                .flatMap(updateAccountBalanceResponse -> {
+                    TransferResponse transferResponse = new TransferResponse();
+                    transferResponse.setSourceAccountNumber(transferRequest.getSourceAccountNumber());
+                    transferResponse.setDestinationAccountNumber(transferRequest.getDestinationAccountNumber());
+                    transferResponse.setTransferAmount(transferRequest.getTransferAmount());
+
+                    // Errors from Account Service end the transfer flow
+                    if (updateAccountBalanceResponse.getErrorCodeList() != null
+                            && updateAccountBalanceResponse.getErrorCodeList().size() > 0) {
+                        logger.error("Error executing fund transfer: {}", updateAccountBalanceResponse.getErrorCodeList());
+                        transferResponse.setTransferStatus(false);
+                        transferResponse.setErrors(updateAccountBalanceResponse.getErrorCodeList().stream().map(errorCode -> errorCode.getErrorMessage()).collect(Collectors.toList()));
+                        return Mono.just(transferResponse);
+                    }
+
+                    transferResponse.setTransferStatus(true);
+                    return recordTransferEvent(transferRequest, idempotencyKey).thenReturn(transferResponse);
+                })
+                .onErrorResume(e -> e instanceof CallNotPermittedException || e instanceof BulkheadFullException, e -> {
+                    logger.error("Error executing fund transfer: {}", e.getMessage());
+                    return Mono.just(getFailedTransferResponse(transferRequest, ErrorCode.ACCOUNT_SERVICE_UNAVAILABLE));
+                });
+    }
+
+    /**
+     * Append the transfer event to the outbox off the event loop, as the append waits for the
+     * disk. If the outbox is full or not writable the event is recorded with event service directly.
+     * A failure does not fail the transfer, which is already successful.
+     */
+    private Mono<Void> recordTransferEvent(TransferRequest transferRequest, String idempotencyKey) {
+        TransferEventDto transferEventDto = new TransferEventDto();
+        transferEventDto.setTransferAmount(transferRequest.getTransferAmount());
+        transferEventDto.setSourceAccountNumber(transferRequest.getSourceAccountNumber());
+        transferEventDto.setDestinationAccountNumber(transferRequest.getDestinationAccountNumber());
+        transferEventDto.setEventUuid(TransferServiceImpl.getEventUuid(idempotencyKey));
+
+        return Mono.fromCallable(() -> transferEventOutbox.tryAppend(transferEventDto))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    logger.error("Error appending TransferEvent to outbox :{}", e.getMessage(), e);
+                    return Mono.just(false);
+                })
+                .flatMap(appended -> appended ? Mono.empty() : recordTransferEventDirectly(transferEventDto));
+    }
+
+    private Mono<Void> recordTransferEventDirectly(TransferEventDto transferEventDto) {
+        Mono<RecordTransferEventResponse> recordTransferEvent = post(eventServiceUrl + "/event-api/transfer-event")
+                .bodyValue(new RecordTransferEventRequest(transferEventDto))
+                .retrieve()
+                .bodyToMono(RecordTransferEventResponse.class)
+                .timeout(getTimeout());
+        return resilienceCapability.execute("event-service", recordTransferEvent)
+                .then()
+                .onErrorResume(e -> {
+                    logger.error("Error recording TransferEvent {} :{}", transferEventDto, e.getMessage(), e);
+                    return Mono.empty();
+                });
+    }
+
+    // Calls assembled on the thread of the request send its deadline budget as the Feign clients do and are bounded by it
+    private WebClient.RequestBodySpec post(String uri) {
+        WebClient.RequestBodySpec request = webClient.post().uri(uri);
+        if (RequestDeadline.isPresent()) {
+            request.header(RequestDeadline.HEADER, String.valueOf(requestDeadlineCapability.getBudgetMs()));
+        }
+        return request;
+    }
+
+    private Duration getTimeout() {
+        return Duration.ofMillis(Math.max(1, Math.min(responseTimeoutMs, RequestDeadline.getRemainingMs())));
+    }
+
+    private TransferResponse getFailedTransferResponse(TransferRequest transferRequest, ErrorCode errorCode) {
+        TransferResponse transferResponse = new TransferResponse();
+        transferResponse.setSourceAccountNumber(transferRequest.getSourceAccountNumber());
+        transferResponse.setDestinationAccountNumber(transferRequest.getDestinationAccountNumber());
+        transferResponse.setTransferAmount(transferRequest.getTransferAmount());
+        transferResponse.setTransferStatus(false);
+        transferResponse.setErrors(Collections.singletonList(errorCode.getErrorMessage()));
+        return transferResponse;
+    }
+}
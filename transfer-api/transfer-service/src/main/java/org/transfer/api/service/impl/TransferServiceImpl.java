@@ -1,25 +1,58 @@
 package org.transfer.api.service.impl;
 
 
+import feign.RetryableException;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.common.api.dto.TransferEventDto;
 import org.common.api.dto.TransferFundDto;
 import org.common.api.request.AccountDetailsRequest;
 import org.common.api.request.RecordTransferEventRequest;
+import org.common.api.request.RecordTransferEventsRequest;
 import org.common.api.request.TransferRequest;
+import org.common.api.request.UpdateAccountDetailsBatchRequest;
 import org.common.api.request.UpdateAccountDetailsRequest;
 import org.common.api.response.AccountDetailsResponse;
 import org.common.api.response.RecordTransferEventResponse;
+import org.common.api.response.RecordTransferEventsResponse;
 import org.common.api.response.TransferResponse;
+import org.common.api.response.UpdateAccountDetailsBatchResponse;
 import org.common.api.response.UpdateAccountDetailsResponse;
+import org.common.api.util.ErrorCode;
+import org.common.api.util.RequestDeadline;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.ObjectFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
+import org.transfer.api.cache.TransferResponseCache;
 import org.transfer.api.clients.AccountServiceClient;
 import org.transfer.api.clients.EventServiceClient;
+import org.transfer.api.outbox.TransferEventOutbox;
 import org.transfer.api.service.TransferService;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -30,53 +63,44 @@ import java.util.stream.Collectors;
 public class TransferServiceImpl implements TransferService {
 
     private final static Logger logger = LoggerFactory.getLogger(TransferServiceImpl.class);
-    private final static Logger eventLogger = LoggerFactory.getLogger("EVENT_LOGGER");
 
     @Autowired
     private AccountServiceClient accountServiceClient;
 
     @Autowired
     private EventServiceClient eventServiceClient;
-    @Autowired
-    private ObjectFactory<AccountDetailsRequest> accountDetailsRequestObjectFactory;
-    @Autowired
-    private ObjectFactory<RecordTransferEventRequest> recordTransferEventRequestObjectFactory;
 
     @Autowired
-    private ObjectFactory<UpdateAccountDetailsRequest> updateAccountDetailsRequestObjectFactory;
+    private TransferEventOutbox transferEventOutbox;
 
     @Autowired
-    private ObjectFactory<TransferResponse> transferResponseObjectFactory;
+    private TransferResponseCache transferResponseCache;
 
     @Autowired
-    private ObjectFactory<TransferFundDto> transferFundDtoObjectFactory;
+    private MeterRegistry meterRegistry;
 
-    @Autowired
-    private ObjectFactory<TransferEventDto> transferEventDtoObjectFactory;
+    @Value("${transfer.bulk.batch-size:100}")
+    private int bulkBatchSize;
 
-    private TransferResponse getTransferResponse() {
-        return transferResponseObjectFactory.getObject();
-    }
+    @Value("${transfer.bulk.parallelism:4}")
+    private int bulkParallelism;
 
-    private AccountDetailsRequest getAccountDetailsRequest() {
-        return accountDetailsRequestObjectFactory.getObject();
-    }
+    @Value("${transfer.bulk.threads:16}")
+    private int bulkThreads;
 
-    private RecordTransferEventRequest getRecordTransferEventRequest() {
-        return recordTransferEventRequestObjectFactory.getObject();
-    }
+    private ExecutorService bulkTransferExecutor;
 
-    private UpdateAccountDetailsRequest getUpdateAccountDetailsRequest() {
-        return updateAccountDetailsRequestObjectFactory.getObject();
-    }
+    private Counter expiredCounter;
 
-    private TransferFundDto getTransferFundDto() {
-        return transferFundDtoObjectFactory.getObject();
+    @PostConstruct
+    public void init() {
+        expiredCounter = Counter.builder("transfer.requests.expired").register(meterRegistry);
+        bulkTransferExecutor = Executors.newFixedThreadPool(bulkThreads, new CustomizableThreadFactory("bulk-transfer-"));
     }
 
-
-    private TransferEventDto getTransferEventDto() {
-        return transferEventDtoObjectFactory.getObject();
+    @PreDestroy
+    public void destroy() {
+        bulkTransferExecutor.shutdown();
     }
 
     /**
@@ -112,6 +136,53 @@ public class TransferServiceImpl implements TransferService {
         return eventServiceClient.recordTransferEvent(recordTransferEventRequest);
     }
 
+    /**
+     * Service method record a batch of transfer events with event service
+     *
+     * @param recordTransferEventsRequest
+     * @return
+     */
+    @Override
+    public RecordTransferEventsResponse recordTransferEvents(RecordTransferEventsRequest recordTransferEventsRequest) {
+        return eventServiceClient.recordTransferEvents(recordTransferEventsRequest);
+    }
+
+    @Override
+    public TransferResponse transfer(TransferRequest transferRequest) {
+        return transfer(transferRequest, null);
+    }
+
+    /**
+     * Transfer with an optional idempotency key. Repeats of a successful transfer and concurrent
+     * duplicates get the response of one execution from the {@link TransferResponseCache}, and
+     * account service applies the transfer at most once per key. A key reused for a different
+     * source, destination or amount fails with IDEMPOTENCY_KEY_REUSED.
+     *
+     * @param transferRequest
+     * @param idempotencyKey
+     * @return
+     */
+    @Override
+    public TransferResponse transfer(TransferRequest transferRequest, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return executeTransfer(transferRequest, null);
+        }
+        TransferResponse transferResponse = transferResponseCache.getOrExecute(idempotencyKey, () -> executeTransfer(transferRequest, idempotencyKey));
+        if (!isSameTransfer(transferResponse, transferRequest)) {
+            return getFailedTransferResponse(transferRequest, Collections.singletonList(ErrorCode.IDEMPOTENCY_KEY_REUSED));
+        }
+        return transferResponse;
+    }
+
+    // Account numbers are compared ignoring case as account service does, amounts regardless of their scale
+    private boolean isSameTransfer(TransferResponse transferResponse, TransferRequest transferRequest) {
+        BigDecimal transferAmount = transferResponse.getTransferAmount();
+        return String.valueOf(transferResponse.getSourceAccountNumber()).equalsIgnoreCase(String.valueOf(transferRequest.getSourceAccountNumber()))
+                && String.valueOf(transferResponse.getDestinationAccountNumber()).equalsIgnoreCase(String.valueOf(transferRequest.getDestinationAccountNumber()))
+                && (transferAmount == null ? transferRequest.getTransferAmount() == null
+                : transferRequest.getTransferAmount() != null && transferAmount.compareTo(transferRequest.getTransferAmount()) == 0);
+    }
+
     /**
      * Transfer Process
      * -------------------------------------------
@@ -119,29 +190,43 @@ public class TransferServiceImpl implements TransferService {
      * 1. Process Transfer -- Send account details to Account service to update their balances
      * 2. If Transfer is successful
      *   2.1. Update Transfer Response
-     *   2.2. Record Transfer Event or Write Transfer Event for a later reconcile
+     *   2.2. Append Transfer Event to the outbox, relayed to Event service in the background,
+     *        or record it with Event service directly if the outbox is full,
+     *        deferring it to the outbox anyway if Event service is unavailable
      * 3. If Transfer failed
-     *   3.1. Return with appropriate error
+     *   3.1. Return with appropriate error, ACCOUNT_SERVICE_UNAVAILABLE without waiting
+     *        while the Account service circuit breaker is open or its bulkhead is full,
+     *        REQUEST_DEADLINE_EXCEEDED without calling Account service once the deadline of the request passed
      *   3.2. Do not log this transfer event in database as it's unsuccessful
      * --------------------------------------------
      */
-    @Override
-    public TransferResponse transfer(TransferRequest transferRequest) {
+    private TransferResponse executeTransfer(TransferRequest transferRequest, String idempotencyKey) {
 
         // Prepare TransferResponse
-        TransferResponse transferResponse = getTransferResponse();
+        TransferResponse transferResponse = new TransferResponse();
         prepareTransferResponse(transferResponse, transferRequest);
 
         // Prepare Commit Transfer Request
-        UpdateAccountDetailsRequest updateAccountDetailsRequest = getUpdateAccountDetailsRequest();
-        TransferFundDto transferFundDto = getTransferFundDto();
+        UpdateAccountDetailsRequest updateAccountDetailsRequest = new UpdateAccountDetailsRequest();
+        TransferFundDto transferFundDto = new TransferFundDto();
         transferFundDto.setSourceAccountNumber(transferRequest.getSourceAccountNumber());
         transferFundDto.setDestinationAccountNumber(transferRequest.getDestinationAccountNumber());
         transferFundDto.setTransferAmount(transferRequest.getTransferAmount());
         updateAccountDetailsRequest.setTransferFundDto(transferFundDto);
+        updateAccountDetailsRequest.setIdempotencyKey(idempotencyKey);
 
-        // Execute commit transfer request
-        UpdateAccountDetailsResponse updateAccountBalanceResponse = updateAccountBalance(updateAccountDetailsRequest);
+        if (isDeadlineExceeded()) {
+            return getFailedTransferResponse(transferRequest, Collections.singletonList(ErrorCode.REQUEST_DEADLINE_EXCEEDED));
+        }
+
+        // Execute commit transfer request, failing fast while account service is unavailable
+        UpdateAccountDetailsResponse updateAccountBalanceResponse;
+        try {
+            updateAccountBalanceResponse = updateAccountBalance(updateAccountDetailsRequest);
+        } catch (CallNotPermittedException | BulkheadFullException e) {
+            logger.error("Error executing fund transfer: {}", e.getMessage());
+            return getFailedTransferResponse(transferRequest, Collections.singletonList(ErrorCode.ACCOUNT_SERVICE_UNAVAILABLE));
+        }
 
         // Check if there are any errors from Account Service, if any
         // then update transfer response and exit the transfer flow
@@ -160,24 +245,254 @@ public class TransferServiceImpl implements TransferService {
         transferResponse.setTransferAmount(transferRequest.getTransferAmount());
 
         // Record Transfer event
-        RecordTransferEventRequest recordTransferEventRequest = getRecordTransferEventRequest();
-        TransferEventDto transferEventDto = getTransferEventDto();
+        recordTransferEvents(Collections.singletonList(getTransferEventDto(transferRequest, idempotencyKey)));
+
+        // Return transfer response
+        return transferResponse;
+    }
+
+    /**
+     * Bulk Transfer Process
+     * -------------------------------------------
+     *
+     * 1. Send all transfers to Account service in one best effort batch, each valid transfer is applied
+     * 2. Prepare a Transfer Response per transfer, in request order
+     * 3. Append the Transfer Events of the successful transfers to the outbox with a single sync
+     * 4. If the batch could not be sent, none of the transfers was applied and all fail with an internal error,
+     *    or ACCOUNT_SERVICE_UNAVAILABLE while the circuit breaker is open or the bulkhead is full
+     * 5. If the batch was sent but no response came back, e.g. the call timed out at the deadline,
+     *    any of the transfers may have been applied and all fail with TRANSFER_OUTCOME_UNKNOWN, as they do
+     *    when Account service fails the whole batch with ERROR_UPDATING_ACCOUNT_INFO or REQUEST_DEADLINE_EXCEEDED
+     * 6. If the deadline of the request passed, none is sent and all fail with REQUEST_DEADLINE_EXCEEDED
+     * --------------------------------------------
+     */
+    @Override
+    public List<TransferResponse> transfer(List<TransferRequest> transferRequestList) {
+        if (isDeadlineExceeded()) {
+            return transferRequestList.stream()
+                    .map(transferRequest -> getFailedTransferResponse(transferRequest,
+                            Collections.singletonList(ErrorCode.REQUEST_DEADLINE_EXCEEDED)))
+                    .collect(Collectors.toList());
+        }
+
+        List<TransferFundDto> transferFundDtoList = new ArrayList<>(transferRequestList.size());
+        for (TransferRequest transferRequest : transferRequestList) {
+            TransferFundDto transferFundDto = new TransferFundDto();
+            transferFundDto.setSourceAccountNumber(transferRequest.getSourceAccountNumber());
+            transferFundDto.setDestinationAccountNumber(transferRequest.getDestinationAccountNumber());
+            transferFundDto.setTransferAmount(transferRequest.getTransferAmount());
+            transferFundDtoList.add(transferFundDto);
+        }
+
+        UpdateAccountDetailsBatchResponse updateAccountDetailsBatchResponse;
+        ErrorCode callErrorCode = ErrorCode.INTERNAL_SERVER_ERROR;
+        try {
+            updateAccountDetailsBatchResponse = accountServiceClient.updateAccountDetailsBatch(
+                    new UpdateAccountDetailsBatchRequest(transferFundDtoList, false));
+        } catch (CallNotPermittedException | BulkheadFullException e) {
+            logger.error("Error executing batch of {} fund transfers: {}", transferRequestList.size(), e.getMessage());
+            updateAccountDetailsBatchResponse = null;
+            callErrorCode = ErrorCode.ACCOUNT_SERVICE_UNAVAILABLE;
+        } catch (Exception e) {
+            logger.error("Error executing batch of {} fund transfers: {}", transferRequestList.size(), e.getMessage(), e);
+            updateAccountDetailsBatchResponse = null;
+            if (!isNotSent(e)) {
+                callErrorCode = ErrorCode.TRANSFER_OUTCOME_UNKNOWN;
+            }
+        }
+        if (updateAccountDetailsBatchResponse == null || updateAccountDetailsBatchResponse.getErrorCodeList() == null
+                || !updateAccountDetailsBatchResponse.getErrorCodeList().isEmpty()) {
+            List<ErrorCode> errorCodeList = updateAccountDetailsBatchResponse == null || updateAccountDetailsBatchResponse.getErrorCodeList() == null
+                    ? Collections.singletonList(callErrorCode) : getBatchErrorCodeList(updateAccountDetailsBatchResponse.getErrorCodeList());
+            return transferRequestList.stream()
+                    .map(transferRequest -> getFailedTransferResponse(transferRequest, errorCodeList))
+                    .collect(Collectors.toList());
+        }
+
+        List<TransferResponse> transferResponseList = new ArrayList<>(transferRequestList.size());
+        List<TransferEventDto> transferEventDtoList = new ArrayList<>();
+        for (int i = 0; i < transferRequestList.size(); i++) {
+            TransferRequest transferRequest = transferRequestList.get(i);
+            List<ErrorCode> errorCodeList = updateAccountDetailsBatchResponse.getUpdateAccountDetailsResponseList().get(i).getErrorCodeList();
+            if (errorCodeList != null && !errorCodeList.isEmpty()) {
+                transferResponseList.add(getFailedTransferResponse(transferRequest, errorCodeList));
+                continue;
+            }
+            TransferResponse transferResponse = new TransferResponse();
+            prepareTransferResponse(transferResponse, transferRequest);
+            transferResponse.setTransferStatus(true);
+            transferResponseList.add(transferResponse);
+            transferEventDtoList.add(getTransferEventDto(transferRequest, null));
+        }
+
+        recordTransferEvents(transferEventDtoList);
+        return transferResponseList;
+    }
+
+    // A batch failed by Account service, or past its deadline there, may have committed some of its transfers
+    private List<ErrorCode> getBatchErrorCodeList(List<ErrorCode> errorCodeList) {
+        if (errorCodeList.contains(ErrorCode.ERROR_UPDATING_ACCOUNT_INFO) || errorCodeList.contains(ErrorCode.REQUEST_DEADLINE_EXCEEDED)) {
+            return Collections.singletonList(ErrorCode.TRANSFER_OUTCOME_UNKNOWN);
+        }
+        return errorCodeList;
+    }
+
+    /**
+     * Transfer requests in batches of transfer.bulk.batch-size on the bulk transfer executor.
+     * At most transfer.bulk.parallelism batches of a stream are in flight, and the responses
+     * of a batch are handed over once it and all batches before it completed, so only the
+     * batches in flight are held in memory.
+     *
+     * @param transferRequests
+     * @param transferResponseConsumer
+     */
+    @Override
+    public void transfer(Iterator<TransferRequest> transferRequests, Consumer<TransferResponse> transferResponseConsumer) {
+        Deque<Future<List<TransferResponse>>> batchesInFlight = new ArrayDeque<>();
+        RuntimeException failure = null;
+        try {
+            List<TransferRequest> transferRequestList = new ArrayList<>(bulkBatchSize);
+            while (transferRequests.hasNext()) {
+                transferRequestList.add(transferRequests.next());
+                if (transferRequestList.size() == bulkBatchSize) {
+                    submitBatch(transferRequestList, batchesInFlight, transferResponseConsumer);
+                    transferRequestList = new ArrayList<>(bulkBatchSize);
+                }
+            }
+            if (!transferRequestList.isEmpty()) {
+                submitBatch(transferRequestList, batchesInFlight, transferResponseConsumer);
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+
+        // Batches already in flight are waited for even if the stream or a response failed,
+        // and the first error is thrown with the later ones suppressed
+        while (!batchesInFlight.isEmpty()) {
+            try {
+                completeBatch(batchesInFlight.poll(), transferResponseConsumer);
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void submitBatch(List<TransferRequest> transferRequestList, Deque<Future<List<TransferResponse>>> batchesInFlight,
+                             Consumer<TransferResponse> transferResponseConsumer) {
+        while (batchesInFlight.size() >= bulkParallelism
+                || (!batchesInFlight.isEmpty() && batchesInFlight.peek().isDone())) {
+            completeBatch(batchesInFlight.poll(), transferResponseConsumer);
+        }
+        // Batches run under the deadline of the request streaming them
+        Long deadline = RequestDeadline.get();
+        batchesInFlight.add(bulkTransferExecutor.submit(() -> {
+            RequestDeadline.set(deadline);
+            try {
+                return transfer(transferRequestList);
+            } finally {
+                RequestDeadline.clear();
+            }
+        }));
+    }
+
+    private void completeBatch(Future<List<TransferResponse>> batch, Consumer<TransferResponse> transferResponseConsumer) {
+        try {
+            batch.get().forEach(transferResponseConsumer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a batch of transfers", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error executing a batch of transfers", e.getCause());
+        }
+    }
+
+    /**
+     * Append Transfer Events to the outbox, or record them with event service directly if the
+     * outbox is full or not writable.
+     */
+    private void recordTransferEvents(List<TransferEventDto> transferEventDtoList) {
+        try {
+            if (transferEventOutbox.tryAppend(transferEventDtoList)) {
+                return;
+            }
+        } catch (Exception e) {
+            // Outbox not writable, record the events with event service directly
+            logger.error("Error appending TransferEvents to outbox :{}", e.getMessage(), e);
+        }
+        transferEventDtoList.forEach(this::recordTransferEventDirectly);
+    }
+
+    // A call failing to connect was never received by account service, any other failure may come after it applied the call
+    private boolean isNotSent(Exception e) {
+        return (e instanceof RetryableException || e instanceof UncheckedIOException)
+                && (e.getCause() instanceof ConnectException || e.getCause() instanceof UnknownHostException);
+    }
+
+    private boolean isDeadlineExceeded() {
+        if (!RequestDeadline.isExpired()) {
+            return false;
+        }
+        logger.error("Deadline of the request exceeded, transfer not sent to account service");
+        expiredCounter.increment();
+        return true;
+    }
+
+    private TransferEventDto getTransferEventDto(TransferRequest transferRequest, String idempotencyKey) {
+        TransferEventDto transferEventDto = new TransferEventDto();
+        transferEventDto.setTransferAmount(transferRequest.getTransferAmount());
+        transferEventDto.setSourceAccountNumber(transferRequest.getSourceAccountNumber());
+        transferEventDto.setDestinationAccountNumber(transferRequest.getDestinationAccountNumber());
+        transferEventDto.setEventUuid(getEventUuid(idempotencyKey));
+        return transferEventDto;
+    }
+
+    /**
+     * Account service reports a retry of an applied transfer as applied again, so the event of a
+     * transfer with an idempotency key gets a uuid derived from the key and event service skips
+     * the event of the retry, also when the retry reaches another instance or the
+     * TransferResponseCache no longer holds the first response.
+     *
+     * @param idempotencyKey
+     * @return null without a key, the outbox then gives the event a random uuid
+     */
+    static String getEventUuid(String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return null;
+        }
+        return UUID.nameUUIDFromBytes(("transfer-event:" + idempotencyKey).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private TransferResponse getFailedTransferResponse(TransferRequest transferRequest, List<ErrorCode> errorCodeList) {
+        TransferResponse transferResponse = new TransferResponse();
+        prepareTransferResponse(transferResponse, transferRequest);
+        transferResponse.setTransferStatus(false);
+        transferResponse.setErrors(errorCodeList.stream().map(ErrorCode::getErrorMessage).collect(Collectors.toList()));
+        return transferResponse;
+    }
+
+    private void recordTransferEventDirectly(TransferEventDto transferEventDto) {
+        RecordTransferEventRequest recordTransferEventRequest = new RecordTransferEventRequest();
         try {
-            transferEventDto.setTransferAmount(transferRequest.getTransferAmount());
-            transferEventDto.setSourceAccountNumber(transferRequest.getSourceAccountNumber());
-            transferEventDto.setDestinationAccountNumber(transferRequest.getDestinationAccountNumber());
             recordTransferEventRequest.setTransferEventDto(transferEventDto);
             recordTransferEvent(recordTransferEventRequest);
+            return;
         } catch (Exception e) {
-            // log recordTransferEvent request failure
-            logger.error("Error recording TransferEvent :{}", e.getMessage(), e);
-            eventLogger.info(String.valueOf(transferEventDto));
             // It is not required to update the customer of this failure as
-            // transfer is already successful
+            // transfer is already successful, the event is deferred to the outbox instead
+            logger.error("Error recording TransferEvent {} :{}", transferEventDto, e.getMessage());
+        }
+        try {
+            transferEventOutbox.append(transferEventDto);
+        } catch (Exception e) {
+            logger.error("Error appending TransferEvent {} to outbox :{}", transferEventDto, e.getMessage(), e);
         }
-
-        // Return transfer response
-        return transferResponse;
     }
 
     private void prepareTransferResponse(TransferResponse transferResponse, TransferRequest transferRequest) {
@@ -185,5 +500,4 @@ public class TransferServiceImpl implements TransferService {
         transferResponse.setSourceAccountNumber(transferRequest.getSourceAccountNumber());
         transferResponse.setDestinationAccountNumber(transferRequest.getDestinationAccountNumber());
     }
-
 }
@@ -0,0 +1,235 @@
+package org.transfer.api;
+
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.common.api.dto.TransferEventDto;
+import org.common.api.request.TransferRequest;
+import org.common.api.response.RecordTransferEventResponse;
+import org.common.api.response.TransferResponse;
+import org.common.api.response.UpdateAccountDetailsResponse;
+import org.common.api.util.ErrorCode;
+import org.common.api.util.RequestDeadline;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.transfer.api.clients.ResilienceCapability;
+import org.transfer.api.controller.ReactiveTransferServiceController;
+import org.transfer.api.service.impl.ReactiveTransferServiceImpl;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@ActiveProfiles("test")
+@TestPropertySource(locations = "classpath:application-test.yaml")
+public class ReactiveTransferServiceControllerTest {
+
+    @DynamicPropertySource
+    static void outboxProperties(DynamicPropertyRegistry registry) throws IOException {
+        Path outboxDirectory = Files.createTempDirectory("transfer-outbox");
+        registry.add("transfer.outbox.directory", outboxDirectory::toString);
+    }
+
+    @Autowired
+    private ReactiveTransferServiceImpl reactiveTransferService;
+
+    @Autowired
+    private ReactiveTransferServiceController reactiveTransferServiceController;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ResilienceCapability resilienceCapability;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final List<ClientRequest> clientRequests = new CopyOnWriteArrayList<>();
+
+    /**
+     * Replace the WebClient of the service with one answering account and event service
+     * calls with the given responses, a null response fails the call with status 500.
+     * The requests sent are kept in clientRequests.
+     */
+    private void mockWebClient(UpdateAccountDetailsResponse updateAccountDetailsResponse,
+                               RecordTransferEventResponse recordTransferEventResponse) throws NoSuchFieldException, IllegalAccessException {
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    clientRequests.add(request);
+                    Object response = request.url().getPath().startsWith("/account-api")
+                            ? updateAccountDetailsResponse : recordTransferEventResponse;
+                    if (response == null) {
+                        return Mono.just(ClientResponse.create(HttpStatus.INTERNAL_SERVER_ERROR).build());
+                    }
+                    return Mono.just(ClientResponse.create(HttpStatus.OK)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body(toJson(response))
+                            .build());
+                })
+                .build();
+
+        Field fieldWebClient = ReactiveTransferServiceImpl.class.getDeclaredField("webClient");
+        fieldWebClient.setAccessible(true);
+        fieldWebClient.set(reactiveTransferService, webClient);
+    }
+
+    private String toJson(Object response) {
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private UpdateAccountDetailsResponse getUpdateAccountDetailsResponse(List<ErrorCode> errorCodeList) {
+        UpdateAccountDetailsResponse updateAccountDetailsResponse = new UpdateAccountDetailsResponse();
+        updateAccountDetailsResponse.setErrorCodeList(errorCodeList);
+        return updateAccountDetailsResponse;
+    }
+
+    private RecordTransferEventResponse getRecordTransferEventResponse() {
+        RecordTransferEventResponse recordTransferEventResponse = new RecordTransferEventResponse();
+        recordTransferEventResponse.setTransferEventDto(new TransferEventDto(1, "sa1001", "sa1002", BigDecimal.valueOf(1000)));
+        return recordTransferEventResponse;
+    }
+
+    private TransferResponse transfer() {
+        TransferRequest transferRequest = new TransferRequest("sa1001", "sa1002", BigDecimal.valueOf(1000));
+        return reactiveTransferServiceController.transfer(transferRequest, null).block(Duration.ofSeconds(10));
+    }
+
+    @Test
+    @DisplayName("Test reactive transfer when account and event service returns no error")
+    void testTransferWhenAccountAndEventServiceReturnsNoError() throws Exception {
+        mockWebClient(getUpdateAccountDetailsResponse(new ArrayList<>()), getRecordTransferEventResponse());
+
+        TransferResponse transferResponse = transfer();
+
+        assertTrue(transferResponse.getSourceAccountNumber().equalsIgnoreCase("sa1001"));
+        assertTrue(transferResponse.getDestinationAccountNumber().equalsIgnoreCase("sa1002"));
+        assertTrue(transferResponse.getTransferAmount().compareTo(BigDecimal.valueOf(1000)) == 0);
+        assertTrue(transferResponse.getTransferStatus());
+        assertTrue(transferResponse.getErrors() == null);
+    }
+
+    @Test
+    @DisplayName("Test reactive transfer when account service returns an error")
+    void testTransferWhenAccountServiceReturnsError() throws Exception {
+        mockWebClient(getUpdateAccountDetailsResponse(Collections.singletonList(ErrorCode.INSUFFICIENT_FUNDS_FOR_TRANSFER)), getRecordTransferEventResponse());
+
+        TransferResponse transferResponse = transfer();
+
+        assertFalse(transferResponse.getTransferStatus());
+        assertTrue(transferResponse.getErrors().contains(ErrorCode.INSUFFICIENT_FUNDS_FOR_TRANSFER.getErrorMessage()));
+    }
+
+    @Test
+    @DisplayName("Test reactive transfer when event service fails")
+    void testTransferWhenEventServiceFails() throws Exception {
+        mockWebClient(getUpdateAccountDetailsResponse(new ArrayList<>()), null);
+
+        TransferResponse transferResponse = transfer();
+
+        assertTrue(transferResponse.getTransferStatus());
+        assertTrue(transferResponse.getErrors() == null);
+    }
+
+    @Test
+    @DisplayName("Test reactive transfer when account service fails")
+    void testTransferWhenAccountServiceFails() throws Exception {
+        mockWebClient(null, getRecordTransferEventResponse());
+
+        TransferResponse transferResponse = transfer();
+
+        assertFalse(transferResponse.getTransferStatus());
+        assertTrue(transferResponse.getErrors().contains(ErrorCode.INTERNAL_SERVER_ERROR.getErrorMessage()));
+    }
+
+    @Test
+    @DisplayName("Test reactive transfer propagates the request deadline and gives up once it passed")
+    void testTransferWhenRequestDeadlineExceeded() throws Exception {
+        mockWebClient(getUpdateAccountDetailsResponse(new ArrayList<>()), getRecordTransferEventResponse());
+        clientRequests.clear();
+        try {
+            RequestDeadline.start("500");
+            assertTrue(transfer().getTransferStatus());
+            long budgetMs = Long.parseLong(clientRequests.get(0).headers().getFirst(RequestDeadline.HEADER));
+            // The budget is sent on less the 20ms margin
+            assertTrue(budgetMs > 0 && budgetMs <= 480);
+
+            clientRequests.clear();
+            RequestDeadline.start("0");
+            TransferResponse transferResponse = transfer();
+
+            assertFalse(transferResponse.getTransferStatus());
+            assertTrue(transferResponse.getErrors().contains(ErrorCode.REQUEST_DEADLINE_EXCEEDED.getErrorMessage()));
+            assertTrue(clientRequests.isEmpty());
+        } finally {
+            RequestDeadline.clear();
+        }
+    }
+
+    @Test
+    @DisplayName("Test reactive calls are rejected without a call once the circuit breaker opened, and return their bulkhead permits")
+    void testReactiveCircuitBreaker() {
+        AtomicInteger calls = new AtomicInteger();
+        Mono<String> unavailableCall = Mono.defer(() -> {
+            calls.incrementAndGet();
+            return Mono.error(new IOException("Connection refused"));
+        });
+
+        for (int i = 0; i < 10; i++) {
+            assertThrows(IOException.class, () -> blockUnwrapped(resilienceCapability.execute("unavailable-reactive-service", unavailableCall)));
+        }
+        assertThrows(CallNotPermittedException.class, () -> blockUnwrapped(resilienceCapability.execute("unavailable-reactive-service", unavailableCall)));
+
+        assertTrue(calls.get() == 10);
+        assertTrue(meterRegistry.find("resilience4j.circuitbreaker.state")
+                .tags("name", "unavailable-reactive-service", "state", "open").gauge().value() == 1);
+        assertTrue(meterRegistry.find("resilience4j.bulkhead.available.concurrent.calls")
+                .tag("name", "unavailable-reactive-service").gauge().value()
+                == meterRegistry.find("resilience4j.bulkhead.max.allowed.concurrent.calls")
+                .tag("name", "unavailable-reactive-service").gauge().value());
+    }
+
+    // Mono.block wraps checked exceptions, unwrap them for assertThrows
+    private <T> T blockUnwrapped(Mono<T> mono) throws Throwable {
+        try {
+            return mono.block(Duration.ofSeconds(10));
+        } catch (RuntimeException e) {
+            throw Exceptions.unwrap(e);
+        }
+    }
+}
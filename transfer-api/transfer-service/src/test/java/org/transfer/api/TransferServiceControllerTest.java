@@ -1,42 +1,102 @@
 package org.transfer.api;
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.benmanes.caffeine.cache.Cache;
+import feign.Client;
+import feign.RequestTemplate;
+import feign.RetryableException;
+import feign.Target;
+import feign.codec.Decoder;
+import feign.codec.Encoder;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
 import org.common.api.dto.AccountDto;
 import org.common.api.dto.TransferEventDto;
 import org.common.api.dto.TransferFundDto;
 import org.common.api.exception.TransferException;
+import org.common.api.request.RecordTransferEventsRequest;
 import org.common.api.request.TransferRequest;
+import org.common.api.request.UpdateAccountDetailsBatchRequest;
 import org.common.api.response.AccountDetailsResponse;
 import org.common.api.response.RecordTransferEventResponse;
+import org.common.api.response.RecordTransferEventsResponse;
 import org.common.api.response.TransferResponse;
+import org.common.api.response.UpdateAccountDetailsBatchResponse;
 import org.common.api.response.UpdateAccountDetailsResponse;
 import org.common.api.util.ErrorCode;
+import org.common.api.util.RequestDeadline;
+import org.common.api.util.WireFormat;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.context.WebApplicationContext;
+import org.transfer.api.cache.TransferResponseCache;
 import org.transfer.api.clients.AccountServiceClient;
 import org.transfer.api.clients.EventServiceClient;
+import org.transfer.api.clients.RequestDeadlineCapability;
+import org.transfer.api.clients.ResilienceCapability;
+import org.transfer.api.clients.RouteConcurrencyInterceptor;
 import org.transfer.api.controller.TransferServiceController;
+import org.transfer.api.filter.RequestDeadlineFilter;
+import org.transfer.api.outbox.TransferEventOutbox;
+import org.transfer.api.outbox.TransferEventRelay;
 import org.transfer.api.service.TransferService;
 import org.transfer.api.service.impl.TransferServiceImpl;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.math.BigDecimal;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
 @AutoConfigureTestDatabase
@@ -44,6 +104,14 @@ import static org.mockito.Mockito.when;
 @TestPropertySource(locations = "classpath:application-test.yaml")
 public class TransferServiceControllerTest {
 
+    private static Path outboxDirectory;
+
+    @DynamicPropertySource
+    static void outboxProperties(DynamicPropertyRegistry registry) throws IOException {
+        outboxDirectory = Files.createTempDirectory("transfer-outbox");
+        registry.add("transfer.outbox.directory", outboxDirectory::toString);
+    }
+
     @Autowired
     private WebApplicationContext webApplicationContext;
 
@@ -59,6 +127,18 @@ public class TransferServiceControllerTest {
     @Autowired
     private TransferServiceController transferServiceController;
 
+    @Autowired
+    private TransferEventOutbox transferEventOutbox;
+
+    @Autowired
+    private TransferEventRelay transferEventRelay;
+
+    @Autowired
+    private TransferResponseCache transferResponseCache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @BeforeEach
     void mockFeignClientAndTransferObjects() throws NoSuchFieldException, IllegalAccessException {
 
@@ -78,6 +158,7 @@ public class TransferServiceControllerTest {
 
         RecordTransferEventResponse recordTransferEventResponse = getRecordTransferEventResponse();
         when(eventServiceClient.recordTransferEvent(Mockito.any())).thenReturn(recordTransferEventResponse);
+        when(eventServiceClient.recordTransferEvents(Mockito.any())).thenReturn(new RecordTransferEventsResponse(new ArrayList<>(), null));
 
     }
 
@@ -110,7 +191,7 @@ public class TransferServiceControllerTest {
         transferRequest.setSourceAccountNumber("sa1001");
         transferRequest.setDestinationAccountNumber("sa1002");
         transferRequest.setTransferAmount(BigDecimal.valueOf(1000));
-        TransferResponse transferResponse = transferServiceController.transfer(transferRequest);
+        TransferResponse transferResponse = transferServiceController.transfer(transferRequest, null);
 
         assertTrue(transferResponse.getSourceAccountNumber().equalsIgnoreCase("sa1001"));
         assertTrue(transferResponse.getDestinationAccountNumber().equalsIgnoreCase("sa1002"));
@@ -130,7 +211,7 @@ public class TransferServiceControllerTest {
         transferRequest.setSourceAccountNumber("sa1001");
         transferRequest.setDestinationAccountNumber("sa1002");
         transferRequest.setTransferAmount(BigDecimal.valueOf(1000));
-        TransferResponse transferResponse = transferServiceController.transfer(transferRequest);
+        TransferResponse transferResponse = transferServiceController.transfer(transferRequest, null);
 
         assertTrue(transferResponse.getSourceAccountNumber().equalsIgnoreCase("sa1001"));
         assertTrue(transferResponse.getDestinationAccountNumber().equalsIgnoreCase("sa1002"));
@@ -144,12 +225,13 @@ public class TransferServiceControllerTest {
     void testTransferWhenEventServiceThrowsException() {
 
         when(eventServiceClient.recordTransferEvent(Mockito.any())).thenThrow(new RuntimeException());
+        when(eventServiceClient.recordTransferEvents(Mockito.any())).thenThrow(new RuntimeException());
 
         TransferRequest transferRequest = new TransferRequest();
         transferRequest.setSourceAccountNumber("sa1001");
         transferRequest.setDestinationAccountNumber("sa1002");
         transferRequest.setTransferAmount(BigDecimal.valueOf(1000));
-        TransferResponse transferResponse = transferServiceController.transfer(transferRequest);
+        TransferResponse transferResponse = transferServiceController.transfer(transferRequest, null);
 
         assertTrue(transferResponse.getSourceAccountNumber().equalsIgnoreCase("sa1001"));
         assertTrue(transferResponse.getDestinationAccountNumber().equalsIgnoreCase("sa1002"));
@@ -157,4 +239,391 @@ public class TransferServiceControllerTest {
         assertTrue(transferResponse.getTransferStatus());
         assertTrue(transferResponse.getErrors() == null);
     }
+
+    @Test
+    @DisplayName("Test Transfer event is relayed from the outbox to event service")
+    void testTransferEventIsRelayedToEventService() {
+        TransferRequest transferRequest = new TransferRequest();
+        transferRequest.setSourceAccountNumber("sa1001");
+        transferRequest.setDestinationAccountNumber("sa1003");
+        transferRequest.setTransferAmount(BigDecimal.valueOf(1234));
+        TransferResponse transferResponse = transferServiceController.transfer(transferRequest, null);
+
+        assertTrue(transferResponse.getTransferStatus());
+        assertTrue(transferEventRelay.relay());
+        verify(eventServiceClient, atLeastOnce()).recordTransferEvents(Mockito.argThat(recordTransferEventsRequest ->
+                recordTransferEventsRequest.getTransferEventDtoList().stream().anyMatch(transferEventDto ->
+                        transferEventDto.getDestinationAccountNumber().equals("sa1003")
+                                && transferEventDto.getTransferAmount().compareTo(BigDecimal.valueOf(1234)) == 0)));
+        verify(eventServiceClient, never()).recordTransferEvent(Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Test a batch event service keeps rejecting is relayed one event at a time and the rejected event parked")
+    void testPoisonTransferEventIsParked() throws IOException {
+        assertTrue(transferEventRelay.relay());
+        when(eventServiceClient.recordTransferEvents(Mockito.any())).thenAnswer(invocation -> {
+            RecordTransferEventsRequest recordTransferEventsRequest = invocation.getArgument(0);
+            boolean poisoned = recordTransferEventsRequest.getTransferEventDtoList().stream()
+                    .anyMatch(transferEventDto -> transferEventDto.getTransferAmount().compareTo(BigDecimal.valueOf(666)) == 0);
+            return new RecordTransferEventsResponse(new ArrayList<>(), poisoned ? ErrorCode.ERROR_RECORDING_TRANSFER_EVENT_INFO : null);
+        });
+        transferEventOutbox.append(new TransferEventDto(0, "sa1001", "sa1002", BigDecimal.valueOf(1)));
+        transferEventOutbox.append(new TransferEventDto(0, "sa1001", "sa1002", BigDecimal.valueOf(666)));
+        transferEventOutbox.append(new TransferEventDto(0, "sa1001", "sa1002", BigDecimal.valueOf(3)));
+
+        int relayMaxAttempts = (int) ReflectionTestUtils.getField(transferEventRelay, "relayMaxAttempts");
+        ReflectionTestUtils.setField(transferEventRelay, "relayMaxAttempts", 2);
+        try {
+            // Rejected twice as a batch, then once on its own, then parked on the second rejection
+            assertFalse(transferEventRelay.relay());
+            assertFalse(transferEventRelay.relay());
+            assertTrue(transferEventRelay.relay());
+        } finally {
+            ReflectionTestUtils.setField(transferEventRelay, "relayMaxAttempts", relayMaxAttempts);
+        }
+
+        assertTrue(transferEventOutbox.getPendingCount() == 0);
+        List<String> parkedLines = Files.readAllLines(outboxDirectory.resolve("transfer-outbox-parked.log"));
+        assertTrue(parkedLines.size() == 1);
+        assertTrue(parkedLines.get(0).contains("666"));
+        verify(eventServiceClient, times(2)).recordTransferEvents(Mockito.argThat(recordTransferEventsRequest ->
+                recordTransferEventsRequest.getTransferEventDtoList().size() == 1
+                        && recordTransferEventsRequest.getTransferEventDtoList().get(0).getTransferAmount().compareTo(BigDecimal.valueOf(666)) == 0));
+    }
+
+    @Test
+    @DisplayName("Test Transfer event is recorded synchronously when the outbox is full")
+    void testTransferEventIsRecordedSynchronouslyWhenOutboxIsFull() throws NoSuchFieldException, IllegalAccessException {
+        Field fieldMaxPendingEvents = TransferEventOutbox.class.getDeclaredField("maxPendingEvents");
+        fieldMaxPendingEvents.setAccessible(true);
+        long maxPendingEvents = fieldMaxPendingEvents.getLong(transferEventOutbox);
+        fieldMaxPendingEvents.setLong(transferEventOutbox, 0);
+        try {
+            TransferRequest transferRequest = new TransferRequest();
+            transferRequest.setSourceAccountNumber("sa1001");
+            transferRequest.setDestinationAccountNumber("sa1004");
+            transferRequest.setTransferAmount(BigDecimal.valueOf(1000));
+            TransferResponse transferResponse = transferServiceController.transfer(transferRequest, null);
+
+            assertTrue(transferResponse.getTransferStatus());
+            verify(eventServiceClient).recordTransferEvent(Mockito.argThat(recordTransferEventRequest ->
+                    recordTransferEventRequest.getTransferEventDto().getDestinationAccountNumber().equals("sa1004")));
+        } finally {
+            fieldMaxPendingEvents.setLong(transferEventOutbox, maxPendingEvents);
+        }
+    }
+
+    @Test
+    @DisplayName("Test Transfer service executes a transfer once per idempotency key")
+    void testTransferWithIdempotencyKey() {
+        TransferRequest transferRequest = new TransferRequest();
+        transferRequest.setSourceAccountNumber("sa1001");
+        transferRequest.setDestinationAccountNumber("sa1002");
+        transferRequest.setTransferAmount(BigDecimal.valueOf(1000));
+        String idempotencyKey = UUID.randomUUID().toString();
+
+        TransferResponse transferResponse = transferServiceController.transfer(transferRequest, idempotencyKey);
+        TransferResponse repeatedTransferResponse = transferServiceController.transfer(transferRequest, idempotencyKey);
+
+        assertTrue(transferResponse.getTransferStatus());
+        assertTrue(repeatedTransferResponse == transferResponse);
+
+        // The key reused for another amount is rejected, the same transfer in another scale is a repeat
+        TransferResponse reusedKeyTransferResponse = transferServiceController.transfer(
+                new TransferRequest("sa1001", "sa1002", BigDecimal.valueOf(10)), idempotencyKey);
+        assertTrue(!reusedKeyTransferResponse.getTransferStatus());
+        assertTrue(reusedKeyTransferResponse.getErrors().equals(Collections.singletonList(ErrorCode.IDEMPOTENCY_KEY_REUSED.getErrorMessage())));
+        assertTrue(transferServiceController.transfer(new TransferRequest("SA1001", "sa1002", new BigDecimal("1000.00")), idempotencyKey) == transferResponse);
+        verify(accountServiceClient, times(1)).updateAccountDetails(Mockito.argThat(updateAccountDetailsRequest ->
+                idempotencyKey.equals(updateAccountDetailsRequest.getIdempotencyKey())));
+    }
+
+    @Test
+    @DisplayName("Test a retry applied again by account service records an event with the uuid of the first one")
+    void testTransferWithIdempotencyKeyRetriedAfterResponseEviction() {
+        TransferRequest transferRequest = new TransferRequest("sa1001", "sa1004", BigDecimal.valueOf(4321));
+        String idempotencyKey = UUID.randomUUID().toString();
+
+        // The retry misses the response cache, as on another instance, and account service reports it applied
+        assertTrue(transferServiceController.transfer(transferRequest, idempotencyKey).getTransferStatus());
+        ((Cache<?, ?>) ReflectionTestUtils.getField(transferResponseCache, "cache")).invalidateAll();
+        assertTrue(transferServiceController.transfer(transferRequest, idempotencyKey).getTransferStatus());
+
+        while (transferEventOutbox.getPendingCount() > 0) {
+            assertTrue(transferEventRelay.relay());
+        }
+        ArgumentCaptor<RecordTransferEventsRequest> recordTransferEventsRequests = ArgumentCaptor.forClass(RecordTransferEventsRequest.class);
+        verify(eventServiceClient, atLeastOnce()).recordTransferEvents(recordTransferEventsRequests.capture());
+        List<String> eventUuids = recordTransferEventsRequests.getAllValues().stream()
+                .flatMap(recordTransferEventsRequest -> recordTransferEventsRequest.getTransferEventDtoList().stream())
+                .filter(transferEventDto -> "sa1004".equals(transferEventDto.getDestinationAccountNumber()))
+                .map(TransferEventDto::getEventUuid)
+                .collect(Collectors.toList());
+        assertTrue(eventUuids.size() == 2);
+        assertTrue(eventUuids.get(0) != null && eventUuids.get(0).equals(eventUuids.get(1)));
+    }
+
+    @Test
+    @DisplayName("Test Transfer service streams one response per NDJSON transfer request in request order")
+    void testTransfers() throws IOException {
+        when(accountServiceClient.updateAccountDetailsBatch(Mockito.any())).thenAnswer(invocation -> {
+            UpdateAccountDetailsBatchRequest updateAccountDetailsBatchRequest = invocation.getArgument(0);
+            List<UpdateAccountDetailsResponse> updateAccountDetailsResponseList = new ArrayList<>();
+            for (TransferFundDto transferFundDto : updateAccountDetailsBatchRequest.getTransferFundDtoList()) {
+                List<ErrorCode> errorCodeList = transferFundDto.getTransferAmount().compareTo(BigDecimal.valueOf(5000)) > 0
+                        ? Collections.singletonList(ErrorCode.INSUFFICIENT_FUNDS_FOR_TRANSFER) : new ArrayList<>();
+                updateAccountDetailsResponseList.add(new UpdateAccountDetailsResponse(transferFundDto, errorCodeList));
+            }
+            return new UpdateAccountDetailsBatchResponse(updateAccountDetailsResponseList, new ArrayList<>());
+        });
+
+        StringBuilder content = new StringBuilder();
+        for (int i = 1; i <= 250; i++) {
+            content.append(objectMapper.writeValueAsString(new TransferRequest("sa1001", "sa1002", BigDecimal.valueOf(i * 100)))).append('\n');
+        }
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/transfer-api/transfers");
+        request.setContentType("application/x-ndjson");
+        request.setContent(content.toString().getBytes(StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        transferServiceController.transfers(request).getBody().writeTo(outputStream);
+
+        String[] lines = new String(outputStream.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertTrue(lines.length == 250);
+        for (int i = 1; i <= 250; i++) {
+            TransferResponse transferResponse = objectMapper.readValue(lines[i - 1], TransferResponse.class);
+            assertTrue(transferResponse.getTransferAmount().compareTo(BigDecimal.valueOf(i * 100)) == 0);
+            assertTrue(transferResponse.getTransferStatus() == (i <= 50));
+        }
+        verify(accountServiceClient, times(3)).updateAccountDetailsBatch(Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Test Transfer service streams NDJSON responses under the deadline of the request over the async dispatch")
+    void testTransfersWithRequestDeadline() throws Exception {
+        List<Long> remainingMsList = Collections.synchronizedList(new ArrayList<>());
+        when(accountServiceClient.updateAccountDetailsBatch(Mockito.any())).thenAnswer(invocation -> {
+            remainingMsList.add(RequestDeadline.getRemainingMs());
+            UpdateAccountDetailsBatchRequest updateAccountDetailsBatchRequest = invocation.getArgument(0);
+            List<UpdateAccountDetailsResponse> updateAccountDetailsResponseList = new ArrayList<>();
+            for (TransferFundDto transferFundDto : updateAccountDetailsBatchRequest.getTransferFundDtoList()) {
+                updateAccountDetailsResponseList.add(new UpdateAccountDetailsResponse(transferFundDto, new ArrayList<>()));
+            }
+            return new UpdateAccountDetailsBatchResponse(updateAccountDetailsResponseList, new ArrayList<>());
+        });
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext)
+                .addFilters(webApplicationContext.getBean(RequestDeadlineFilter.class))
+                .build();
+
+        MvcResult mvcResult = mockMvc.perform(post("/transfer-api/transfers")
+                        .header(RequestDeadline.HEADER, "60000")
+                        .contentType("application/x-ndjson")
+                        .content(objectMapper.writeValueAsString(new TransferRequest("sa1001", "sa1002", BigDecimal.TEN)) + "\n"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String content = mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertTrue(objectMapper.readValue(content.trim(), TransferResponse.class).getTransferStatus());
+        assertTrue(remainingMsList.size() == 1);
+        assertTrue(remainingMsList.get(0) > 0 && remainingMsList.get(0) <= 60000);
+    }
+
+    @Test
+    @DisplayName("Test bulk transfers fail with an unknown outcome when the batch call was sent, and none applied when it was not")
+    void testTransfersWhenBatchCallFails() {
+        feign.Request request = feign.Request.create(feign.Request.HttpMethod.POST, "http://account-service/account-api/update-batch",
+                Collections.emptyMap(), null, StandardCharsets.UTF_8, null);
+        List<TransferRequest> transferRequestList = Collections.singletonList(new TransferRequest("sa1001", "sa1002", BigDecimal.TEN));
+
+        when(accountServiceClient.updateAccountDetailsBatch(Mockito.any())).thenThrow(new RetryableException(-1, "Read timed out",
+                feign.Request.HttpMethod.POST, new SocketTimeoutException("Read timed out"), null, request));
+        assertTrue(transferService.transfer(transferRequestList).get(0).getErrors()
+                .equals(Collections.singletonList(ErrorCode.TRANSFER_OUTCOME_UNKNOWN.getErrorMessage())));
+
+        Mockito.reset(accountServiceClient);
+        when(accountServiceClient.updateAccountDetailsBatch(Mockito.any())).thenThrow(new RetryableException(-1, "Connection refused",
+                feign.Request.HttpMethod.POST, new ConnectException("Connection refused"), null, request));
+        assertTrue(transferService.transfer(transferRequestList).get(0).getErrors()
+                .equals(Collections.singletonList(ErrorCode.INTERNAL_SERVER_ERROR.getErrorMessage())));
+
+        // Account service failing the whole batch may have committed part of it
+        for (ErrorCode errorCode : Arrays.asList(ErrorCode.ERROR_UPDATING_ACCOUNT_INFO, ErrorCode.REQUEST_DEADLINE_EXCEEDED)) {
+            Mockito.reset(accountServiceClient);
+            when(accountServiceClient.updateAccountDetailsBatch(Mockito.any())).thenReturn(
+                    new UpdateAccountDetailsBatchResponse(null, Collections.singletonList(errorCode)));
+            assertTrue(transferService.transfer(transferRequestList).get(0).getErrors()
+                    .equals(Collections.singletonList(ErrorCode.TRANSFER_OUTCOME_UNKNOWN.getErrorMessage())));
+        }
+    }
+
+    @Test
+    @DisplayName("Test bulk transfers wait for every batch in flight and throw the first error, later ones suppressed")
+    void testTransfersWhenStreamAndResponseConsumerFail() {
+        AtomicInteger completedBatches = new AtomicInteger();
+        when(accountServiceClient.updateAccountDetailsBatch(Mockito.any())).thenAnswer(invocation -> {
+            Thread.sleep(200);
+            UpdateAccountDetailsBatchRequest updateAccountDetailsBatchRequest = invocation.getArgument(0);
+            List<UpdateAccountDetailsResponse> updateAccountDetailsResponseList = new ArrayList<>();
+            for (TransferFundDto transferFundDto : updateAccountDetailsBatchRequest.getTransferFundDtoList()) {
+                updateAccountDetailsResponseList.add(new UpdateAccountDetailsResponse(transferFundDto, new ArrayList<>()));
+            }
+            completedBatches.incrementAndGet();
+            return new UpdateAccountDetailsBatchResponse(updateAccountDetailsResponseList, new ArrayList<>());
+        });
+
+        // Two batches are in flight when a malformed request ends the stream, then their responses can not be written
+        IllegalArgumentException malformedRequest = new IllegalArgumentException("Malformed transfer request");
+        Iterator<TransferRequest> transferRequests = new Iterator<TransferRequest>() {
+            private int count;
+
+            @Override
+            public boolean hasNext() {
+                if (count == 200) {
+                    throw malformedRequest;
+                }
+                return true;
+            }
+
+            @Override
+            public TransferRequest next() {
+                count++;
+                return new TransferRequest("sa1001", "sa1002", BigDecimal.ONE);
+            }
+        };
+        RuntimeException exception = assertThrows(RuntimeException.class, () ->
+                transferService.transfer(transferRequests, transferResponse -> {
+                    throw new IllegalStateException("Client gone");
+                }));
+
+        assertTrue(exception == malformedRequest);
+        assertTrue(exception.getSuppressed().length == 2);
+        assertTrue(completedBatches.get() == 2);
+    }
+
+    @Test
+    @DisplayName("Test Feign clients share a pooled HTTP/2 capable transport bounded per route")
+    void testFeignTransport() {
+        OkHttpClient okHttpClient = webApplicationContext.getBean(OkHttpClient.class);
+        MeterRegistry meterRegistry = webApplicationContext.getBean(MeterRegistry.class);
+
+        assertTrue(okHttpClient.protocols().contains(Protocol.HTTP_2));
+        assertTrue(meterRegistry.find("okhttp.pool.connection.limit").gauge().value() == 200);
+
+        OkHttpClient saturatedOkHttpClient = okHttpClient.newBuilder()
+                .addInterceptor(new RouteConcurrencyInterceptor(0, 10, meterRegistry))
+                .build();
+        Request request = new Request.Builder().url("http://account-service/account-api/accounts").build();
+        assertThrows(IOException.class, () -> saturatedOkHttpClient.newCall(request).execute());
+        assertTrue(meterRegistry.find("feign.http.requests.rejected").tag("route", "account-service:80").counter().count() == 1);
+    }
+
+    @Test
+    @DisplayName("Test Feign clients send and receive transfer events encoded as Smile")
+    void testFeignWireFormat() throws IOException {
+        Encoder encoder = webApplicationContext.getBean(Encoder.class);
+        Decoder decoder = webApplicationContext.getBean(Decoder.class);
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory()).findAndRegisterModules();
+        List<TransferEventDto> transferEventDtoList = Collections.singletonList(
+                new TransferEventDto(1, "sa1001", "sa1002", BigDecimal.valueOf(100)));
+
+        RequestTemplate requestTemplate = new RequestTemplate();
+        encoder.encode(new RecordTransferEventsRequest(transferEventDtoList), RecordTransferEventsRequest.class, requestTemplate);
+
+        assertTrue(requestTemplate.headers().get(HttpHeaders.CONTENT_TYPE).iterator().next().startsWith(WireFormat.APPLICATION_SMILE));
+        assertTrue(smileMapper.readValue(requestTemplate.body(), RecordTransferEventsRequest.class)
+                .getTransferEventDtoList().equals(transferEventDtoList));
+
+        feign.Response response = feign.Response.builder()
+                .status(200)
+                .request(feign.Request.create(feign.Request.HttpMethod.POST, "/event-api/transfer-events",
+                        Collections.emptyMap(), requestTemplate.body(), StandardCharsets.UTF_8, requestTemplate))
+                .headers(Collections.singletonMap(HttpHeaders.CONTENT_TYPE, Collections.singletonList(WireFormat.APPLICATION_SMILE)))
+                .body(smileMapper.writeValueAsBytes(new RecordTransferEventsResponse(transferEventDtoList, null)))
+                .build();
+        RecordTransferEventsResponse recordTransferEventsResponse =
+                (RecordTransferEventsResponse) decoder.decode(response, RecordTransferEventsResponse.class);
+
+        assertTrue(recordTransferEventsResponse.getTransferEventDtoList().equals(transferEventDtoList));
+    }
+
+    @Test
+    @DisplayName("Test Transfer service fails fast while account service is unavailable")
+    void testTransferWhenAccountServiceIsUnavailable() {
+        CircuitBreaker circuitBreaker = CircuitBreaker.ofDefaults("account-service");
+        circuitBreaker.transitionToOpenState();
+        when(accountServiceClient.updateAccountDetails(Mockito.any()))
+                .thenThrow(CallNotPermittedException.createCallNotPermittedException(circuitBreaker));
+
+        TransferRequest transferRequest = new TransferRequest("sa1001", "sa1002", BigDecimal.valueOf(1000));
+        TransferResponse transferResponse = transferServiceController.transfer(transferRequest, null);
+
+        assertFalse(transferResponse.getTransferStatus());
+        assertTrue(transferResponse.getErrors().contains(ErrorCode.ACCOUNT_SERVICE_UNAVAILABLE.getErrorMessage()));
+    }
+
+    @Test
+    @DisplayName("Test Feign clients are rejected without a call once the circuit breaker opened")
+    void testFeignCircuitBreaker() {
+        ResilienceCapability resilienceCapability = webApplicationContext.getBean(ResilienceCapability.class);
+        MeterRegistry meterRegistry = webApplicationContext.getBean(MeterRegistry.class);
+        AtomicInteger calls = new AtomicInteger();
+        Client unavailableClient = (request, options) -> {
+            calls.incrementAndGet();
+            throw new IOException("Connection refused");
+        };
+        Client client = resilienceCapability.enrich(unavailableClient);
+
+        RequestTemplate requestTemplate = new RequestTemplate();
+        requestTemplate.feignTarget(new Target.HardCodedTarget<>(AccountServiceClient.class, "unavailable-service", "http://unavailable-service"));
+        feign.Request request = feign.Request.create(feign.Request.HttpMethod.GET, "http://unavailable-service/account-api/accounts",
+                Collections.emptyMap(), null, StandardCharsets.UTF_8, requestTemplate);
+
+        for (int i = 0; i < 10; i++) {
+            assertThrows(IOException.class, () -> client.execute(request, new feign.Request.Options()));
+        }
+        assertThrows(CallNotPermittedException.class, () -> client.execute(request, new feign.Request.Options()));
+
+        assertTrue(calls.get() == 10);
+        assertTrue(meterRegistry.find("resilience4j.circuitbreaker.state")
+                .tags("name", "unavailable-service", "state", "open").gauge().value() == 1);
+        assertTrue(meterRegistry.find("resilience4j.circuitbreaker.not.permitted.calls")
+                .tag("name", "unavailable-service").counter().count() == 1);
+    }
+
+    @Test
+    @DisplayName("Test Transfer service propagates the request deadline and gives up once it passed")
+    void testTransferWhenRequestDeadlineExceeded() throws IOException {
+        RequestDeadlineCapability requestDeadlineCapability = webApplicationContext.getBean(RequestDeadlineCapability.class);
+        MeterRegistry meterRegistry = webApplicationContext.getBean(MeterRegistry.class);
+        TransferRequest transferRequest = new TransferRequest("sa1001", "sa1002", BigDecimal.valueOf(1000));
+        try {
+            RequestDeadline.start("500");
+            RequestTemplate requestTemplate = new RequestTemplate();
+            requestDeadlineCapability.apply(requestTemplate);
+            long budgetMs = Long.parseLong(requestTemplate.headers().get(RequestDeadline.HEADER).iterator().next());
+            // The budget is sent on less the 20ms margin
+            assertTrue(budgetMs > 0 && budgetMs <= 480);
+
+            AtomicReference<feign.Request.Options> callOptions = new AtomicReference<>();
+            Client client = (request, options) -> {
+                callOptions.set(options);
+                return null;
+            };
+            requestDeadlineCapability.enrich(client).execute(null, new feign.Request.Options());
+            assertTrue(callOptions.get().readTimeoutMillis() <= 500);
+
+            RequestDeadline.start("0");
+            TransferResponse transferResponse = transferServiceController.transfer(transferRequest, null);
+
+            assertFalse(transferResponse.getTransferStatus());
+            assertTrue(transferResponse.getErrors().contains(ErrorCode.REQUEST_DEADLINE_EXCEEDED.getErrorMessage()));
+            verify(accountServiceClient, never()).updateAccountDetails(Mockito.any());
+            assertTrue(meterRegistry.find("transfer.requests.expired").counter().count() >= 1);
+        } finally {
+            RequestDeadline.clear();
+        }
+    }
 }
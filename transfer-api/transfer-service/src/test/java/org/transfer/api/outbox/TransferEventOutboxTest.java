@@ -0,0 +1,71 @@
+package org.transfer.api.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.common.api.dto.TransferEventDto;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test cases of the TransferEventOutbox segments read by the relay while appenders rotate them
+ */
+public class TransferEventOutboxTest {
+
+    @Test
+    @DisplayName("Test events appended to a segment and rotated between its read and the rotation check are relayed")
+    void testReadBatchWhenSegmentRotatesAfterRead() throws IOException {
+        Path outboxDirectory = Files.createTempDirectory("transfer-outbox");
+        List<TransferEventDto> lateEvents = Arrays.asList(
+                new TransferEventDto(0, "sa1001", "sa1002", BigDecimal.ONE),
+                new TransferEventDto(0, "sa1001", "sa1002", BigDecimal.TEN));
+
+        // The first read of the empty segment is followed by a bulk append, its first event
+        // ends the segment and its second one rotates to the next segment
+        TransferEventOutbox transferEventOutbox = new TransferEventOutbox() {
+            private boolean appended;
+
+            @Override
+            void readEvents(Path segment, long position, int maxEvents, List<TransferEventDto> events,
+                            List<Long> nextPositions) throws IOException {
+                super.readEvents(segment, position, maxEvents, events, nextPositions);
+                if (!appended) {
+                    appended = true;
+                    assertTrue(tryAppend(lateEvents));
+                }
+            }
+        };
+        ReflectionTestUtils.setField(transferEventOutbox, "objectMapper", new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(transferEventOutbox, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(transferEventOutbox, "outboxDirectory", outboxDirectory.toString());
+        ReflectionTestUtils.setField(transferEventOutbox, "segmentSizeBytes", 1L);
+        ReflectionTestUtils.setField(transferEventOutbox, "maxPendingEvents", 100L);
+        transferEventOutbox.init();
+
+        try {
+            List<TransferEventDto> relayedEvents = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                OutboxBatch outboxBatch = transferEventOutbox.readBatch(100);
+                relayedEvents.addAll(outboxBatch.getTransferEventDtoList());
+                transferEventOutbox.commit(outboxBatch, outboxBatch.getTransferEventDtoList().size());
+            }
+
+            assertTrue(relayedEvents.stream().map(TransferEventDto::getTransferAmount).collect(Collectors.toList())
+                    .equals(Arrays.asList(BigDecimal.ONE, BigDecimal.TEN)));
+            assertTrue(transferEventOutbox.getPendingCount() == 0);
+        } finally {
+            transferEventOutbox.close();
+        }
+    }
+}